@@ -0,0 +1,27 @@
+package com.lnjecit.elasticsearch.benchmark;
+
+import com.lnjecit.elasticsearch.domain.User;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试数据
+ */
+final class BenchmarkData {
+    static final String USER_INDEX = "user_test";
+
+    private static final String[] NAMES = {"王林", "韩立", "紫川秀", "张小凡", "路明非", "楚子航", "李沐婉", "紫灵"};
+
+    private BenchmarkData() {
+    }
+
+    static List<User> users(int count) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String sex = i % 3 == 0 ? "女" : "男";
+            users.add(new User((long) i + 1, NAMES[i % NAMES.length] + i, 18 + i % 50, sex));
+        }
+        return users;
+    }
+}
@@ -0,0 +1,70 @@
+package com.lnjecit.elasticsearch.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lnjecit.elasticsearch.codec.UserSourceSerializer;
+import com.lnjecit.elasticsearch.domain.User;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BulkRequest 组装：testBatchCreateDoc 的 writeValueAsString 写法与 UserSourceSerializer 对比
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class BulkRequestBenchmark {
+    @Param({"100", "10000", "1000000"})
+    private int userCount;
+
+    private ObjectMapper objectMapper;
+    private List<User> users;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        users = BenchmarkData.users(userCount);
+    }
+
+    @Benchmark
+    public BulkRequest objectMapper() throws JsonProcessingException {
+        BulkRequest bulkRequest = new BulkRequest();
+        for (User user : users) {
+            IndexRequest indexRequest = new IndexRequest(BenchmarkData.USER_INDEX);
+            indexRequest.id(user.getId().toString());
+            indexRequest.source(objectMapper.writeValueAsString(user), XContentType.JSON);
+            bulkRequest.add(indexRequest);
+        }
+        return bulkRequest;
+    }
+
+    @Benchmark
+    public BulkRequest userSourceSerializer() {
+        BulkRequest bulkRequest = new BulkRequest();
+        for (User user : users) {
+            IndexRequest indexRequest = new IndexRequest(BenchmarkData.USER_INDEX);
+            indexRequest.id(user.getId().toString());
+            indexRequest.source(UserSourceSerializer.toBytesReference(user), XContentType.JSON);
+            bulkRequest.add(indexRequest);
+        }
+        return bulkRequest;
+    }
+}
@@ -0,0 +1,70 @@
+package com.lnjecit.elasticsearch.benchmark;
+
+import com.lnjecit.elasticsearch.codec.UserSourceSerializer;
+import com.lnjecit.elasticsearch.domain.User;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * bulk 请求体编码：JSON 与 SMILE 对比，按 RestHighLevelClient 的方式拼装。
+ * <p>
+ * bulk 只支持这两种格式，CBOR 没有行分隔符，不能用于 bulk。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContentTypeBulkBenchmark {
+    @Param({"JSON", "SMILE"})
+    private XContentType contentType;
+
+    @Param({"100", "1000"})
+    private int userCount;
+
+    private List<User> users;
+
+    @Setup
+    public void setUp() {
+        users = BenchmarkData.users(userCount);
+    }
+
+    /**
+     * 与 RequestConverters#bulk 相同：每个文档一行元数据、一行 _source，行尾是该格式的分隔符
+     */
+    @Benchmark
+    public byte[] bulkBody() throws IOException {
+        byte separator = contentType.xContent().streamSeparator();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(userCount * 96);
+        for (User user : users) {
+            try (XContentBuilder metadata = XContentFactory.contentBuilder(contentType, out)) {
+                metadata.startObject().startObject("index")
+                        .field("_index", BenchmarkData.USER_INDEX)
+                        .field("_id", user.getId().toString())
+                        .endObject().endObject();
+            }
+            out.write(separator);
+            out.write(UserSourceSerializer.toBytes(user, contentType));
+            out.write(separator);
+        }
+        return out.toByteArray();
+    }
+}
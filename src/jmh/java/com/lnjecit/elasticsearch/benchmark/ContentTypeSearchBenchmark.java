@@ -0,0 +1,88 @@
+package com.lnjecit.elasticsearch.benchmark;
+
+import com.lnjecit.elasticsearch.codec.UserHitDecoder;
+import com.lnjecit.elasticsearch.codec.UserSourceSerializer;
+import com.lnjecit.elasticsearch.domain.User;
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchResponseSections;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 搜索响应解析：es 按 Accept 返回 JSON、SMILE 或 CBOR，解析 SearchResponse 后用 UserHitDecoder 解码全部 hit
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContentTypeSearchBenchmark {
+    @Param({"JSON", "SMILE", "CBOR"})
+    private XContentType contentType;
+
+    @Param({"100", "1000"})
+    private int hitCount;
+
+    private byte[] response;
+
+    @Setup
+    public void setUp() throws IOException {
+        response = searchResponse(BenchmarkData.users(hitCount));
+    }
+
+    @Benchmark
+    public List<User> searchDecode() throws IOException {
+        try (XContentParser parser = contentType.xContent().createParser(NamedXContentRegistry.EMPTY,
+                DeprecationHandler.THROW_UNSUPPORTED_OPERATION, response)) {
+            return UserHitDecoder.decodeAll(SearchResponse.fromXContent(parser).getHits());
+        }
+    }
+
+    /**
+     * es 按 Accept 返回的搜索响应，_source 与响应是同一种格式
+     */
+    private byte[] searchResponse(List<User> users) throws IOException {
+        SearchHit[] array = new SearchHit[users.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = new SearchHit(i, users.get(i).getId().toString(), new Text("_doc"),
+                    Collections.emptyMap(), Collections.emptyMap())
+                    .sourceRef(UserSourceSerializer.toBytesReference(users.get(i), contentType));
+            array[i].score(1.0f);
+        }
+        SearchHits hits = new SearchHits(array, new TotalHits(array.length, TotalHits.Relation.EQUAL_TO), 1.0f);
+        SearchResponse searchResponse = new SearchResponse(new SearchResponseSections(hits, null, null, false, null, null, 1),
+                null, 1, 1, 0, 3, ShardSearchFailure.EMPTY_ARRAY, SearchResponse.Clusters.EMPTY);
+        try (XContentBuilder builder = XContentFactory.contentBuilder(contentType)) {
+            searchResponse.toXContent(builder, ToXContent.EMPTY_PARAMS);
+            return BytesReference.toBytes(BytesReference.bytes(builder));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.lnjecit.elasticsearch.benchmark;
+
+import com.lnjecit.elasticsearch.client.EsClientConfig;
+import com.lnjecit.elasticsearch.client.EsClientFactory;
+import com.lnjecit.elasticsearch.search.QueryOptimizer;
+import com.lnjecit.elasticsearch.standin.EsStandInServer;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 查询改写前后的搜索延迟：EsDocSearchTest 中 and/or/range 查询原样执行与经 {@link QueryOptimizer} 改写后执行。
+ * rewrite 分别衡量两种改写：filter 只把精确条件移到 filter 上下文，track_total_hits 只关闭精确总数，both 两者都做。
+ * <p>
+ * 需要本地 9200 端口的 es 和已写入数据的 user_test；文档数较少时 query cache 不会生效（段小于 1 万文档不缓存），
+ * 建议先写入几十万文档再运行：{@code java -jar target/benchmarks.jar FilterContext}
+ * <p>
+ * 没有 es 时可以连接进程内替身，{@code -jvmArgs -Des.standin=10000} 表示启动替身并写入 1 万个用户。
+ * 替身只能衡量客户端和序列化开销，没有 query cache，不能用来比较改写前后的服务端耗时。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// 使用进程内替身时关闭 Nagle 算法，见 EsStandInServer
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@State(Scope.Benchmark)
+public class FilterContextSearchBenchmark {
+
+    @Param({"and", "or", "range"})
+    public String query;
+
+    @Param({"none", "filter", "track_total_hits", "both"})
+    public String rewrite;
+
+    private EsStandInServer standIn;
+    private RestHighLevelClient client;
+    private SearchRequest searchRequest;
+
+    @Setup
+    public void setUp() throws IOException {
+        int standInUsers = Integer.getInteger("es.standin", 0);
+        if (standInUsers > 0) {
+            standIn = new EsStandInServer(0).start().seedUsers(BenchmarkData.USER_INDEX, standInUsers);
+            client = EsClientFactory.getClient(new EsClientConfig("stand-in", standIn.getHttpHost()));
+        } else {
+            client = EsClientFactory.getClient();
+        }
+        SearchSourceBuilder sourceBuilder = new SearchSourceBuilder().query(query(query));
+        switch (rewrite) {
+            case "none":
+                break;
+            case "filter":
+                sourceBuilder.query(QueryOptimizer.optimize(sourceBuilder.query()));
+                break;
+            case "track_total_hits":
+                sourceBuilder.trackTotalHits(false);
+                break;
+            case "both":
+                QueryOptimizer.optimize(sourceBuilder, false);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown rewrite: " + rewrite);
+        }
+        searchRequest = new SearchRequest(BenchmarkData.USER_INDEX).source(sourceBuilder);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (standIn != null) {
+            EsClientFactory.close("stand-in");
+            standIn.close();
+        }
+    }
+
+    @Benchmark
+    public SearchResponse search() throws IOException {
+        return client.search(searchRequest, RequestOptions.DEFAULT);
+    }
+
+    static QueryBuilder query(String name) {
+        switch (name) {
+            case "and":
+                return QueryBuilders.boolQuery()
+                        .must(QueryBuilders.termQuery("name.keyword", "韩立"))
+                        .must(QueryBuilders.termQuery("age", "35"));
+            case "or":
+                return QueryBuilders.boolQuery()
+                        .should(QueryBuilders.termQuery("age", "32"))
+                        .should(QueryBuilders.termQuery("age", "18"));
+            case "range":
+                return QueryBuilders.rangeQuery("age").gt(30).lte(40);
+            default:
+                throw new IllegalArgumentException("unknown query: " + name);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.lnjecit.elasticsearch.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lnjecit.elasticsearch.codec.UserHitDecoder;
+import com.lnjecit.elasticsearch.codec.UserSourceSerializer;
+import com.lnjecit.elasticsearch.domain.User;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 搜索结果解码：parseUsers 的 getSourceAsString + readValue 与 UserHitDecoder 对比
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HitDecodingBenchmark {
+    @Param({"10", "100", "1000"})
+    private int hitCount;
+
+    private ObjectMapper objectMapper;
+    private SearchHits hits;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        List<User> users = BenchmarkData.users(hitCount);
+        SearchHit[] array = new SearchHit[users.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = new SearchHit(i).sourceRef(UserSourceSerializer.toBytesReference(users.get(i)));
+        }
+        hits = new SearchHits(array, null, 1.0f);
+    }
+
+    @Benchmark
+    public List<User> sourceAsString() throws IOException {
+        List<User> users = new ArrayList<>(hits.getHits().length);
+        for (SearchHit hit : hits) {
+            users.add(objectMapper.readValue(hit.getSourceAsString(), User.class));
+        }
+        return users;
+    }
+
+    @Benchmark
+    public List<User> userHitDecoder() throws IOException {
+        return UserHitDecoder.decodeAll(hits);
+    }
+}
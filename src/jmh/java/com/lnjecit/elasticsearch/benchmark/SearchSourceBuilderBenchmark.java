@@ -0,0 +1,79 @@
+package com.lnjecit.elasticsearch.benchmark;
+
+import com.lnjecit.elasticsearch.search.QueryOptimizer;
+import com.lnjecit.elasticsearch.search.UserQueryTemplates;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 查询构建：EsDocSearchTest 中的 SearchSourceBuilder 构建，以及序列化为请求体 JSON；与查询模板请求对比
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchSourceBuilderBenchmark {
+
+    @Benchmark
+    public SearchSourceBuilder buildBoolQuery() {
+        return boolQuery();
+    }
+
+    @Benchmark
+    public String buildAndRenderBoolQuery() {
+        return Strings.toString(boolQuery());
+    }
+
+    /**
+     * 查询改写本身的开销
+     */
+    @Benchmark
+    public String buildOptimizeAndRenderBoolQuery() {
+        return Strings.toString(QueryOptimizer.optimize(boolQuery(), false));
+    }
+
+    @Benchmark
+    public String buildAndRenderHighlightPage() {
+        SearchSourceBuilder sourceBuilder = new SearchSourceBuilder()
+                .query(QueryBuilders.matchQuery("name", "路"))
+                .from(0)
+                .size(10)
+                .sort("id", SortOrder.ASC)
+                .highlighter(new HighlightBuilder().field("name").preTags("<em>").postTags("</em>"));
+        return Strings.toString(sourceBuilder);
+    }
+
+    /**
+     * 对照 buildAndRenderHighlightPage：已存储模板只需渲染 id 和参数
+     */
+    @Benchmark
+    public String renderStoredTemplateRequest() {
+        return Strings.toString(UserQueryTemplates.NAME_MATCH_HIGHLIGHT
+                .request("user_test", Collections.singletonMap("name", "路"), true));
+    }
+
+    private static SearchSourceBuilder boolQuery() {
+        BoolQueryBuilder boolQueryBuilder = QueryBuilders.boolQuery()
+                .must(QueryBuilders.termQuery("name.keyword", "韩立"))
+                .must(QueryBuilders.termQuery("age", "35"));
+        return new SearchSourceBuilder().query(boolQueryBuilder);
+    }
+}
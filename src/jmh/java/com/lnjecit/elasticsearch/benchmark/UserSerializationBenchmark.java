@@ -0,0 +1,48 @@
+package com.lnjecit.elasticsearch.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lnjecit.elasticsearch.codec.UserSourceSerializer;
+import com.lnjecit.elasticsearch.domain.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个 User 序列化：ObjectMapper.writeValueAsString 与 UserSourceSerializer 对比
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UserSerializationBenchmark {
+    private ObjectMapper objectMapper;
+    private User user;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        user = new User(2L, "韩立", 35, "男");
+    }
+
+    @Benchmark
+    public String objectMapperWriteValueAsString() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(user);
+    }
+
+    @Benchmark
+    public byte[] userSourceSerializer() {
+        return UserSourceSerializer.toBytes(user);
+    }
+}
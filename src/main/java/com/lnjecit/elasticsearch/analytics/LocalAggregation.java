@@ -0,0 +1,28 @@
+package com.lnjecit.elasticsearch.analytics;
+
+import com.lnjecit.elasticsearch.domain.User;
+
+/**
+ * 在 JVM 内对 User 计算的聚合。
+ * <p>
+ * 每个分片先在自己的中间结果 P 上累加，再两两合并，最后转换为结果 R，
+ * 所以同一个聚合既可以并行计算，也可以合并来自多个集群的中间结果。
+ *
+ * @param <P> 中间结果
+ * @param <R> 最终结果
+ */
+public interface LocalAggregation<P, R> {
+
+    String getName();
+
+    P newPartial();
+
+    void collect(P partial, User user);
+
+    /**
+     * 合并两个中间结果，可以直接修改并返回其中一个
+     */
+    P merge(P left, P right);
+
+    R result(P partial);
+}
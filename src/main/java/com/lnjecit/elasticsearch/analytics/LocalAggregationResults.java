@@ -0,0 +1,82 @@
+package com.lnjecit.elasticsearch.analytics;
+
+import com.lnjecit.elasticsearch.domain.User;
+
+import java.util.Arrays;
+
+/**
+ * 一次本地聚合的结果，保留各聚合的中间结果，可以与其它数据源（如另一个集群）的结果继续合并
+ */
+public class LocalAggregationResults {
+    private final LocalAggregation<?, ?>[] aggregations;
+    private final Object[] partials;
+
+    LocalAggregationResults(LocalAggregation<?, ?>[] aggregations, Object[] partials) {
+        this.aggregations = aggregations;
+        this.partials = partials;
+    }
+
+    /**
+     * 按聚合取结果
+     */
+    @SuppressWarnings("unchecked")
+    public <R> R get(LocalAggregation<?, R> aggregation) {
+        for (int i = 0; i < aggregations.length; i++) {
+            if (aggregations[i] == aggregation) {
+                return ((LocalAggregation<Object, R>) aggregation).result(partials[i]);
+            }
+        }
+        throw new IllegalArgumentException("aggregation not computed: " + aggregation.getName());
+    }
+
+    /**
+     * 按名称取结果
+     */
+    public Object get(String name) {
+        for (LocalAggregation<?, ?> aggregation : aggregations) {
+            if (aggregation.getName().equals(name)) {
+                return get(aggregation);
+            }
+        }
+        throw new IllegalArgumentException("aggregation not computed: " + name);
+    }
+
+    /**
+     * 合并另一份由同一组聚合得到的结果，两份结果本身不会被修改
+     */
+    public LocalAggregationResults merge(LocalAggregationResults other) {
+        if (!Arrays.equals(aggregations, other.aggregations)) {
+            throw new IllegalArgumentException("results were computed by different aggregations");
+        }
+        Object[] merged = newPartials(aggregations);
+        merged = merge(aggregations, merged, partials);
+        merged = merge(aggregations, merged, other.partials);
+        return new LocalAggregationResults(aggregations, merged);
+    }
+
+    static Object[] newPartials(LocalAggregation<?, ?>[] aggregations) {
+        Object[] partials = new Object[aggregations.length];
+        for (int i = 0; i < aggregations.length; i++) {
+            partials[i] = aggregations[i].newPartial();
+        }
+        return partials;
+    }
+
+    @SuppressWarnings("unchecked")
+    static void collect(LocalAggregation<?, ?>[] aggregations, Object[] partials, User user) {
+        for (int i = 0; i < aggregations.length; i++) {
+            ((LocalAggregation<Object, ?>) aggregations[i]).collect(partials[i], user);
+        }
+    }
+
+    /**
+     * 把 right 合并进 left 并返回 left
+     */
+    @SuppressWarnings("unchecked")
+    static Object[] merge(LocalAggregation<?, ?>[] aggregations, Object[] left, Object[] right) {
+        for (int i = 0; i < aggregations.length; i++) {
+            left[i] = ((LocalAggregation<Object, ?>) aggregations[i]).merge(left[i], right[i]);
+        }
+        return left;
+    }
+}
@@ -0,0 +1,147 @@
+package com.lnjecit.elasticsearch.analytics;
+
+import com.lnjecit.elasticsearch.domain.User;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * 常用的本地聚合，结果与服务端对应聚合一致
+ */
+public final class LocalAggregations {
+
+    private LocalAggregations() {
+    }
+
+    /**
+     * 对应 max 聚合：字段为 null 的文档忽略，没有文档时结果为 {@code -Infinity}
+     */
+    public static LocalAggregation<double[], Double> max(String name, Function<User, ? extends Number> field) {
+        return new LocalAggregation<double[], Double>() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public double[] newPartial() {
+                return new double[]{Double.NEGATIVE_INFINITY};
+            }
+
+            @Override
+            public void collect(double[] partial, User user) {
+                Number value = field.apply(user);
+                if (value != null && value.doubleValue() > partial[0]) {
+                    partial[0] = value.doubleValue();
+                }
+            }
+
+            @Override
+            public double[] merge(double[] left, double[] right) {
+                left[0] = Math.max(left[0], right[0]);
+                return left;
+            }
+
+            @Override
+            public Double result(double[] partial) {
+                return partial[0];
+            }
+        };
+    }
+
+    /**
+     * 对应按 key 升序 ({@code BucketOrder.key(true)}) 的 terms 聚合：返回最小的 size 个 key 及其文档数，
+     * 字段为 null 的文档不计入
+     */
+    public static <K extends Comparable<? super K>> LocalAggregation<TreeMap<K, Long>, SortedMap<K, Long>> terms(
+            String name, Function<User, K> field, int size) {
+        return new LocalAggregation<TreeMap<K, Long>, SortedMap<K, Long>>() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public TreeMap<K, Long> newPartial() {
+                return new TreeMap<>();
+            }
+
+            @Override
+            public void collect(TreeMap<K, Long> partial, User user) {
+                K key = field.apply(user);
+                if (key != null) {
+                    partial.merge(key, 1L, Long::sum);
+                }
+            }
+
+            @Override
+            public TreeMap<K, Long> merge(TreeMap<K, Long> left, TreeMap<K, Long> right) {
+                right.forEach((key, count) -> left.merge(key, count, Long::sum));
+                return left;
+            }
+
+            @Override
+            public SortedMap<K, Long> result(TreeMap<K, Long> partial) {
+                if (partial.size() <= size) {
+                    return Collections.unmodifiableSortedMap(partial);
+                }
+                SortedMap<K, Long> buckets = new TreeMap<>();
+                for (Map.Entry<K, Long> entry : partial.entrySet()) {
+                    if (buckets.size() == size) {
+                        break;
+                    }
+                    buckets.put(entry.getKey(), entry.getValue());
+                }
+                return buckets;
+            }
+        };
+    }
+
+    /**
+     * 对应 top_hits 聚合：按 order 排序后的前 size 个文档，每个中间结果最多保留 size 个
+     */
+    public static LocalAggregation<PriorityQueue<User>, List<User>> topHits(String name, Comparator<User> order, int size) {
+        return new LocalAggregation<PriorityQueue<User>, List<User>>() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public PriorityQueue<User> newPartial() {
+                // 堆顶是当前保留的最后一名
+                return new PriorityQueue<>(size + 1, order.reversed());
+            }
+
+            @Override
+            public void collect(PriorityQueue<User> partial, User user) {
+                partial.offer(user);
+                if (partial.size() > size) {
+                    partial.poll();
+                }
+            }
+
+            @Override
+            public PriorityQueue<User> merge(PriorityQueue<User> left, PriorityQueue<User> right) {
+                for (User user : right) {
+                    collect(left, user);
+                }
+                return left;
+            }
+
+            @Override
+            public List<User> result(PriorityQueue<User> partial) {
+                List<User> users = new ArrayList<>(partial);
+                users.sort(order);
+                return users;
+            }
+        };
+    }
+}
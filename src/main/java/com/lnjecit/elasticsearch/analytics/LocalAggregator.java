@@ -0,0 +1,80 @@
+package com.lnjecit.elasticsearch.analytics;
+
+import com.lnjecit.elasticsearch.domain.User;
+
+import java.util.Collection;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+
+/**
+ * 用 fork/join 并行计算本地聚合。
+ * <p>
+ * 输入按 Spliterator 递归拆分，直到不超过 threshold 个文档，每个分片计算全部聚合的中间结果，
+ * 再在 join 时两两合并。
+ */
+public class LocalAggregator {
+    private static final int DEFAULT_THRESHOLD = 4096;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    public LocalAggregator() {
+        this(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param pool      执行聚合的线程池
+     * @param threshold 分片不超过该文档数时不再拆分
+     */
+    public LocalAggregator(ForkJoinPool pool, int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("threshold must be positive: " + threshold);
+        }
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    public LocalAggregationResults aggregate(Collection<User> users, LocalAggregation<?, ?>... aggregations) {
+        return aggregate(users.spliterator(), aggregations);
+    }
+
+    /**
+     * 流只能在未知大小时顺序拆分，有序集合请直接传入 Collection
+     */
+    public LocalAggregationResults aggregate(Stream<User> users, LocalAggregation<?, ?>... aggregations) {
+        return aggregate(users.spliterator(), aggregations);
+    }
+
+    public LocalAggregationResults aggregate(Spliterator<User> users, LocalAggregation<?, ?>... aggregations) {
+        Object[] partials = pool.invoke(new AggregateTask(users, aggregations));
+        return new LocalAggregationResults(aggregations, partials);
+    }
+
+    private class AggregateTask extends RecursiveTask<Object[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final Spliterator<User> users;
+        private final LocalAggregation<?, ?>[] aggregations;
+
+        AggregateTask(Spliterator<User> users, LocalAggregation<?, ?>[] aggregations) {
+            this.users = users;
+            this.aggregations = aggregations;
+        }
+
+        @Override
+        protected Object[] compute() {
+            Spliterator<User> prefix;
+            if (users.estimateSize() > threshold && (prefix = users.trySplit()) != null) {
+                AggregateTask left = new AggregateTask(prefix, aggregations);
+                left.fork();
+                Object[] right = new AggregateTask(users, aggregations).compute();
+                return LocalAggregationResults.merge(aggregations, left.join(), right);
+            }
+            Object[] partials = LocalAggregationResults.newPartials(aggregations);
+            users.forEachRemaining(user -> LocalAggregationResults.collect(aggregations, partials, user));
+            return partials;
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package com.lnjecit.elasticsearch.analytics;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.lnjecit.elasticsearch.codec.UserHitDecoder;
+import com.lnjecit.elasticsearch.domain.User;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+
+/**
+ * 按列存放的 User 集合，用于把大量文档拉到内存中做统计。
+ * <p>
+ * 与 {@code List<User>} 相比，每行不再有 User 对象头、Long/Integer 装箱和多余的引用：
+ * id、age 存为基本类型数组，sex 做字典编码，name 相同的字符串只保留一份。
+ * 可以直接从搜索结果的 _source 字节填充，中间不创建 User；_source 可以是 JSON、SMILE 或 CBOR。
+ * <p>
+ * 非线程安全，填充完成后可以在多个线程中只读访问。
+ */
+public class UserColumns {
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final JsonFactory SMILE = new SmileFactory();
+    private static final JsonFactory CBOR = new CBORFactory();
+    private static final int DEFAULT_CAPACITY = 16;
+    /** 按 64 位 JVM 开启压缩指针估算：数组头 16 字节，引用 4 字节，对象头 12 字节，HashMap 节点 32 字节 */
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int OBJECT_HEADER = 12;
+    private static final int MAP_ENTRY = 32;
+
+    private long[] ids;
+    private int[] ages;
+    private byte[] sexCodes;
+    private String[] names;
+    /** id/age 为 null 的行 */
+    private final BitSet nullIds = new BitSet();
+    private final BitSet nullAges = new BitSet();
+    private int size;
+
+    /** sex 字典：编码 -> 值，编码 0 表示 null */
+    private final List<String> sexDictionary = new ArrayList<>();
+    private final Map<String, Byte> sexCodeMap = new HashMap<>();
+    private final Map<String, String> namePool = new HashMap<>();
+
+    public UserColumns() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public UserColumns(int capacity) {
+        int initial = Math.max(capacity, 1);
+        ids = new long[initial];
+        ages = new int[initial];
+        sexCodes = new byte[initial];
+        names = new String[initial];
+        sexDictionary.add(null);
+    }
+
+    /**
+     * 从 User 列表填充
+     */
+    public static UserColumns of(List<User> users) {
+        UserColumns columns = new UserColumns(users.size());
+        for (User user : users) {
+            columns.add(user);
+        }
+        return columns;
+    }
+
+    /**
+     * 从搜索结果填充，直接解析每个 hit 的 _source 字节，没有 _source 的 hit 跳过
+     */
+    public static UserColumns of(SearchHits hits) throws IOException {
+        UserColumns columns = new UserColumns(hits.getHits().length);
+        columns.addAll(hits);
+        return columns;
+    }
+
+    public void addAll(SearchHits hits) throws IOException {
+        for (SearchHit hit : hits.getHits()) {
+            BytesReference source = hit.getSourceRef();
+            if (source != null) {
+                add(source);
+            }
+        }
+    }
+
+    public void add(User user) {
+        add(user.getId(), user.getName(), user.getAge(), user.getSex());
+    }
+
+    /**
+     * 解析一个 _source，只读取 id、name、age、sex，其它字段忽略
+     */
+    public void add(BytesReference source) throws IOException {
+        JsonFactory factory = factory(source);
+        JsonParser parser;
+        if (source instanceof BytesArray) {
+            BytesRef bytes = source.toBytesRef();
+            parser = factory.createParser(bytes.bytes, bytes.offset, bytes.length);
+        } else {
+            parser = factory.createParser(source.streamInput());
+        }
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("_source is not an object");
+            }
+            Long id = null;
+            String name = null;
+            Integer age = null;
+            String sex = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+                if (!token.isScalarValue()) {
+                    if (isUserField(field)) {
+                        // 数组或对象按标量读取会得到 0/null，且解析器会停留在容器内
+                        throw new IOException("_source field [" + field + "] is not a scalar value: " + token);
+                    }
+                    parser.skipChildren();
+                    continue;
+                }
+                switch (field) {
+                    case "id":
+                        id = parser.getValueAsLong();
+                        break;
+                    case "name":
+                        name = parser.getValueAsString();
+                        break;
+                    case "age":
+                        age = parser.getValueAsInt();
+                        break;
+                    case "sex":
+                        sex = parser.getValueAsString();
+                        break;
+                    default:
+                        break;
+                }
+            }
+            add(id, name, age, sex);
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static boolean isUserField(String field) {
+        return "id".equals(field) || "name".equals(field) || "age".equals(field) || "sex".equals(field);
+    }
+
+    /**
+     * 与 {@link UserHitDecoder} 相同，按 _source 的首字节选择解析器
+     */
+    private static JsonFactory factory(BytesReference source) {
+        switch (UserHitDecoder.contentType(source)) {
+            case SMILE:
+                return SMILE;
+            case CBOR:
+                return CBOR;
+            default:
+                return JSON;
+        }
+    }
+
+    public void add(Long id, String name, Integer age, String sex) {
+        ensureCapacity(size + 1);
+        if (id == null) {
+            nullIds.set(size);
+        } else {
+            ids[size] = id;
+        }
+        if (age == null) {
+            nullAges.set(size);
+        } else {
+            ages[size] = age;
+        }
+        names[size] = pool(name);
+        sexCodes[size] = encodeSex(sex);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Long getId(int row) {
+        return nullIds.get(checkRow(row)) ? null : ids[row];
+    }
+
+    public Integer getAge(int row) {
+        return nullAges.get(checkRow(row)) ? null : ages[row];
+    }
+
+    public String getName(int row) {
+        return names[checkRow(row)];
+    }
+
+    public String getSex(int row) {
+        return sexDictionary.get(sexCodes[checkRow(row)]);
+    }
+
+    /**
+     * 还原为 User 对象
+     */
+    public User getUser(int row) {
+        return new User(getId(row), getName(row), getAge(row), getSex(row));
+    }
+
+    /**
+     * 不同的 sex 值个数（不含 null）
+     */
+    public int sexCardinality() {
+        return sexDictionary.size() - 1;
+    }
+
+    /**
+     * 估算占用的堆内存字节数：列数组和 BitSet 按长度计算，字典按条目数和字符串长度估算。
+     * 只依赖当前容量和内容，不受 GC 时机影响
+     */
+    public long estimatedBytes() {
+        long bytes = array(ids.length, Long.BYTES)
+                + array(ages.length, Integer.BYTES)
+                + array(sexCodes.length, Byte.BYTES)
+                + array(names.length, REFERENCE)
+                + array(nullIds.size() / Long.SIZE, Long.BYTES)
+                + array(nullAges.size() / Long.SIZE, Long.BYTES);
+        for (String name : namePool.keySet()) {
+            bytes += MAP_ENTRY + string(name);
+        }
+        for (String sex : sexCodeMap.keySet()) {
+            // 字典列表中的引用 + map 节点 + 装箱的编码（-128..127 有缓存，不计）
+            bytes += REFERENCE + MAP_ENTRY + string(sex);
+        }
+        return bytes;
+    }
+
+    private static long array(int length, int elementBytes) {
+        return align(ARRAY_HEADER + (long) length * elementBytes);
+    }
+
+    private static long string(String value) {
+        // String 对象（头 + value 引用 + hash 等字段）+ 按 UTF-16 估算的字符数组
+        return align(OBJECT_HEADER + REFERENCE + 8) + array(value.length(), Character.BYTES);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * 全部行号
+     */
+    public int[] rows() {
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = i;
+        }
+        return rows;
+    }
+
+    /**
+     * 按行过滤，返回满足条件的行号
+     */
+    public int[] filter(IntPredicate predicate) {
+        return filter(rows(), predicate);
+    }
+
+    public int[] filter(int[] rows, IntPredicate predicate) {
+        int[] selected = new int[rows.length];
+        int count = 0;
+        for (int row : rows) {
+            if (predicate.test(row)) {
+                selected[count++] = row;
+            }
+        }
+        return Arrays.copyOf(selected, count);
+    }
+
+    /**
+     * 年龄在 [from, to] 之间的行，age 为 null 的行不匹配
+     */
+    public IntPredicate ageBetween(int from, int to) {
+        return row -> !nullAges.get(row) && ages[row] >= from && ages[row] <= to;
+    }
+
+    /**
+     * sex 等于给定值的行；字典里没有该值时直接返回不匹配
+     */
+    public IntPredicate sexEquals(String sex) {
+        Byte code = sex == null ? Byte.valueOf((byte) 0) : sexCodeMap.get(sex);
+        if (code == null) {
+            return row -> false;
+        }
+        byte value = code;
+        return row -> sexCodes[row] == value;
+    }
+
+    /**
+     * 按年龄分组计数，按年龄升序，age 为 null 的行不计入
+     */
+    public SortedMap<Integer, Long> countByAge(int[] rows) {
+        SortedMap<Integer, Long> counts = new TreeMap<>();
+        for (int row : rows) {
+            if (!nullAges.get(row)) {
+                counts.merge(ages[row], 1L, Long::sum);
+            }
+        }
+        return counts;
+    }
+
+    public SortedMap<Integer, Long> countByAge() {
+        return countByAge(rows());
+    }
+
+    /**
+     * 按 sex 分组计数，直接在字典编码上计数，按首次出现顺序返回，sex 为 null 的行不计入
+     */
+    public Map<String, Long> countBySex(int[] rows) {
+        long[] counts = new long[sexDictionary.size()];
+        for (int row : rows) {
+            counts[sexCodes[row]]++;
+        }
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int code = 1; code < counts.length; code++) {
+            if (counts[code] > 0) {
+                result.put(sexDictionary.get(code), counts[code]);
+            }
+        }
+        return result;
+    }
+
+    public Map<String, Long> countBySex() {
+        return countBySex(rows());
+    }
+
+    /**
+     * 按 sex 分组求平均年龄，age 为 null 的行不计入
+     */
+    public Map<String, Double> avgAgeBySex(int[] rows) {
+        long[] sums = new long[sexDictionary.size()];
+        long[] counts = new long[sexDictionary.size()];
+        for (int row : rows) {
+            if (!nullAges.get(row)) {
+                sums[sexCodes[row]] += ages[row];
+                counts[sexCodes[row]]++;
+            }
+        }
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (int code = 1; code < counts.length; code++) {
+            if (counts[code] > 0) {
+                result.put(sexDictionary.get(code), (double) sums[code] / counts[code]);
+            }
+        }
+        return result;
+    }
+
+    private String pool(String name) {
+        if (name == null) {
+            return null;
+        }
+        String pooled = namePool.putIfAbsent(name, name);
+        return pooled == null ? name : pooled;
+    }
+
+    private byte encodeSex(String sex) {
+        if (sex == null) {
+            return 0;
+        }
+        Byte code = sexCodeMap.get(sex);
+        if (code == null) {
+            if (sexDictionary.size() > Byte.MAX_VALUE) {
+                throw new IllegalStateException("too many distinct sex values: " + sexDictionary.size());
+            }
+            code = (byte) sexDictionary.size();
+            sexDictionary.add(sex);
+            sexCodeMap.put(sex, code);
+        }
+        return code;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, newCapacity);
+        ages = Arrays.copyOf(ages, newCapacity);
+        sexCodes = Arrays.copyOf(sexCodes, newCapacity);
+        names = Arrays.copyOf(names, newCapacity);
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row: " + row + ", size: " + size);
+        }
+        return row;
+    }
+}
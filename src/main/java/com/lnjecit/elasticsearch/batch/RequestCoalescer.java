@@ -0,0 +1,212 @@
+package com.lnjecit.elasticsearch.batch;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求合并：把短时间窗口内并发的 get 合并成一个 MultiGetRequest，并发的 search 合并成一个 MultiSearchRequest。
+ * <p>
+ * get 按 preference、realtime、refresh 分组，每组一个 MultiGetRequest，单个 get 的 routing、stored_fields、
+ * version 和 _source 过滤原样保留。
+ * <p>
+ * 第一个请求进入窗口后开始计时，窗口到期或积攒到 maxBatchSize 个请求时发送，
+ * 结果按顺序拆分后通过 future 返回给各自的调用方。多个线程并发查询时可以减少请求数和尾延迟，
+ * 代价是单个请求最多多等待一个窗口。close 之后提交的请求不再发送，返回的 future 以 IllegalStateException 失败。
+ */
+public class RequestCoalescer implements Closeable {
+    private final RestHighLevelClient client;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+    private volatile boolean closed;
+
+    private final Batch<GetRequest, GetResponse> gets = new Batch<GetRequest, GetResponse>() {
+        @Override
+        void send(List<GetRequest> requests, List<CompletableFuture<GetResponse>> futures) {
+            // preference、realtime、refresh 是 MultiGetRequest 级别的参数，取值相同的请求才合并到一起
+            Map<String, List<Integer>> groups = new LinkedHashMap<>();
+            for (int i = 0; i < requests.size(); i++) {
+                GetRequest request = requests.get(i);
+                String key = request.preference() + "|" + request.realtime() + "|" + request.refresh();
+                groups.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            }
+            for (List<Integer> group : groups.values()) {
+                GetRequest first = requests.get(group.get(0));
+                MultiGetRequest multiGetRequest = new MultiGetRequest()
+                        .preference(first.preference())
+                        .realtime(first.realtime())
+                        .refresh(first.refresh());
+                List<CompletableFuture<GetResponse>> groupFutures = new ArrayList<>(group.size());
+                for (int i : group) {
+                    multiGetRequest.add(item(requests.get(i)));
+                    groupFutures.add(futures.get(i));
+                }
+                client.mgetAsync(multiGetRequest, RequestOptions.DEFAULT,
+                        ActionListener.wrap(response -> completeGets(response, groupFutures), e -> failAll(groupFutures, e)));
+            }
+        }
+    };
+
+    private final Batch<SearchRequest, SearchResponse> searches = new Batch<SearchRequest, SearchResponse>() {
+        @Override
+        void send(List<SearchRequest> requests, List<CompletableFuture<SearchResponse>> futures) {
+            MultiSearchRequest multiSearchRequest = new MultiSearchRequest();
+            for (SearchRequest request : requests) {
+                multiSearchRequest.add(request);
+            }
+            client.msearchAsync(multiSearchRequest, RequestOptions.DEFAULT,
+                    ActionListener.wrap(response -> completeSearches(response, futures), e -> failAll(futures, e)));
+        }
+    };
+
+    /**
+     * @param windowMillis 合并窗口
+     * @param maxBatchSize 单个合并请求最多包含的请求数
+     */
+    public RequestCoalescer(RestHighLevelClient client, long windowMillis, int maxBatchSize) {
+        this.client = client;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "es-request-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<GetResponse> get(GetRequest request) {
+        return gets.add(request);
+    }
+
+    public CompletableFuture<SearchResponse> search(SearchRequest request) {
+        return searches.add(request);
+    }
+
+    /**
+     * 发送已积攒的请求并停止定时器
+     */
+    @Override
+    public void close() {
+        // 先置位，各 Batch 在自己的锁内检查，之后不会再有任务提交到已关闭的 scheduler
+        closed = true;
+        gets.flush();
+        searches.flush();
+        scheduler.shutdown();
+    }
+
+    /**
+     * 复制 GetRequest 中单个文档级别的参数
+     */
+    private static MultiGetRequest.Item item(GetRequest request) {
+        return new MultiGetRequest.Item(request.index(), request.id())
+                .routing(request.routing())
+                .storedFields(request.storedFields())
+                .version(request.version())
+                .versionType(request.versionType())
+                .fetchSourceContext(request.fetchSourceContext());
+    }
+
+    private static void completeGets(MultiGetResponse response, List<CompletableFuture<GetResponse>> futures) {
+        MultiGetItemResponse[] items = response.getResponses();
+        for (int i = 0; i < items.length; i++) {
+            if (items[i].isFailed()) {
+                futures.get(i).completeExceptionally(items[i].getFailure().getFailure());
+            } else {
+                futures.get(i).complete(items[i].getResponse());
+            }
+        }
+    }
+
+    private static void completeSearches(MultiSearchResponse response, List<CompletableFuture<SearchResponse>> futures) {
+        MultiSearchResponse.Item[] items = response.getResponses();
+        for (int i = 0; i < items.length; i++) {
+            if (items[i].isFailure()) {
+                futures.get(i).completeExceptionally(items[i].getFailure());
+            } else {
+                futures.get(i).complete(items[i].getResponse());
+            }
+        }
+    }
+
+    private static <T> void failAll(List<CompletableFuture<T>> futures, Exception e) {
+        for (CompletableFuture<T> future : futures) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 一类请求的合并缓冲区
+     */
+    private abstract class Batch<Req, Resp> {
+        private List<Req> requests = new ArrayList<>();
+        private List<CompletableFuture<Resp>> futures = new ArrayList<>();
+        private ScheduledFuture<?> scheduled;
+
+        CompletableFuture<Resp> add(Req request) {
+            CompletableFuture<Resp> future = new CompletableFuture<>();
+            boolean full;
+            synchronized (this) {
+                if (closed) {
+                    future.completeExceptionally(new IllegalStateException("request coalescer is closed"));
+                    return future;
+                }
+                requests.add(request);
+                futures.add(future);
+                full = requests.size() >= maxBatchSize;
+                if (!full && scheduled == null) {
+                    scheduled = scheduler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+            if (full) {
+                flush();
+            }
+            return future;
+        }
+
+        void flush() {
+            List<Req> batchRequests;
+            List<CompletableFuture<Resp>> batchFutures;
+            synchronized (this) {
+                if (scheduled != null) {
+                    scheduled.cancel(false);
+                    scheduled = null;
+                }
+                if (requests.isEmpty()) {
+                    return;
+                }
+                batchRequests = requests;
+                batchFutures = futures;
+                requests = new ArrayList<>();
+                futures = new ArrayList<>();
+            }
+            try {
+                send(batchRequests, batchFutures);
+            } catch (RuntimeException e) {
+                failAll(batchFutures, e);
+            }
+        }
+
+        abstract void send(List<Req> requests, List<CompletableFuture<Resp>> futures);
+    }
+}
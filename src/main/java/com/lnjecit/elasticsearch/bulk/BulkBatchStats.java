@@ -0,0 +1,59 @@
+package com.lnjecit.elasticsearch.bulk;
+
+/**
+ * 单批 bulk 的执行统计
+ */
+public class BulkBatchStats {
+    private final long executionId;
+    private final int actions;
+    private final long bytes;
+    private final int failed;
+    private final long tookMillis;
+
+    public BulkBatchStats(long executionId, int actions, long bytes, int failed, long tookMillis) {
+        this.executionId = executionId;
+        this.actions = actions;
+        this.bytes = bytes;
+        this.failed = failed;
+        this.tookMillis = tookMillis;
+    }
+
+    public long getExecutionId() {
+        return executionId;
+    }
+
+    public int getActions() {
+        return actions;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public long getTookMillis() {
+        return tookMillis;
+    }
+
+    /**
+     * 本批吞吐量，文档数/秒
+     */
+    public double getDocsPerSecond() {
+        return tookMillis == 0 ? actions * 1000.0 : actions * 1000.0 / tookMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkBatchStats{" +
+                "executionId=" + executionId +
+                ", actions=" + actions +
+                ", bytes=" + bytes +
+                ", failed=" + failed +
+                ", tookMillis=" + tookMillis +
+                ", docsPerSecond=" + String.format("%.1f", getDocsPerSecond()) +
+                '}';
+    }
+}
@@ -0,0 +1,111 @@
+package com.lnjecit.elasticsearch.bulk;
+
+import org.elasticsearch.common.xcontent.XContentType;
+
+/**
+ * 批量写入配置，满足任一条件即触发一次 bulk：文档数、字节数、时间间隔
+ */
+public class BulkIngestConfig {
+    /**
+     * 每批最大文档数，-1 表示不按数量刷新
+     */
+    private int bulkActions = 1000;
+    /**
+     * 每批最大字节数，-1 表示不按大小刷新
+     */
+    private long bulkSizeBytes = 5L * 1024 * 1024;
+    /**
+     * 定时刷新间隔，-1 表示不按时间刷新
+     */
+    private long flushIntervalMillis = 1_000L;
+    /**
+     * 同时在途的 bulk 请求数，全部占满时 add 会阻塞调用线程（背压）
+     */
+    private int concurrentRequests = 2;
+    /**
+     * close 时等待在途请求完成的最长时间
+     */
+    private long closeTimeoutMillis = 60_000L;
+    /**
+     * 被拒绝(429)条目重试：首次等待上限、单次等待上限、最大重试次数
+     */
+    private long retryInitialDelayMillis = 50L;
+    private long retryMaxDelayMillis = 5_000L;
+    private int maxRetries = 8;
+    /**
+     * 文档编码格式，JSON 或 SMILE；bulk 请求体只支持这两种，SMILE 体积更小、es 解析更快
+     */
+    private XContentType contentType = XContentType.JSON;
+
+    public int getBulkActions() {
+        return bulkActions;
+    }
+
+    public void setBulkActions(int bulkActions) {
+        this.bulkActions = bulkActions;
+    }
+
+    public long getBulkSizeBytes() {
+        return bulkSizeBytes;
+    }
+
+    public void setBulkSizeBytes(long bulkSizeBytes) {
+        this.bulkSizeBytes = bulkSizeBytes;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public int getConcurrentRequests() {
+        return concurrentRequests;
+    }
+
+    public void setConcurrentRequests(int concurrentRequests) {
+        this.concurrentRequests = concurrentRequests;
+    }
+
+    public long getCloseTimeoutMillis() {
+        return closeTimeoutMillis;
+    }
+
+    public void setCloseTimeoutMillis(long closeTimeoutMillis) {
+        this.closeTimeoutMillis = closeTimeoutMillis;
+    }
+
+    public long getRetryInitialDelayMillis() {
+        return retryInitialDelayMillis;
+    }
+
+    public void setRetryInitialDelayMillis(long retryInitialDelayMillis) {
+        this.retryInitialDelayMillis = retryInitialDelayMillis;
+    }
+
+    public long getRetryMaxDelayMillis() {
+        return retryMaxDelayMillis;
+    }
+
+    public void setRetryMaxDelayMillis(long retryMaxDelayMillis) {
+        this.retryMaxDelayMillis = retryMaxDelayMillis;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public XContentType getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(XContentType contentType) {
+        this.contentType = contentType;
+    }
+}
@@ -0,0 +1,148 @@
+package com.lnjecit.elasticsearch.bulk;
+
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 同步 bulk 执行器，只重发被拒绝（429 / es_rejected_execution）的条目。
+ * <p>
+ * 已成功的条目不会重复写入；其他原因失败的条目（如 mapping 冲突）重试也不会成功，直接保留失败结果。
+ * 返回的 BulkResponse 条目顺序与原始请求一致，每个位置是该条目最后一次执行的结果。
+ */
+public class BulkRetryExecutor {
+    private static final Logger log = LoggerFactory.getLogger(BulkRetryExecutor.class);
+
+    private final RestHighLevelClient client;
+    private final BackoffPolicy backoffPolicy;
+
+    public BulkRetryExecutor(RestHighLevelClient client) {
+        this(client, new JitteredBackoffPolicy(50, 5_000, 8));
+    }
+
+    public BulkRetryExecutor(RestHighLevelClient client, BackoffPolicy backoffPolicy) {
+        this.client = client;
+        this.backoffPolicy = backoffPolicy;
+    }
+
+    public BulkResponse bulk(BulkRequest bulkRequest) throws IOException {
+        long start = System.nanoTime();
+        List<DocWriteRequest<?>> requests = bulkRequest.requests();
+        BulkItemResponse[] results = new BulkItemResponse[requests.size()];
+
+        // pending[i] 表示本轮请求中第 i 个条目在原始请求中的位置
+        int[] pending = new int[requests.size()];
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = i;
+        }
+        BulkRequest current = bulkRequest;
+        Iterator<TimeValue> backoff = backoffPolicy.iterator();
+
+        while (true) {
+            BulkResponse response;
+            try {
+                response = client.bulk(current, RequestOptions.DEFAULT);
+            } catch (ElasticsearchStatusException e) {
+                // 整个请求被拒绝时所有条目都没有写入，原样重发
+                if (e.status() != RestStatus.TOO_MANY_REQUESTS || !backoff.hasNext()) {
+                    throw e;
+                }
+                sleep(backoff.next(), pending.length);
+                continue;
+            }
+
+            int[] rejected = collectRejected(response, pending, results);
+            if (rejected.length == 0) {
+                break;
+            }
+            if (!backoff.hasNext()) {
+                log.warn("bulk retry budget exhausted, {} items still rejected", rejected.length);
+                break;
+            }
+            sleep(backoff.next(), rejected.length);
+            current = subRequest(bulkRequest, rejected);
+            pending = rejected;
+        }
+        return new BulkResponse(results, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * 记录本轮结果，返回被拒绝条目在原始请求中的位置
+     */
+    private static int[] collectRejected(BulkResponse response, int[] pending, BulkItemResponse[] results) {
+        BulkItemResponse[] items = response.getItems();
+        int[] rejected = new int[items.length];
+        int count = 0;
+        for (int i = 0; i < items.length; i++) {
+            BulkItemResponse item = items[i];
+            int position = pending[i];
+            results[position] = withItemId(item, position);
+            if (item.isFailed() && item.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS) {
+                rejected[count++] = position;
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(rejected, 0, result, 0, count);
+        return result;
+    }
+
+    private static BulkRequest subRequest(BulkRequest original, int[] positions) {
+        List<DocWriteRequest<?>> requests = original.requests();
+        BulkRequest retry = new BulkRequest();
+        retry.timeout(original.timeout());
+        retry.setRefreshPolicy(original.getRefreshPolicy());
+        for (int position : positions) {
+            retry.add(requests.get(position));
+        }
+        return retry;
+    }
+
+    /**
+     * 重试请求中的 itemId 是子请求内的下标，这里改回原始请求的下标
+     */
+    private static BulkItemResponse withItemId(BulkItemResponse item, int position) {
+        if (item.getItemId() == position) {
+            return item;
+        }
+        return item.isFailed()
+                ? new BulkItemResponse(position, item.getOpType(), item.getFailure())
+                : new BulkItemResponse(position, item.getOpType(), item.getResponse());
+    }
+
+    private static void sleep(TimeValue delay, int items) throws IOException {
+        log.debug("bulk rejected, retry {} items after {}", items, delay);
+        try {
+            Thread.sleep(delay.millis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for bulk retry");
+        }
+    }
+
+    /**
+     * 统计 BulkResponse 中失败的条目数
+     */
+    public static int countFailed(BulkResponse response) {
+        int failed = 0;
+        for (BulkItemResponse item : response.getItems()) {
+            if (item.isFailed()) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+}
@@ -0,0 +1,62 @@
+package com.lnjecit.elasticsearch.bulk;
+
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 带随机抖动的指数退避（full jitter）：第 n 次重试等待 random(0, min(max, initial * 2^n))。
+ * <p>
+ * 相比 {@link BackoffPolicy#exponentialBackoff()}，随机化的等待时间可以避免多个客户端
+ * 在同一时刻一起重试，再次把 write 线程池打满。
+ */
+public class JitteredBackoffPolicy extends BackoffPolicy {
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final int maxRetries;
+
+    /**
+     * @param initialDelayMillis 首次重试的最大等待时间
+     * @param maxDelayMillis     单次等待时间上限
+     * @param maxRetries         最大重试次数（重试预算）
+     */
+    public JitteredBackoffPolicy(long initialDelayMillis, long maxDelayMillis, int maxRetries) {
+        if (initialDelayMillis <= 0 || maxDelayMillis < initialDelayMillis || maxRetries < 0) {
+            throw new IllegalArgumentException("invalid backoff, initialDelayMillis: " + initialDelayMillis
+                    + ", maxDelayMillis: " + maxDelayMillis + ", maxRetries: " + maxRetries);
+        }
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxRetries = maxRetries;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    @Override
+    public Iterator<TimeValue> iterator() {
+        return new Iterator<TimeValue>() {
+            private int attempt;
+
+            @Override
+            public boolean hasNext() {
+                return attempt < maxRetries;
+            }
+
+            @Override
+            public TimeValue next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException("retry budget exhausted after " + maxRetries + " retries");
+                }
+                // 防止左移溢出
+                long ceiling = attempt >= 30 ? maxDelayMillis : Math.min(maxDelayMillis, initialDelayMillis << attempt);
+                attempt++;
+                return TimeValue.timeValueMillis(ThreadLocalRandom.current().nextLong(ceiling + 1));
+            }
+        };
+    }
+}
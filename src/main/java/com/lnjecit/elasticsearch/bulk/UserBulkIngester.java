@@ -0,0 +1,158 @@
+package com.lnjecit.elasticsearch.bulk;
+
+import com.lnjecit.elasticsearch.codec.UserSourceSerializer;
+import com.lnjecit.elasticsearch.domain.User;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * User 文档批量写入器，基于 BulkProcessor：
+ * <ul>
+ *     <li>按文档数、字节数、时间间隔任一条件分批刷新，内存占用与总数据量无关</li>
+ *     <li>允许多个 bulk 请求同时在途，全部占满时 add 阻塞调用线程</li>
+ *     <li>被拒绝(429)的条目按 {@link JitteredBackoffPolicy} 退避后单独重发</li>
+ *     <li>每批完成后回调 {@link BulkBatchStats}，可用于观察吞吐量</li>
+ * </ul>
+ * 线程安全，多个线程可同时 add。
+ */
+public class UserBulkIngester implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(UserBulkIngester.class);
+
+    private final String index;
+    private final BulkIngestConfig config;
+    private final BulkProcessor bulkProcessor;
+    private final Consumer<BulkBatchStats> statsConsumer;
+
+    private final Map<Long, Long> batchStartNanos = new ConcurrentHashMap<>();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public UserBulkIngester(RestHighLevelClient client, String index, BulkIngestConfig config) {
+        this(client, index, config, stats -> log.debug("bulk batch done: {}", stats));
+    }
+
+    public UserBulkIngester(RestHighLevelClient client, String index, BulkIngestConfig config,
+                            Consumer<BulkBatchStats> statsConsumer) {
+        if (config.getContentType() != XContentType.JSON && config.getContentType() != XContentType.SMILE) {
+            throw new IllegalArgumentException("bulk only supports JSON or SMILE content type: " + config.getContentType());
+        }
+        this.index = index;
+        this.config = config;
+        this.statsConsumer = statsConsumer;
+        this.bulkProcessor = BulkProcessor.builder(
+                (request, listener) -> client.bulkAsync(request, RequestOptions.DEFAULT, listener),
+                new StatsListener())
+                .setBulkActions(config.getBulkActions())
+                .setBulkSize(config.getBulkSizeBytes() < 0
+                        ? new ByteSizeValue(-1) : new ByteSizeValue(config.getBulkSizeBytes(), ByteSizeUnit.BYTES))
+                .setFlushInterval(config.getFlushIntervalMillis() < 0
+                        ? null : TimeValue.timeValueMillis(config.getFlushIntervalMillis()))
+                .setConcurrentRequests(config.getConcurrentRequests())
+                // BulkProcessor 只会重发被拒绝的条目
+                .setBackoffPolicy(new JitteredBackoffPolicy(config.getRetryInitialDelayMillis(),
+                        config.getRetryMaxDelayMillis(), config.getMaxRetries()))
+                .build();
+    }
+
+    /**
+     * 添加一个文档，达到刷新条件时自动发送；在途请求已满时阻塞
+     */
+    public void add(User user) {
+        IndexRequest request = new IndexRequest(index)
+                .id(user.getId().toString())
+                .source(UserSourceSerializer.toBytesReference(user, config.getContentType()), config.getContentType());
+        bulkProcessor.add(request);
+    }
+
+    public void addAll(Iterable<User> users) {
+        for (User user : users) {
+            add(user);
+        }
+    }
+
+    /**
+     * 立即发送当前缓冲的文档
+     */
+    public void flush() {
+        bulkProcessor.flush();
+    }
+
+    /**
+     * 累计写入成功的文档数
+     */
+    public long getSucceeded() {
+        return succeeded.get();
+    }
+
+    /**
+     * 累计写入失败的文档数
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * 发送剩余文档并等待所有在途请求完成
+     */
+    @Override
+    public void close() {
+        try {
+            if (!bulkProcessor.awaitClose(config.getCloseTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("bulk ingester close timeout, index: {}", index);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class StatsListener implements BulkProcessor.Listener {
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+            batchStartNanos.put(executionId, System.nanoTime());
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            int failedItems = 0;
+            if (response.hasFailures()) {
+                failedItems = BulkRetryExecutor.countFailed(response);
+                log.warn("bulk batch {} has {} failed items: {}", executionId, failedItems, response.buildFailureMessage());
+            }
+            succeeded.addAndGet(request.numberOfActions() - failedItems);
+            failed.addAndGet(failedItems);
+            report(executionId, request, failedItems);
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            log.error("bulk batch {} failed, actions: {}", executionId, request.numberOfActions(), failure);
+            failed.addAndGet(request.numberOfActions());
+            report(executionId, request, request.numberOfActions());
+        }
+
+        private void report(long executionId, BulkRequest request, int failedItems) {
+            Long start = batchStartNanos.remove(executionId);
+            long tookMillis = start == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            statsConsumer.accept(new BulkBatchStats(executionId, request.numberOfActions(),
+                    request.estimatedSizeInBytes(), failedItems, tookMillis));
+        }
+    }
+}
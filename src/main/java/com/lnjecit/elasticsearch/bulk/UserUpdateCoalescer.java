@@ -0,0 +1,229 @@
+package com.lnjecit.elasticsearch.bulk;
+
+import com.lnjecit.elasticsearch.domain.User;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * User 部分更新的写缓冲（write-behind）：窗口内对同一文档的多次更新合并成一个 UpdateRequest，通过 bulk 发送。
+ * <p>
+ * 合并规则是按字段后写者胜：更新中非 null 的字段覆盖之前的值，null 字段表示不修改。
+ * 所有 bulk 在同一个线程上依次执行，同一 id 在一个 bulk 中最多出现一次，上一个 bulk 完成前不会发送下一次更新，
+ * 因此同一 id 的更新按调用顺序生效。热点文档的写放大和版本冲突随之下降，代价是更新最多延迟一个窗口才可见。
+ * <p>
+ * 线程安全，多个线程可同时 update。返回的 future 在发送线程上完成，回调中可以再调用 flush/close。
+ */
+public class UserUpdateCoalescer implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(UserUpdateCoalescer.class);
+    /**
+     * 合并后仍可能与其他写入方冲突，由 es 重新读取后再应用
+     */
+    private static final int RETRY_ON_CONFLICT = 3;
+
+    private final String index;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final BulkRetryExecutor bulkExecutor;
+    private final ScheduledExecutorService scheduler;
+    private volatile Thread schedulerThread;
+
+    private Map<String, PendingUpdate> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduled;
+    private boolean closed;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+
+    /**
+     * @param windowMillis 合并窗口，第一个更新进入后开始计时
+     * @param maxBatchSize 待发送的文档数达到该值时立即发送
+     */
+    public UserUpdateCoalescer(RestHighLevelClient client, String index, long windowMillis, int maxBatchSize) {
+        this.index = index;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.bulkExecutor = new BulkRetryExecutor(client);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "es-update-coalescer");
+            thread.setDaemon(true);
+            schedulerThread = thread;
+            return thread;
+        });
+    }
+
+    /**
+     * 提交一次部分更新，user 的 id 必填，其余为 null 的字段不修改。
+     *
+     * @return 包含本次更新的 UpdateRequest 的执行结果，同一窗口内合并的更新得到同一个结果；
+     * close 之后提交的更新不会发送，返回的 future 以 IllegalStateException 失败
+     */
+    public CompletableFuture<DocWriteResponse> update(User user) {
+        if (user.getId() == null) {
+            throw new IllegalArgumentException("user id is required");
+        }
+        CompletableFuture<DocWriteResponse> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) {
+                future.completeExceptionally(new IllegalStateException("update coalescer is closed, index: " + index));
+                return future;
+            }
+            received.incrementAndGet();
+            pending.computeIfAbsent(user.getId().toString(), id -> new PendingUpdate()).merge(user, future);
+            // 在锁内提交，close 置位后不会再有任务提交到已关闭的 scheduler
+            if (pending.size() >= maxBatchSize) {
+                cancelScheduled();
+                scheduler.execute(this::send);
+            } else if (scheduled == null) {
+                scheduled = scheduler.schedule(this::send, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * 立即发送已合并的更新，并等待发送完成
+     */
+    public void flush() {
+        if (Thread.currentThread() == schedulerThread) {
+            // 在 future 的回调中调用时已经处于发送线程，提交给自己再等待会死锁
+            send();
+            return;
+        }
+        try {
+            scheduler.submit(this::send).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("update coalescer flush failed, index: {}", index, e.getCause());
+        }
+    }
+
+    /**
+     * 累计提交的更新数
+     */
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * 累计发送的 UpdateRequest 数，与 getReceived 之比即为合并后的写入比例
+     */
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * 发送剩余更新并停止定时器
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        flush();
+        scheduler.shutdown();
+    }
+
+    /**
+     * 只在 scheduler 线程上执行，保证 bulk 依次发送
+     */
+    private void send() {
+        Map<String, PendingUpdate> batch;
+        synchronized (this) {
+            cancelScheduled();
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new LinkedHashMap<>();
+        }
+        BulkRequest bulkRequest = new BulkRequest();
+        List<PendingUpdate> updates = new ArrayList<>(batch.size());
+        for (Map.Entry<String, PendingUpdate> entry : batch.entrySet()) {
+            bulkRequest.add(new UpdateRequest(index, entry.getKey())
+                    .doc(entry.getValue().fields)
+                    .retryOnConflict(RETRY_ON_CONFLICT));
+            updates.add(entry.getValue());
+        }
+        sent.addAndGet(updates.size());
+        try {
+            BulkResponse response = bulkExecutor.bulk(bulkRequest);
+            BulkItemResponse[] items = response.getItems();
+            for (int i = 0; i < items.length; i++) {
+                if (items[i].isFailed()) {
+                    updates.get(i).fail(items[i].getFailure().getCause());
+                } else {
+                    updates.get(i).complete(items[i].getResponse());
+                }
+            }
+        } catch (Exception e) {
+            log.error("coalesced update bulk failed, index: {}, documents: {}", index, updates.size(), e);
+            for (PendingUpdate update : updates) {
+                update.fail(e);
+            }
+        }
+    }
+
+    private void cancelScheduled() {
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+    }
+
+    /**
+     * 一个文档在当前窗口内合并后的字段和等待结果的调用方
+     */
+    private static final class PendingUpdate {
+        private final Map<String, Object> fields = new LinkedHashMap<>();
+        private final List<CompletableFuture<DocWriteResponse>> futures = new ArrayList<>(1);
+
+        void merge(User user, CompletableFuture<DocWriteResponse> future) {
+            fields.put("id", user.getId());
+            if (user.getName() != null) {
+                fields.put("name", user.getName());
+            }
+            if (user.getAge() != null) {
+                fields.put("age", user.getAge());
+            }
+            if (user.getSex() != null) {
+                fields.put("sex", user.getSex());
+            }
+            futures.add(future);
+        }
+
+        void complete(DocWriteResponse response) {
+            for (CompletableFuture<DocWriteResponse> future : futures) {
+                future.complete(response);
+            }
+        }
+
+        void fail(Throwable e) {
+            for (CompletableFuture<DocWriteResponse> future : futures) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.lnjecit.elasticsearch.client;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.NodeSelector;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 自适应节点选择：每个请求只发往预期最快响应的节点。
+ * <p>
+ * 按节点维护响应延迟和在途请求数的 EWMA（见 {@link NodeStats#score(double)}），选择评分最小的节点；
+ * 以 explorationRate 的概率随机选择，使变快的节点能重新获得流量。
+ * 请求失败的节点被拉黑，拉黑时间按连续失败次数指数增长；到期后由后台线程通过绑定的 RestClient 对该节点发送
+ * {@code GET /} 健康检查（与普通请求使用相同的 SSL、认证、默认请求头和超时），通过才恢复。
+ * 所有节点都被拉黑时选择最早到期的节点。
+ * <p>
+ * 同一个实例需要同时注册为 RestClient 的 NodeSelector、FailureListener 以及 HttpAsyncClient 的请求/响应拦截器，
+ * 并通过 {@link #decorate} 包装 HttpAsyncClient 统计在途请求，由 {@link EsClientFactory} 在
+ * {@link EsClientConfig#isAdaptiveRouting()} 开启时完成。
+ * 在途请求数在请求提交给 HttpAsyncClient 时加一，在回调完成、失败或取消时减一；
+ * 被取消的请求不经过响应拦截器和 FailureListener，只有回调能保证释放。
+ * 每个请求只保留一个节点，因此单个请求失败时不会在同一次调用中换节点重试。
+ */
+public class AdaptiveNodeSelector implements NodeSelector, HttpRequestInterceptor, HttpResponseInterceptor {
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveNodeSelector.class);
+    private static final String START_NANOS = AdaptiveNodeSelector.class.getName() + ".start";
+    /**
+     * 健康检查线程上正在检查的节点，select 只保留该节点
+     */
+    private static final ThreadLocal<HttpHost> PROBE_HOST = new ThreadLocal<>();
+
+    private static final ExecutorService PROBE_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "es-node-health-check");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, NodeStats> stats = new ConcurrentHashMap<>();
+    private final double alpha;
+    private final double explorationRate;
+    private final long blacklistNanos;
+    private final long maxBlacklistNanos;
+    private volatile RestClient restClient;
+
+    public AdaptiveNodeSelector(EsClientConfig config) {
+        this.alpha = config.getRoutingEwmaAlpha();
+        this.explorationRate = config.getRoutingExplorationRate();
+        this.blacklistNanos = TimeUnit.MILLISECONDS.toNanos(config.getBlacklistMillis());
+        this.maxBlacklistNanos = TimeUnit.MILLISECONDS.toNanos(config.getMaxBlacklistMillis());
+    }
+
+    @Override
+    public void select(Iterable<Node> nodes) {
+        HttpHost probeHost = PROBE_HOST.get();
+        if (probeHost != null) {
+            // 健康检查请求固定发往被检查的节点，RestClient 把它拉黑时也会从拉黑节点中选出
+            for (Iterator<Node> iterator = nodes.iterator(); iterator.hasNext(); ) {
+                if (!probeHost.equals(iterator.next().getHost())) {
+                    iterator.remove();
+                }
+            }
+            return;
+        }
+        long now = System.nanoTime();
+        // RestClient 不会把它自己拉黑的节点传进来，所以按全部已知节点检查拉黑是否到期
+        for (NodeStats nodeStats : stats.values()) {
+            if (nodeStats.isBlacklisted() && nodeStats.isBlacklistExpired(now)) {
+                probe(nodeStats);
+            }
+        }
+        Node best = null;
+        double bestScore = Double.MAX_VALUE;
+        Node earliest = null;
+        long earliestUntil = Long.MAX_VALUE;
+        int candidates = 0;
+        double unsampledLatency = meanLatencyNanos(nodes);
+        for (Node node : nodes) {
+            NodeStats nodeStats = stats(node.getHost());
+            if (nodeStats.isBlacklisted()) {
+                if (earliest == null || nodeStats.getBlacklistedUntilNanos() - earliestUntil < 0) {
+                    earliest = node;
+                    earliestUntil = nodeStats.getBlacklistedUntilNanos();
+                }
+                continue;
+            }
+            candidates++;
+            double score = nodeStats.score(unsampledLatency);
+            if (score < bestScore) {
+                best = node;
+                bestScore = score;
+            }
+        }
+        // 以 explorationRate 的概率改为均匀随机选择一个可用节点
+        if (candidates > 1 && ThreadLocalRandom.current().nextDouble() < explorationRate) {
+            int pick = ThreadLocalRandom.current().nextInt(candidates);
+            for (Node node : nodes) {
+                NodeStats nodeStats = stats(node.getHost());
+                if (!nodeStats.isBlacklisted() && pick-- == 0) {
+                    best = node;
+                    break;
+                }
+            }
+        }
+        if (best == null) {
+            best = earliest;
+        }
+        if (best == null) {
+            return;
+        }
+        for (Iterator<Node> iterator = nodes.iterator(); iterator.hasNext(); ) {
+            if (iterator.next() != best) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 可用节点中已有样本的延迟 EWMA 均值，都没有样本时为 1，只按在途请求数分配
+     */
+    private double meanLatencyNanos(Iterable<Node> nodes) {
+        double sum = 0;
+        int sampled = 0;
+        for (Node node : nodes) {
+            NodeStats nodeStats = stats(node.getHost());
+            double latency = nodeStats.getEwmaLatencyMillis();
+            if (!nodeStats.isBlacklisted() && latency >= 0) {
+                sum += latency * 1_000_000d;
+                sampled++;
+            }
+        }
+        return sampled == 0 ? 1 : sum / sampled;
+    }
+
+    /**
+     * 包装 RestClient 使用的 HttpAsyncClientBuilder，使构建出的 client 跟踪每个请求的在途状态
+     */
+    public HttpAsyncClientBuilder decorate(HttpAsyncClientBuilder builder) {
+        return new HttpAsyncClientBuilder() {
+            @Override
+            public CloseableHttpAsyncClient build() {
+                return new TrackingClient(builder.build());
+            }
+        };
+    }
+
+    /**
+     * 绑定使用该选择器的 RestClient，健康检查通过它发送。RestClient 自身也会把失败节点拉黑至少 1 分钟，
+     * 节点通过健康检查后需要重新设置节点列表来清除它的黑名单。未绑定时拉黑到期直接恢复
+     */
+    public void attach(RestClient restClient) {
+        this.restClient = restClient;
+    }
+
+    /**
+     * RestClient 在节点请求失败（I/O 异常或 502/503/504）时回调
+     */
+    public RestClient.FailureListener failureListener() {
+        return new RestClient.FailureListener() {
+            @Override
+            public void onFailure(Node node) {
+                NodeStats nodeStats = stats(node.getHost());
+                if (PROBE_HOST.get() != null) {
+                    // 健康检查的失败由 probe 自己计入
+                    return;
+                }
+                nodeStats.onFailure(blacklistNanos, maxBlacklistNanos);
+                log.warn("es node {} failed {} times in a row, blacklisted", node.getHost(), nodeStats.getConsecutiveFailures());
+            }
+        };
+    }
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) {
+        context.setAttribute(START_NANOS, System.nanoTime());
+    }
+
+    @Override
+    public void process(HttpResponse response, HttpContext context) {
+        Object start = context.getAttribute(START_NANOS);
+        HttpHost host = HttpCoreContext.adapt(context).getTargetHost();
+        int status = response.getStatusLine().getStatusCode();
+        // 502/503/504 由 failureListener 计为失败
+        if (start == null || host == null || (status >= 502 && status <= 504)) {
+            return;
+        }
+        stats(host).onResponse(System.nanoTime() - (Long) start);
+    }
+
+    /**
+     * 提交请求时计入目标节点的在途请求，回调结束时释放，其余调用直接委托
+     */
+    private final class TrackingClient extends CloseableHttpAsyncClient {
+        private final CloseableHttpAsyncClient delegate;
+
+        TrackingClient(CloseableHttpAsyncClient delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public <T> Future<T> execute(HttpAsyncRequestProducer requestProducer, HttpAsyncResponseConsumer<T> responseConsumer,
+                                     HttpContext context, FutureCallback<T> callback) {
+            HttpHost host = requestProducer.getTarget();
+            if (host == null) {
+                return delegate.execute(requestProducer, responseConsumer, context, callback);
+            }
+            NodeStats nodeStats = stats(host);
+            nodeStats.onSent();
+            ReleasingCallback<T> releasing = new ReleasingCallback<>(nodeStats, callback);
+            try {
+                return delegate.execute(requestProducer, responseConsumer, context, releasing);
+            } catch (RuntimeException e) {
+                releasing.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean isRunning() {
+            return delegate.isRunning();
+        }
+
+        @Override
+        public void start() {
+            delegate.start();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+
+    /**
+     * 请求以任何方式结束时释放一次在途计数，再通知 RestClient 的回调
+     */
+    private static final class ReleasingCallback<T> implements FutureCallback<T> {
+        private final NodeStats nodeStats;
+        private final FutureCallback<T> delegate;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ReleasingCallback(NodeStats nodeStats, FutureCallback<T> delegate) {
+            this.nodeStats = nodeStats;
+            this.delegate = delegate;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                nodeStats.onDone();
+            }
+        }
+
+        @Override
+        public void completed(T result) {
+            release();
+            if (delegate != null) {
+                delegate.completed(result);
+            }
+        }
+
+        @Override
+        public void failed(Exception ex) {
+            release();
+            if (delegate != null) {
+                delegate.failed(ex);
+            }
+        }
+
+        @Override
+        public void cancelled() {
+            release();
+            if (delegate != null) {
+                delegate.cancelled();
+            }
+        }
+    }
+
+    /**
+     * 节点的路由统计
+     */
+    public NodeStats getStats(HttpHost host) {
+        return stats(host);
+    }
+
+    public Collection<NodeStats> getAllStats() {
+        return stats.values();
+    }
+
+    private NodeStats stats(HttpHost host) {
+        return stats.computeIfAbsent(host.toHostString(), key -> new NodeStats(host, alpha));
+    }
+
+    private void probe(NodeStats nodeStats) {
+        if (!nodeStats.probing.compareAndSet(false, true)) {
+            return;
+        }
+        PROBE_EXECUTOR.execute(() -> {
+            RestClient client = restClient;
+            try {
+                long start = System.nanoTime();
+                if (client == null || healthy(client, nodeStats.getHost())) {
+                    nodeStats.reinstate(System.nanoTime() - start);
+                    if (client != null) {
+                        client.setNodes(client.getNodes());
+                    }
+                    log.info("es node {} passed health check, reinstated", nodeStats.getHost());
+                } else {
+                    nodeStats.onFailure(blacklistNanos, maxBlacklistNanos);
+                }
+            } finally {
+                nodeStats.probing.set(false);
+            }
+        });
+    }
+
+    private boolean healthy(RestClient client, HttpHost host) {
+        PROBE_HOST.set(host);
+        try {
+            client.performRequest(new Request("GET", "/"));
+            return true;
+        } catch (ResponseException e) {
+            // 4xx（如无权访问 /）说明节点可以正常处理请求
+            return e.getResponse().getStatusLine().getStatusCode() < 500;
+        } catch (IOException | RuntimeException e) {
+            log.debug("es node {} health check failed", host, e);
+            return false;
+        } finally {
+            PROBE_HOST.remove();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.lnjecit.elasticsearch.client;
+
+import com.lnjecit.elasticsearch.codec.UserHitDecoder;
+import com.lnjecit.elasticsearch.codec.UserSourceSerializer;
+import com.lnjecit.elasticsearch.domain.User;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * User 文档的异步 API，基于 RestHighLevelClient 的 *Async 方法，调用线程不会阻塞等待响应。
+ * <p>
+ * 返回的 CompletableFuture 可以组合使用；调用 {@code cancel} 会同时取消底层的 HTTP 请求。
+ * 响应解码在 decodeExecutor 上执行，避免占用 HTTP 客户端的 I/O reactor 线程。
+ */
+public class AsyncUserClient {
+    private final RestHighLevelClient client;
+    private final String index;
+    private final Executor decodeExecutor;
+
+    /**
+     * 在 I/O reactor 线程上直接解码，适合结果较小的场景
+     */
+    public AsyncUserClient(RestHighLevelClient client, String index) {
+        this(client, index, Runnable::run);
+    }
+
+    public AsyncUserClient(RestHighLevelClient client, String index, Executor decodeExecutor) {
+        this.client = client;
+        this.index = index;
+        this.decodeExecutor = decodeExecutor;
+    }
+
+    public CompletableFuture<IndexResponse> index(User user) {
+        IndexRequest request = new IndexRequest(index)
+                .id(user.getId().toString())
+                .source(UserSourceSerializer.toBytesReference(user), XContentType.JSON);
+        return call(listener -> client.indexAsync(request, RequestOptions.DEFAULT, listener));
+    }
+
+    /**
+     * 按 id 查询，文档不存在时结果为 null
+     */
+    public CompletableFuture<User> get(String id) {
+        GetRequest request = new GetRequest(index, id);
+        CompletableFuture<GetResponse> future = call(listener -> client.getAsync(request, RequestOptions.DEFAULT, listener));
+        return decode(future, response -> response.isExists() ? decodeSource(response.getSourceAsBytesRef()) : null);
+    }
+
+    /**
+     * 按 id 更新文档，user 中为 null 的字段也会被更新为 null
+     */
+    public CompletableFuture<UpdateResponse> update(User user) {
+        UpdateRequest request = new UpdateRequest(index, user.getId().toString())
+                .doc(UserSourceSerializer.toBytes(user), XContentType.JSON);
+        return call(listener -> client.updateAsync(request, RequestOptions.DEFAULT, listener));
+    }
+
+    public CompletableFuture<DeleteResponse> delete(String id) {
+        DeleteRequest request = new DeleteRequest(index, id);
+        return call(listener -> client.deleteAsync(request, RequestOptions.DEFAULT, listener));
+    }
+
+    public CompletableFuture<BulkResponse> bulkIndex(List<User> users) {
+        BulkRequest request = new BulkRequest();
+        for (User user : users) {
+            request.add(new IndexRequest(index)
+                    .id(user.getId().toString())
+                    .source(UserSourceSerializer.toBytesReference(user), XContentType.JSON));
+        }
+        return call(listener -> client.bulkAsync(request, RequestOptions.DEFAULT, listener));
+    }
+
+    /**
+     * 执行查询并解码命中的 User
+     */
+    public CompletableFuture<List<User>> search(SearchSourceBuilder sourceBuilder) {
+        return decode(searchResponse(new SearchRequest(index).source(sourceBuilder)), response -> {
+            try {
+                return UserHitDecoder.decodeAll(response.getHits());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * 执行查询并返回原始响应，用于读取聚合等结果
+     */
+    public CompletableFuture<SearchResponse> searchResponse(SearchRequest request) {
+        return call(listener -> client.searchAsync(request, RequestOptions.DEFAULT, listener));
+    }
+
+    private <T, R> CompletableFuture<R> decode(CompletableFuture<T> future, Function<T, R> decoder) {
+        CompletableFuture<R> decoded = future.thenApplyAsync(decoder, decodeExecutor);
+        // 取消解码后的 future 时同时取消请求
+        decoded.whenComplete((result, e) -> {
+            if (decoded.isCancelled()) {
+                future.cancel(false);
+            }
+        });
+        return decoded;
+    }
+
+    private static User decodeSource(BytesReference source) {
+        try {
+            return UserHitDecoder.decode(source);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 把 ActionListener 回调转换为 CompletableFuture，future 被取消时取消 HTTP 请求
+     */
+    private static <T> CompletableFuture<T> call(Function<ActionListener<T>, Cancellable> invoker) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Cancellable cancellable = invoker.apply(ActionListener.wrap(future::complete, future::completeExceptionally));
+        future.whenComplete((result, e) -> {
+            if (future.isCancelled()) {
+                cancellable.cancel();
+            }
+        });
+        return future;
+    }
+}
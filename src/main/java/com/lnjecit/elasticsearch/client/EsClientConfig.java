@@ -0,0 +1,236 @@
+package com.lnjecit.elasticsearch.client;
+
+import com.lnjecit.elasticsearch.metrics.MetricsRegistry;
+import org.apache.http.HttpHost;
+import org.elasticsearch.common.xcontent.XContentType;
+
+/**
+ * es客户端连接配置，一个配置对应一个集群
+ */
+public class EsClientConfig {
+    /**
+     * 集群名称，同名集群共享同一个客户端
+     */
+    private String clusterName = "default";
+    private HttpHost[] hosts = {new HttpHost("localhost", 9200, "http")};
+    /**
+     * 连接池最大连接数
+     */
+    private int maxConnTotal = 100;
+    /**
+     * 每个节点(route)最大连接数
+     */
+    private int maxConnPerRoute = 50;
+    /**
+     * 连接空闲保活时间，服务端未返回 Keep-Alive 时使用
+     */
+    private long keepAliveMillis = 60_000L;
+    /**
+     * I/O reactor 线程数，默认等于 CPU 核数
+     */
+    private int ioThreadCount = Runtime.getRuntime().availableProcessors();
+    private int connectTimeoutMillis = 1_000;
+    private int socketTimeoutMillis = 30_000;
+    /**
+     * 从连接池获取连接的超时时间
+     */
+    private int connectionRequestTimeoutMillis = 1_000;
+    /**
+     * 指标注册表，设置后记录 HTTP 请求/响应字节数和连接池状态
+     */
+    private MetricsRegistry metricsRegistry;
+    /**
+     * 自适应节点选择：按延迟和在途请求数选择节点，失败节点拉黑并健康检查后恢复，见 {@link AdaptiveNodeSelector}
+     */
+    private boolean adaptiveRouting;
+    /**
+     * 延迟、在途请求数 EWMA 的平滑系数，越大越偏重最近的样本
+     */
+    private double routingEwmaAlpha = 0.3;
+    /**
+     * 随机选择节点的概率，使变快的节点重新获得流量
+     */
+    private double routingExplorationRate = 0.05;
+    /**
+     * 失败节点首次拉黑时间，连续失败时翻倍
+     */
+    private long blacklistMillis = 1_000L;
+    private long maxBlacklistMillis = 60_000L;
+    /**
+     * 节点发现间隔，大于 0 时定时请求 _nodes/http 更新节点列表
+     */
+    private long sniffIntervalMillis;
+    /**
+     * 请求体不小于该字节数时 gzip 压缩，并要求 es 返回压缩的响应，-1 表示不压缩，见 {@link GzipCompression}
+     */
+    private long compressionThresholdBytes = -1;
+    /**
+     * gzip 压缩级别 1-9，带宽是瓶颈时可以调高，默认最快的 1 已能把 JSON 压缩到原来的 1/5 左右
+     */
+    private int compressionLevel = 1;
+    /**
+     * 要求 es 返回的响应格式，设为 SMILE / CBOR 时响应和其中的 _source 都是二进制格式，体积更小、解析更快；
+     * null 表示默认的 JSON，见 {@link com.lnjecit.elasticsearch.codec.UserHitDecoder}
+     */
+    private XContentType responseContentType;
+
+    public EsClientConfig() {
+    }
+
+    public EsClientConfig(String clusterName, HttpHost... hosts) {
+        this.clusterName = clusterName;
+        this.hosts = hosts;
+    }
+
+    public String getClusterName() {
+        return clusterName;
+    }
+
+    public void setClusterName(String clusterName) {
+        this.clusterName = clusterName;
+    }
+
+    public HttpHost[] getHosts() {
+        return hosts;
+    }
+
+    public void setHosts(HttpHost... hosts) {
+        this.hosts = hosts;
+    }
+
+    public int getMaxConnTotal() {
+        return maxConnTotal;
+    }
+
+    public void setMaxConnTotal(int maxConnTotal) {
+        this.maxConnTotal = maxConnTotal;
+    }
+
+    public int getMaxConnPerRoute() {
+        return maxConnPerRoute;
+    }
+
+    public void setMaxConnPerRoute(int maxConnPerRoute) {
+        this.maxConnPerRoute = maxConnPerRoute;
+    }
+
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    public void setKeepAliveMillis(long keepAliveMillis) {
+        this.keepAliveMillis = keepAliveMillis;
+    }
+
+    public int getIoThreadCount() {
+        return ioThreadCount;
+    }
+
+    public void setIoThreadCount(int ioThreadCount) {
+        this.ioThreadCount = ioThreadCount;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public int getSocketTimeoutMillis() {
+        return socketTimeoutMillis;
+    }
+
+    public void setSocketTimeoutMillis(int socketTimeoutMillis) {
+        this.socketTimeoutMillis = socketTimeoutMillis;
+    }
+
+    public int getConnectionRequestTimeoutMillis() {
+        return connectionRequestTimeoutMillis;
+    }
+
+    public void setConnectionRequestTimeoutMillis(int connectionRequestTimeoutMillis) {
+        this.connectionRequestTimeoutMillis = connectionRequestTimeoutMillis;
+    }
+
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    public boolean isAdaptiveRouting() {
+        return adaptiveRouting;
+    }
+
+    public void setAdaptiveRouting(boolean adaptiveRouting) {
+        this.adaptiveRouting = adaptiveRouting;
+    }
+
+    public double getRoutingEwmaAlpha() {
+        return routingEwmaAlpha;
+    }
+
+    public void setRoutingEwmaAlpha(double routingEwmaAlpha) {
+        this.routingEwmaAlpha = routingEwmaAlpha;
+    }
+
+    public double getRoutingExplorationRate() {
+        return routingExplorationRate;
+    }
+
+    public void setRoutingExplorationRate(double routingExplorationRate) {
+        this.routingExplorationRate = routingExplorationRate;
+    }
+
+    public long getBlacklistMillis() {
+        return blacklistMillis;
+    }
+
+    public void setBlacklistMillis(long blacklistMillis) {
+        this.blacklistMillis = blacklistMillis;
+    }
+
+    public long getMaxBlacklistMillis() {
+        return maxBlacklistMillis;
+    }
+
+    public void setMaxBlacklistMillis(long maxBlacklistMillis) {
+        this.maxBlacklistMillis = maxBlacklistMillis;
+    }
+
+    public long getSniffIntervalMillis() {
+        return sniffIntervalMillis;
+    }
+
+    public void setSniffIntervalMillis(long sniffIntervalMillis) {
+        this.sniffIntervalMillis = sniffIntervalMillis;
+    }
+
+    public long getCompressionThresholdBytes() {
+        return compressionThresholdBytes;
+    }
+
+    public void setCompressionThresholdBytes(long compressionThresholdBytes) {
+        this.compressionThresholdBytes = compressionThresholdBytes;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public XContentType getResponseContentType() {
+        return responseContentType;
+    }
+
+    public void setResponseContentType(XContentType responseContentType) {
+        this.responseContentType = responseContentType;
+    }
+}
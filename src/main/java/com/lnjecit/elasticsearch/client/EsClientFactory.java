@@ -0,0 +1,245 @@
+package com.lnjecit.elasticsearch.client;
+
+import com.lnjecit.elasticsearch.metrics.EsMetrics;
+import com.lnjecit.elasticsearch.metrics.HttpMetricsInterceptor;
+import com.lnjecit.elasticsearch.metrics.MetricsRegistry;
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.protocol.HTTP;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestClientBuilder;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * es客户端工厂：每个集群只创建一个长连接客户端，所有调用方共享。
+ * <p>
+ * RestHighLevelClient 是线程安全的，内部持有连接池和 I/O reactor 线程，
+ * 重复创建会让每次请求都付出建连和线程启动的开销。
+ */
+public final class EsClientFactory {
+    private static final Logger log = LoggerFactory.getLogger(EsClientFactory.class);
+
+    private static final Map<String, RestHighLevelClient> CLIENTS = new ConcurrentHashMap<>();
+    private static final Map<String, AdaptiveNodeSelector> NODE_SELECTORS = new ConcurrentHashMap<>();
+    private static final Map<String, NodeSniffer> SNIFFERS = new ConcurrentHashMap<>();
+    private static final Map<String, GzipCompression> COMPRESSIONS = new ConcurrentHashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(EsClientFactory::closeAll, "es-client-shutdown"));
+    }
+
+    private EsClientFactory() {
+    }
+
+    /**
+     * 获取默认集群(localhost:9200)的客户端
+     */
+    public static RestHighLevelClient getClient() {
+        return getClient(new EsClientConfig());
+    }
+
+    /**
+     * 获取指定集群的客户端，同一 clusterName 只会按第一次传入的配置创建一次
+     */
+    public static RestHighLevelClient getClient(EsClientConfig config) {
+        return CLIENTS.computeIfAbsent(config.getClusterName(), name -> createClient(config));
+    }
+
+    /**
+     * 开启自适应节点选择时，指定集群客户端使用的节点选择器，可以查看各节点的路由统计
+     */
+    public static AdaptiveNodeSelector getNodeSelector(String clusterName) {
+        return NODE_SELECTORS.get(clusterName);
+    }
+
+    /**
+     * 开启压缩时，指定集群客户端的压缩统计
+     */
+    public static GzipCompression getCompression(String clusterName) {
+        return COMPRESSIONS.get(clusterName);
+    }
+
+    /**
+     * 按配置构建 RestClientBuilder，供需要自定义 low-level client 的场景复用。
+     * 开启自适应节点选择时，构建出 RestClient 后需要调用 {@link AdaptiveNodeSelector#attach(RestClient)}
+     */
+    public static RestClientBuilder builder(EsClientConfig config) {
+        return builder(config, config.isAdaptiveRouting() ? new AdaptiveNodeSelector(config) : null, compression(config));
+    }
+
+    private static RestClientBuilder builder(EsClientConfig config, AdaptiveNodeSelector nodeSelector,
+                                             GzipCompression compression) {
+        RestClientBuilder builder = RestClient.builder(config.getHosts());
+        if (nodeSelector != null) {
+            builder.setNodeSelector(nodeSelector).setFailureListener(nodeSelector.failureListener());
+        }
+        if (config.getResponseContentType() != null) {
+            // 默认请求头，单个请求在 RequestOptions 中指定 Accept 时以请求的为准
+            builder.setDefaultHeaders(new Header[]{
+                    new BasicHeader(HttpHeaders.ACCEPT, config.getResponseContentType().mediaTypeWithoutParameters())});
+        }
+        return builder
+                .setRequestConfigCallback(requestConfig -> requestConfig
+                        .setConnectTimeout(config.getConnectTimeoutMillis())
+                        .setSocketTimeout(config.getSocketTimeoutMillis())
+                        .setConnectionRequestTimeout(config.getConnectionRequestTimeoutMillis()))
+                .setHttpClientConfigCallback(httpClient -> {
+                    PoolingNHttpClientConnectionManager connectionManager = connectionManager(config);
+                    httpClient.setConnectionManager(connectionManager)
+                            .setKeepAliveStrategy(keepAliveStrategy(config.getKeepAliveMillis()));
+                    if (nodeSelector != null) {
+                        httpClient.addInterceptorLast((HttpRequestInterceptor) nodeSelector);
+                        httpClient.addInterceptorLast((HttpResponseInterceptor) nodeSelector);
+                    }
+
+                    if (compression != null) {
+                        httpClient.addInterceptorLast(compression);
+                    }
+
+                    MetricsRegistry registry = config.getMetricsRegistry();
+                    if (registry != null) {
+                        HttpMetricsInterceptor interceptor = new HttpMetricsInterceptor(registry);
+                        httpClient.addInterceptorLast((HttpRequestInterceptor) interceptor);
+                        httpClient.addInterceptorLast((HttpResponseInterceptor) interceptor);
+                        registerPoolGauges(registry, config.getClusterName(), connectionManager);
+                    }
+                    HttpAsyncClientBuilder decorated = nodeSelector == null ? httpClient : nodeSelector.decorate(httpClient);
+                    return compression == null ? decorated : compression.decorate(decorated);
+                });
+    }
+
+    /**
+     * 关闭指定集群的客户端
+     */
+    public static void close(String clusterName) {
+        NodeSniffer sniffer = SNIFFERS.remove(clusterName);
+        if (sniffer != null) {
+            sniffer.close();
+        }
+        NODE_SELECTORS.remove(clusterName);
+        COMPRESSIONS.remove(clusterName);
+        RestHighLevelClient client = CLIENTS.remove(clusterName);
+        if (client != null) {
+            closeQuietly(clusterName, client);
+        }
+    }
+
+    /**
+     * 关闭所有客户端，JVM 退出时自动调用
+     */
+    public static void closeAll() {
+        for (String clusterName : CLIENTS.keySet()) {
+            close(clusterName);
+        }
+    }
+
+    private static RestHighLevelClient createClient(EsClientConfig config) {
+        log.info("create es client, cluster: {}, maxConnTotal: {}, maxConnPerRoute: {}, ioThreadCount: {}",
+                config.getClusterName(), config.getMaxConnTotal(), config.getMaxConnPerRoute(), config.getIoThreadCount());
+        AdaptiveNodeSelector nodeSelector = config.isAdaptiveRouting() ? new AdaptiveNodeSelector(config) : null;
+        GzipCompression compression = compression(config);
+        RestHighLevelClient client = new RestHighLevelClient(builder(config, nodeSelector, compression));
+        if (nodeSelector != null) {
+            nodeSelector.attach(client.getLowLevelClient());
+            NODE_SELECTORS.put(config.getClusterName(), nodeSelector);
+        }
+        if (compression != null) {
+            COMPRESSIONS.put(config.getClusterName(), compression);
+        }
+        if (config.getSniffIntervalMillis() > 0) {
+            SNIFFERS.put(config.getClusterName(), new NodeSniffer(client.getLowLevelClient(),
+                    config.getHosts()[0].getSchemeName(), config.getSniffIntervalMillis()));
+        }
+        return client;
+    }
+
+    private static GzipCompression compression(EsClientConfig config) {
+        return config.getCompressionThresholdBytes() < 0
+                ? null : new GzipCompression(config.getCompressionThresholdBytes(), config.getCompressionLevel());
+    }
+
+    /**
+     * 自行创建连接池而不是交给 HttpAsyncClientBuilder，以便读取连接池状态
+     */
+    private static PoolingNHttpClientConnectionManager connectionManager(EsClientConfig config) {
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(config.getIoThreadCount())
+                .setConnectTimeout(config.getConnectTimeoutMillis())
+                .setSoKeepAlive(true)
+                .setTcpNoDelay(true)
+                .build();
+        Registry<SchemeIOSessionStrategy> strategies = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register("http", NoopIOSessionStrategy.INSTANCE)
+                .register("https", SSLIOSessionStrategy.getDefaultStrategy())
+                .build();
+        try {
+            PoolingNHttpClientConnectionManager connectionManager =
+                    new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig), strategies);
+            connectionManager.setMaxTotal(config.getMaxConnTotal());
+            connectionManager.setDefaultMaxPerRoute(config.getMaxConnPerRoute());
+            return connectionManager;
+        } catch (IOReactorException e) {
+            throw new IllegalStateException("create es connection manager failed, cluster: " + config.getClusterName(), e);
+        }
+    }
+
+    private static void registerPoolGauges(MetricsRegistry registry, String clusterName,
+                                           PoolingNHttpClientConnectionManager connectionManager) {
+        registry.registerGauge(EsMetrics.POOL_LEASED, clusterName, () -> connectionManager.getTotalStats().getLeased());
+        registry.registerGauge(EsMetrics.POOL_PENDING, clusterName, () -> connectionManager.getTotalStats().getPending());
+        registry.registerGauge(EsMetrics.POOL_AVAILABLE, clusterName, () -> connectionManager.getTotalStats().getAvailable());
+        registry.registerGauge(EsMetrics.POOL_MAX, clusterName, () -> connectionManager.getTotalStats().getMax());
+    }
+
+    /**
+     * 优先使用服务端返回的 Keep-Alive timeout，否则使用配置的保活时间
+     */
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(long defaultKeepAliveMillis) {
+        return (response, context) -> {
+            HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+            while (it.hasNext()) {
+                HeaderElement element = it.nextElement();
+                if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                    try {
+                        return Long.parseLong(element.getValue()) * 1000L;
+                    } catch (NumberFormatException ignore) {
+                        // 非法值，使用默认保活时间
+                    }
+                }
+            }
+            return defaultKeepAliveMillis;
+        };
+    }
+
+    private static void closeQuietly(String clusterName, RestHighLevelClient client) {
+        try {
+            client.close();
+            log.info("close es client, cluster: {}", clusterName);
+        } catch (IOException e) {
+            log.warn("close es client failed, cluster: {}", clusterName, e);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.lnjecit.elasticsearch.client;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HTTP 层 gzip 压缩：请求体达到阈值时压缩后发送，并通过 Accept-Encoding 要求 es 返回压缩的响应。
+ * <p>
+ * RestClient 在 HttpAsyncClient 的拦截器执行之前就按原始实体创建了请求生成器，所以请求体在提交给
+ * HttpAsyncClient 时压缩（见 {@link #decorate}），拦截器只负责添加 Accept-Encoding。
+ * 压缩的响应在接收完成后由包装的响应消费者解压并统计压缩前后的字节数，再去掉 Content-Encoding 交给 RestClient，
+ * 不会重复解压；es 的压缩响应使用分块传输，没有 Content-Length，所以按实际接收的字节计数。
+ * es 默认开启 http.compression，接收压缩请求、按 Accept-Encoding 压缩响应都不需要额外配置。
+ * <p>
+ * 由 {@link EsClientFactory} 在 {@link EsClientConfig#getCompressionThresholdBytes()} 不小于 0 时注册，
+ * 通过 {@link EsClientFactory#getCompression(String)} 查看节省的字节数。
+ */
+public class GzipCompression implements HttpRequestInterceptor {
+    private static final Logger log = LoggerFactory.getLogger(GzipCompression.class);
+    private static final String GZIP = "gzip";
+
+    private final long thresholdBytes;
+    private final int level;
+
+    private final AtomicLong compressedRequests = new AtomicLong();
+    private final AtomicLong requestBytes = new AtomicLong();
+    private final AtomicLong requestWireBytes = new AtomicLong();
+    private final AtomicLong compressedResponses = new AtomicLong();
+    private final AtomicLong responseWireBytes = new AtomicLong();
+    private final AtomicLong responseBytes = new AtomicLong();
+
+    /**
+     * @param thresholdBytes 请求体不小于该字节数时压缩
+     * @param level          压缩级别 1-9，1 最快，9 压缩率最高
+     */
+    public GzipCompression(long thresholdBytes, int level) {
+        if (level < 1 || level > 9) {
+            throw new IllegalArgumentException("compression level must be between 1 and 9: " + level);
+        }
+        this.thresholdBytes = thresholdBytes;
+        this.level = level;
+    }
+
+    /**
+     * 包装 RestClient 使用的 HttpAsyncClientBuilder，使构建出的 client 在发送前压缩请求体
+     */
+    public HttpAsyncClientBuilder decorate(HttpAsyncClientBuilder builder) {
+        return new HttpAsyncClientBuilder() {
+            @Override
+            public CloseableHttpAsyncClient build() {
+                return new CompressingClient(builder.build());
+            }
+        };
+    }
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) {
+        if (!request.containsHeader(HttpHeaders.ACCEPT_ENCODING)) {
+            request.addHeader(HttpHeaders.ACCEPT_ENCODING, GZIP);
+        }
+    }
+
+    /**
+     * 请求体达到阈值时替换为压缩后的实体。RestClient 换节点重试时复用同一个请求对象，已压缩的实体不会重复压缩
+     */
+    private void compress(HttpRequest request) throws IOException {
+        if (!(request instanceof HttpEntityEnclosingRequest)) {
+            return;
+        }
+        HttpEntityEnclosingRequest entityRequest = (HttpEntityEnclosingRequest) request;
+        HttpEntity entity = entityRequest.getEntity();
+        // 长度未知或已经压缩过（如 RestClientBuilder#setCompressionEnabled）的实体不处理
+        if (entity == null || entity.getContentLength() < thresholdBytes || entity.getContentEncoding() != null) {
+            return;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.max(64, entity.getContentLength() / 4));
+        try (GZIPOutputStream gzip = new LevelGzipOutputStream(out, level)) {
+            entity.writeTo(gzip);
+        }
+        ByteArrayEntity compressed = new ByteArrayEntity(out.toByteArray());
+        compressed.setContentType(entity.getContentType());
+        compressed.setContentEncoding(GZIP);
+        entityRequest.setEntity(compressed);
+
+        compressedRequests.incrementAndGet();
+        requestBytes.addAndGet(entity.getContentLength());
+        requestWireBytes.addAndGet(compressed.getContentLength());
+    }
+
+    /**
+     * 解压已完整接收的 gzip 响应，替换为解压后的实体并去掉压缩相关的响应头
+     */
+    private void decompress(HttpResponse response) throws IOException {
+        HttpEntity entity = response.getEntity();
+        Header encoding = entity == null ? null : entity.getContentEncoding();
+        if (encoding == null || !GZIP.equalsIgnoreCase(encoding.getValue())) {
+            return;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        entity.writeTo(compressed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.size() * 4);
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = gzip.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        Header contentType = entity.getContentType();
+        response.setEntity(new ByteArrayEntity(out.toByteArray(),
+                contentType == null ? null : ContentType.parse(contentType.getValue())));
+        response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+        response.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+
+        compressedResponses.incrementAndGet();
+        responseWireBytes.addAndGet(compressed.size());
+        responseBytes.addAndGet(out.size());
+    }
+
+    /**
+     * 压缩发送的请求数
+     */
+    public long getCompressedRequests() {
+        return compressedRequests.get();
+    }
+
+    /**
+     * 压缩发送的请求在压缩前的字节数
+     */
+    public long getRequestBytes() {
+        return requestBytes.get();
+    }
+
+    /**
+     * 压缩发送的请求实际传输的字节数
+     */
+    public long getRequestWireBytes() {
+        return requestWireBytes.get();
+    }
+
+    /**
+     * 收到的压缩响应数
+     */
+    public long getCompressedResponses() {
+        return compressedResponses.get();
+    }
+
+    /**
+     * 压缩响应实际传输的字节数
+     */
+    public long getResponseWireBytes() {
+        return responseWireBytes.get();
+    }
+
+    /**
+     * 压缩响应解压后的字节数
+     */
+    public long getResponseBytes() {
+        return responseBytes.get();
+    }
+
+    /**
+     * 压缩响应节省的传输字节数
+     */
+    public long getSavedResponseBytes() {
+        return responseBytes.get() - responseWireBytes.get();
+    }
+
+    /**
+     * 压缩请求节省的传输字节数
+     */
+    public long getSavedRequestBytes() {
+        return requestBytes.get() - requestWireBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "GzipCompression{" +
+                "compressedRequests=" + compressedRequests +
+                ", requestBytes=" + requestBytes +
+                ", requestWireBytes=" + requestWireBytes +
+                ", savedRequestBytes=" + getSavedRequestBytes() +
+                ", compressedResponses=" + compressedResponses +
+                ", responseWireBytes=" + responseWireBytes +
+                ", responseBytes=" + responseBytes +
+                ", savedResponseBytes=" + getSavedResponseBytes() +
+                '}';
+    }
+
+    private static final class LevelGzipOutputStream extends GZIPOutputStream {
+        LevelGzipOutputStream(ByteArrayOutputStream out, int level) throws IOException {
+            super(out, 8192);
+            def.setLevel(level);
+        }
+    }
+
+    /**
+     * 提交请求前压缩请求体，接收完成后解压响应，其余调用直接委托
+     */
+    private final class CompressingClient extends CloseableHttpAsyncClient {
+        private final CloseableHttpAsyncClient delegate;
+
+        CompressingClient(CloseableHttpAsyncClient delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public <T> Future<T> execute(HttpAsyncRequestProducer requestProducer, HttpAsyncResponseConsumer<T> responseConsumer,
+                                     HttpContext context, FutureCallback<T> callback) {
+            HttpAsyncRequestProducer producer = requestProducer;
+            try {
+                HttpRequest request = requestProducer.generateRequest();
+                HttpEntity original = request instanceof HttpEntityEnclosingRequest
+                        ? ((HttpEntityEnclosingRequest) request).getEntity() : null;
+                compress(request);
+                if (original != null && ((HttpEntityEnclosingRequest) request).getEntity() != original) {
+                    producer = HttpAsyncMethods.create(requestProducer.getTarget(), request);
+                    requestProducer.close();
+                }
+            } catch (IOException | HttpException e) {
+                // 压缩失败时按原始请求发送
+                log.warn("compress request body failed, send uncompressed", e);
+            }
+            return delegate.execute(producer, new DecompressingConsumer<>(responseConsumer), context, callback);
+        }
+
+        @Override
+        public boolean isRunning() {
+            return delegate.isRunning();
+        }
+
+        @Override
+        public void start() {
+            delegate.start();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+
+    /**
+     * 委托给 RestClient 的响应消费者，在返回结果前解压 gzip 响应
+     */
+    private final class DecompressingConsumer<T> implements HttpAsyncResponseConsumer<T> {
+        private final HttpAsyncResponseConsumer<T> delegate;
+
+        DecompressingConsumer(HttpAsyncResponseConsumer<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void responseReceived(HttpResponse response) throws IOException, HttpException {
+            delegate.responseReceived(response);
+        }
+
+        @Override
+        public void consumeContent(ContentDecoder decoder, IOControl ioControl) throws IOException {
+            delegate.consumeContent(decoder, ioControl);
+        }
+
+        @Override
+        public void responseCompleted(HttpContext context) {
+            delegate.responseCompleted(context);
+        }
+
+        @Override
+        public void failed(Exception ex) {
+            delegate.failed(ex);
+        }
+
+        @Override
+        public Exception getException() {
+            return delegate.getException();
+        }
+
+        @Override
+        public T getResult() {
+            T result = delegate.getResult();
+            if (result instanceof HttpResponse) {
+                try {
+                    decompress((HttpResponse) result);
+                } catch (IOException e) {
+                    // 解压失败时保留原始响应，由 RestClient 处理
+                    log.warn("decompress response failed", e);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public boolean isDone() {
+            return delegate.isDone();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean cancel() {
+            return delegate.cancel();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.lnjecit.elasticsearch.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 节点发现：定时请求 {@code GET _nodes/http}，用各节点的 http.publish_address 更新 RestClient 的节点列表。
+ * <p>
+ * 与 es 官方 sniffer 的做法一致，只是不需要额外依赖。发现结果为空或请求失败时保留原有节点。
+ */
+public class NodeSniffer implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(NodeSniffer.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    /**
+     * 响应按 JSON 解析，不受客户端默认的 Accept（见 EsClientConfig#setResponseContentType）影响
+     */
+    private static final RequestOptions JSON_RESPONSE = RequestOptions.DEFAULT.toBuilder()
+            .addHeader(HttpHeaders.ACCEPT, "application/json").build();
+
+    private final RestClient restClient;
+    private final String scheme;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * 立即嗅探一次，之后每隔 intervalMillis 嗅探一次
+     */
+    public NodeSniffer(RestClient restClient, String scheme, long intervalMillis) {
+        this.restClient = restClient;
+        this.scheme = scheme;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "es-node-sniffer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::sniffQuietly, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 嗅探一次并更新节点列表，返回发现的节点
+     */
+    public List<Node> sniff() throws IOException {
+        Request request = new Request("GET", "/_nodes/http");
+        request.addParameter("timeout", "1s");
+        request.setOptions(JSON_RESPONSE);
+        Response response = restClient.performRequest(request);
+        List<Node> nodes;
+        try (InputStream content = response.getEntity().getContent()) {
+            nodes = parseNodes(OBJECT_MAPPER.readTree(content), scheme);
+        }
+        if (!nodes.isEmpty()) {
+            restClient.setNodes(nodes);
+        }
+        return nodes;
+    }
+
+    static List<Node> parseNodes(JsonNode root, String scheme) {
+        List<Node> nodes = new ArrayList<>();
+        for (Iterator<JsonNode> it = root.path("nodes").elements(); it.hasNext(); ) {
+            JsonNode node = it.next();
+            String address = node.path("http").path("publish_address").asText(null);
+            if (address == null) {
+                // 未开启 http 的节点
+                continue;
+            }
+            // 格式为 "ip:port" 或 "hostname/ip:port"
+            int slash = address.indexOf('/');
+            String hostAndPort = slash >= 0 ? address.substring(slash + 1) : address;
+            int colon = hostAndPort.lastIndexOf(':');
+            String host = hostAndPort.substring(0, colon);
+            if (host.startsWith("[") && host.endsWith("]")) {
+                host = host.substring(1, host.length() - 1);
+            }
+            int port = Integer.parseInt(hostAndPort.substring(colon + 1));
+            nodes.add(new Node(new HttpHost(host, port, scheme)));
+        }
+        return nodes;
+    }
+
+    private void sniffQuietly() {
+        try {
+            List<Node> nodes = sniff();
+            log.debug("sniffed {} es nodes", nodes.size());
+        } catch (IOException | RuntimeException e) {
+            log.warn("sniff es nodes failed, keep current nodes {}", restClient.getNodes(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,126 @@
+package com.lnjecit.elasticsearch.client;
+
+import org.apache.http.HttpHost;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个节点的路由统计：响应延迟和在途请求数的 EWMA，以及拉黑状态
+ */
+public class NodeStats {
+    private final HttpHost host;
+    private final double alpha;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /** 尚无样本时为 -1 */
+    private volatile double ewmaLatencyNanos = -1;
+    private volatile double ewmaInFlight;
+    private volatile int consecutiveFailures;
+    private volatile long blacklistedUntilNanos;
+    private volatile boolean blacklisted;
+    final AtomicBoolean probing = new AtomicBoolean();
+
+    NodeStats(HttpHost host, double alpha) {
+        this.host = host;
+        this.alpha = alpha;
+    }
+
+    public HttpHost getHost() {
+        return host;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public double getEwmaInFlight() {
+        return ewmaInFlight;
+    }
+
+    /**
+     * 延迟 EWMA（毫秒），尚无样本时为 -1
+     */
+    public double getEwmaLatencyMillis() {
+        double latency = ewmaLatencyNanos;
+        return latency < 0 ? -1 : latency / 1_000_000d;
+    }
+
+    public boolean isBlacklisted() {
+        return blacklisted;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * 预期响应时间评分，越小越好：延迟 EWMA 乘以排队惩罚 (1 + q)^3，q 取当前和平滑后在途请求数的较大值。
+     * 立方项参考 C3 / es 自适应副本选择，使排队的节点很快失去优先级。
+     * 尚无样本的节点（新发现或刚恢复）按 unsampledLatencyNanos 估算，同样受排队惩罚，
+     * 避免第一个响应返回前的并发请求全部涌向该节点。
+     */
+    double score(double unsampledLatencyNanos) {
+        double latency = ewmaLatencyNanos;
+        if (latency < 0) {
+            latency = unsampledLatencyNanos;
+        }
+        double queue = 1 + Math.max(inFlight.get(), ewmaInFlight);
+        return latency * queue * queue * queue;
+    }
+
+    /**
+     * 请求提交给该节点，在途请求数样本取请求到达时已在排队的数量
+     */
+    synchronized void onSent() {
+        int queued = inFlight.getAndIncrement();
+        ewmaInFlight = alpha * queued + (1 - alpha) * ewmaInFlight;
+    }
+
+    /**
+     * 请求结束（响应、失败或取消），每个 onSent 对应一次
+     */
+    void onDone() {
+        inFlight.updateAndGet(n -> n > 0 ? n - 1 : 0);
+    }
+
+    synchronized void onResponse(long latencyNanos) {
+        ewmaLatencyNanos = ewmaLatencyNanos < 0 ? latencyNanos : alpha * latencyNanos + (1 - alpha) * ewmaLatencyNanos;
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * 请求失败，按连续失败次数指数退避拉黑
+     */
+    synchronized void onFailure(long baseBlacklistNanos, long maxBlacklistNanos) {
+        int failures = ++consecutiveFailures;
+        long duration = baseBlacklistNanos << Math.min(failures - 1, 20);
+        blacklistedUntilNanos = System.nanoTime() + Math.min(duration > 0 ? duration : maxBlacklistNanos, maxBlacklistNanos);
+        blacklisted = true;
+    }
+
+    /**
+     * 健康检查通过后恢复，延迟 EWMA 从探测延迟重新开始
+     */
+    synchronized void reinstate(long probeLatencyNanos) {
+        ewmaLatencyNanos = probeLatencyNanos;
+        ewmaInFlight = 0;
+        consecutiveFailures = 0;
+        blacklisted = false;
+    }
+
+    boolean isBlacklistExpired(long nowNanos) {
+        return nowNanos - blacklistedUntilNanos >= 0;
+    }
+
+    long getBlacklistedUntilNanos() {
+        return blacklistedUntilNanos;
+    }
+
+    @Override
+    public String toString() {
+        return host.toHostString() + "{latency=" + String.format("%.2f", getEwmaLatencyMillis()) + "ms"
+                + ", inFlight=" + inFlight.get()
+                + ", ewmaInFlight=" + String.format("%.2f", ewmaInFlight)
+                + ", blacklisted=" + blacklisted + "}";
+    }
+}
@@ -0,0 +1,139 @@
+package com.lnjecit.elasticsearch.codec;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.lnjecit.elasticsearch.domain.User;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 从搜索结果的 _source 字节直接解码 User。
+ * <p>
+ * 替代 {@code objectMapper.readValue(hit.getSourceAsString(), User.class)}：
+ * 不再把 _source 先解码成 String，ObjectReader 只创建一次并在线程间共享。
+ * <p>
+ * 响应为 SMILE / CBOR 时（见 {@link com.lnjecit.elasticsearch.client.EsClientConfig#setResponseContentType}），
+ * _source 也是同样的格式，按首字节识别后用对应的 reader 解码。
+ */
+public final class UserHitDecoder {
+    private static final ObjectReader READER = reader(new ObjectMapper());
+    private static final ObjectReader SMILE_READER = reader(new ObjectMapper(new SmileFactory()));
+    private static final ObjectReader CBOR_READER = reader(new ObjectMapper(new CBORFactory()));
+
+    private UserHitDecoder() {
+    }
+
+    /**
+     * 解码单个 hit，没有 _source 时返回 null
+     */
+    public static User decode(SearchHit hit) throws IOException {
+        BytesReference source = hit.getSourceRef();
+        if (source == null) {
+            return null;
+        }
+        return decode(source);
+    }
+
+    public static User decode(BytesReference source) throws IOException {
+        ObjectReader reader = reader(contentType(source));
+        if (source instanceof BytesArray) {
+            // 单段字节直接读取底层数组，不复制
+            BytesRef bytes = source.toBytesRef();
+            return reader.readValue(bytes.bytes, bytes.offset, bytes.length);
+        }
+        // 由多段组成的 BytesReference，按流读取避免拼接复制
+        return reader.readValue(source.streamInput());
+    }
+
+    /**
+     * 按首字节识别 _source 的格式：SMILE 以文件头 {@code :)\n} 开始；
+     * CBOR 的对象以 major type 5（0xA0-0xBF）或自描述标签 0xD9 开始；其余按 JSON 处理
+     */
+    public static XContentType contentType(BytesReference source) {
+        if (source.length() == 0) {
+            return XContentType.JSON;
+        }
+        byte first = source.get(0);
+        if (first == ':') {
+            return XContentType.SMILE;
+        }
+        if ((first & 0xE0) == 0xA0 || (first & 0xFF) == 0xD9) {
+            return XContentType.CBOR;
+        }
+        return XContentType.JSON;
+    }
+
+    private static ObjectReader reader(XContentType type) {
+        switch (type) {
+            case SMILE:
+                return SMILE_READER;
+            case CBOR:
+                return CBOR_READER;
+            default:
+                return READER;
+        }
+    }
+
+    private static ObjectReader reader(ObjectMapper mapper) {
+        return mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES).readerFor(User.class);
+    }
+
+    /**
+     * 一次性解码全部 hit
+     */
+    public static List<User> decodeAll(SearchHits hits) throws IOException {
+        SearchHit[] array = hits.getHits();
+        List<User> users = new ArrayList<>(array.length);
+        for (SearchHit hit : array) {
+            User user = decode(hit);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    /**
+     * 延迟解码：遍历到哪个 hit 才解码哪个，解码失败抛出 UncheckedIOException
+     */
+    public static Iterable<User> lazy(SearchHits hits) {
+        SearchHit[] array = hits.getHits();
+        return () -> new Iterator<User>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                while (next < array.length && array[next].getSourceRef() == null) {
+                    next++;
+                }
+                return next < array.length;
+            }
+
+            @Override
+            public User next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    return decode(array[next++]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+}
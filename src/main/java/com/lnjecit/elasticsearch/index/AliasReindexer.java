@@ -0,0 +1,154 @@
+package com.lnjecit.elasticsearch.index;
+
+import com.lnjecit.elasticsearch.bulk.BulkIngestConfig;
+import com.lnjecit.elasticsearch.bulk.UserBulkIngester;
+import com.lnjecit.elasticsearch.search.SlicedScrollExporter;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.client.GetAliasesResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于别名的不停机重建索引。
+ * <p>
+ * 读写都通过别名（如 user_test）进行，实际数据在带版本号的索引（user_test_v1、user_test_v2 ...）中。
+ * 重建时：
+ * <ol>
+ *     <li>按 User 的 mapping 创建下一个版本的索引，进入批量导入模式</li>
+ *     <li>用 sliced scroll 并行读取旧索引，bulk 写入新索引</li>
+ *     <li>一次 _aliases 请求原子地把别名切到新索引</li>
+ * </ol>
+ * 切换前所有查询仍然落在旧索引上，不会出现查不到数据的窗口。
+ * 如果别名当前是一个同名的普通索引（还没有使用别名），切换时会在同一个请求中删除该索引并创建别名。
+ * <p>
+ * 复制期间写入旧索引的文档不会同步到新索引，需要在重建期间暂停写入或之后补写。
+ */
+public class AliasReindexer {
+    private static final Logger log = LoggerFactory.getLogger(AliasReindexer.class);
+
+    private final RestHighLevelClient client;
+    private final IndexManager indexManager;
+    private final SlicedScrollExporter exporter;
+    private final BulkIngestConfig bulkConfig;
+    private int shards = 1;
+    private int replicas = 1;
+    private boolean deleteOldIndices;
+
+    public AliasReindexer(RestHighLevelClient client, SlicedScrollExporter exporter, BulkIngestConfig bulkConfig) {
+        this.client = client;
+        this.indexManager = new IndexManager(client);
+        this.exporter = exporter;
+        this.bulkConfig = bulkConfig;
+    }
+
+    public void setShards(int shards) {
+        this.shards = shards;
+    }
+
+    public void setReplicas(int replicas) {
+        this.replicas = replicas;
+    }
+
+    /**
+     * 切换别名后是否删除旧版本索引，默认保留以便回滚
+     */
+    public void setDeleteOldIndices(boolean deleteOldIndices) {
+        this.deleteOldIndices = deleteOldIndices;
+    }
+
+    /**
+     * 别名当前指向的索引，别名不存在时为空
+     */
+    public List<String> aliasedIndices(String alias) throws IOException {
+        GetAliasesResponse response = client.indices().getAlias(new GetAliasesRequest(alias), RequestOptions.DEFAULT);
+        if (response.status() == RestStatus.NOT_FOUND) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(response.getAliases().keySet());
+    }
+
+    /**
+     * 下一个版本的索引名：已有 alias_vN 中最大的 N 加 1
+     */
+    public String nextVersionIndex(String alias) throws IOException {
+        String prefix = alias + "_v";
+        int version = 0;
+        for (String index : client.indices().get(new GetIndexRequest(prefix + "*"), RequestOptions.DEFAULT).getIndices()) {
+            try {
+                version = Math.max(version, Integer.parseInt(index.substring(prefix.length())));
+            } catch (NumberFormatException e) {
+                // 不是本工具创建的索引
+            }
+        }
+        return prefix + (version + 1);
+    }
+
+    /**
+     * 重建别名背后的索引，返回新索引名。复制失败时删除新索引，别名保持不变。
+     */
+    public String reindex(String alias) throws IOException {
+        List<String> oldIndices = aliasedIndices(alias);
+        boolean concreteIndex = oldIndices.isEmpty() && indexManager.exists(alias);
+        String source = concreteIndex ? alias : String.join(",", oldIndices);
+        String target = nextVersionIndex(alias);
+
+        indexManager.createUserIndex(target, shards, replicas);
+        try {
+            long copied = copy(source, target);
+            log.info("reindex {} -> {}, copied {} docs", source, target, copied);
+        } catch (IOException | RuntimeException e) {
+            indexManager.deleteIfExists(target);
+            throw e;
+        }
+
+        IndicesAliasesRequest request = new IndicesAliasesRequest();
+        request.addAliasAction(AliasActions.add().index(target).alias(alias));
+        if (concreteIndex) {
+            request.addAliasAction(AliasActions.removeIndex().index(alias));
+        } else if (!oldIndices.isEmpty()) {
+            request.addAliasAction(AliasActions.remove().indices(oldIndices.toArray(new String[0])).alias(alias));
+        }
+        client.indices().updateAliases(request, RequestOptions.DEFAULT);
+        log.info("alias {} now points to {}, previous: {}", alias, target, concreteIndex ? "index " + alias : oldIndices);
+
+        if (deleteOldIndices && !oldIndices.isEmpty()) {
+            client.indices().delete(new DeleteIndexRequest(oldIndices.toArray(new String[0])), RequestOptions.DEFAULT);
+        }
+        return target;
+    }
+
+    private long copy(String source, String target) throws IOException {
+        if (source.isEmpty()) {
+            return 0;
+        }
+        UserBulkIngester ingester = new UserBulkIngester(client, target, bulkConfig);
+        long exported;
+        BulkLoadMode bulkLoad = indexManager.beginBulkLoad(target);
+        try {
+            exported = exporter.export(source, QueryBuilders.matchAllQuery(), ingester::add);
+        } finally {
+            try {
+                ingester.close();
+            } finally {
+                bulkLoad.close();
+            }
+        }
+        if (ingester.getFailed() > 0 || ingester.getSucceeded() != exported) {
+            throw new IOException("reindex " + source + " -> " + target + " incomplete, exported: " + exported
+                    + ", succeeded: " + ingester.getSucceeded() + ", failed: " + ingester.getFailed());
+        }
+        return exported;
+    }
+}
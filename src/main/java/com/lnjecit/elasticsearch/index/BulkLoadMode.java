@@ -0,0 +1,60 @@
+package com.lnjecit.elasticsearch.index;
+
+import org.elasticsearch.common.settings.Settings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 批量导入模式，由 {@link IndexManager#beginBulkLoad(String)} 开启。
+ * <p>
+ * 导入期间不 refresh、不写副本；close 时恢复原来的 refresh_interval 和副本数
+ * （原来未显式设置的恢复为默认值），然后 refresh 并段合并。
+ */
+public class BulkLoadMode implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(BulkLoadMode.class);
+
+    private final IndexManager indexManager;
+    private final String index;
+    private final String refreshInterval;
+    private final String replicas;
+    private final int maxNumSegments;
+    private boolean closed;
+
+    BulkLoadMode(IndexManager indexManager, String index, String refreshInterval, String replicas, int maxNumSegments) {
+        this.indexManager = indexManager;
+        this.index = index;
+        this.refreshInterval = refreshInterval;
+        this.replicas = replicas;
+        this.maxNumSegments = maxNumSegments;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Settings.Builder settings = Settings.builder();
+        if (refreshInterval == null) {
+            settings.putNull(IndexManager.REFRESH_INTERVAL);
+        } else {
+            settings.put(IndexManager.REFRESH_INTERVAL, refreshInterval);
+        }
+        if (replicas == null) {
+            settings.putNull(IndexManager.NUMBER_OF_REPLICAS);
+        } else {
+            settings.put(IndexManager.NUMBER_OF_REPLICAS, replicas);
+        }
+        indexManager.updateSettings(index, settings.build());
+        indexManager.refresh(index);
+        indexManager.forceMerge(index, maxNumSegments);
+        log.info("index {} leaves bulk load mode, refresh_interval: {}, number_of_replicas: {}", index, refreshInterval, replicas);
+    }
+}
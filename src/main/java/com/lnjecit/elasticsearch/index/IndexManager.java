@@ -0,0 +1,114 @@
+package com.lnjecit.elasticsearch.index;
+
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.forcemerge.ForceMergeRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * 索引管理：按显式 mapping 创建索引，以及批量导入时临时调整 settings
+ */
+public class IndexManager {
+    private static final Logger log = LoggerFactory.getLogger(IndexManager.class);
+
+    static final String REFRESH_INTERVAL = "index.refresh_interval";
+    static final String NUMBER_OF_REPLICAS = "index.number_of_replicas";
+
+    private final RestHighLevelClient client;
+
+    public IndexManager(RestHighLevelClient client) {
+        this.client = client;
+    }
+
+    public boolean exists(String index) throws IOException {
+        return client.indices().exists(new GetIndexRequest(index), RequestOptions.DEFAULT);
+    }
+
+    /**
+     * 用 User 的 mapping 创建索引
+     */
+    public boolean createUserIndex(String index, int shards, int replicas) throws IOException {
+        return create(index, UserIndexMappings.settings(shards, replicas), UserIndexMappings.mapping());
+    }
+
+    public boolean create(String index, Settings settings, XContentBuilder mapping) throws IOException {
+        CreateIndexRequest request = new CreateIndexRequest(index).settings(settings).mapping(mapping);
+        boolean acknowledged = client.indices().create(request, RequestOptions.DEFAULT).isAcknowledged();
+        log.info("create index {}, acknowledged: {}", index, acknowledged);
+        return acknowledged;
+    }
+
+    /**
+     * 删除索引，索引不存在时返回 false
+     */
+    public boolean deleteIfExists(String index) throws IOException {
+        if (!exists(index)) {
+            return false;
+        }
+        return client.indices().delete(new DeleteIndexRequest(index), RequestOptions.DEFAULT).isAcknowledged();
+    }
+
+    /**
+     * 读取索引的 setting，未显式设置时返回 null
+     */
+    public String getSetting(String index, String name) throws IOException {
+        GetSettingsResponse response = client.indices().getSettings(
+                new GetSettingsRequest().indices(index).names(name), RequestOptions.DEFAULT);
+        return response.getSetting(index, name);
+    }
+
+    public void updateSettings(String index, Settings settings) throws IOException {
+        client.indices().putSettings(new UpdateSettingsRequest(index).settings(settings), RequestOptions.DEFAULT);
+    }
+
+    public void refresh(String index) throws IOException {
+        client.indices().refresh(new RefreshRequest(index), RequestOptions.DEFAULT);
+    }
+
+    /**
+     * 段合并，maxNumSegments 小于 1 时由 es 自行决定
+     */
+    public void forceMerge(String index, int maxNumSegments) throws IOException {
+        ForceMergeRequest request = new ForceMergeRequest(index);
+        if (maxNumSegments > 0) {
+            request.maxNumSegments(maxNumSegments);
+        }
+        client.indices().forcemerge(request, RequestOptions.DEFAULT);
+    }
+
+    /**
+     * 进入批量导入模式：关闭自动 refresh、副本数设为 0，close 时恢复原设置并段合并。
+     * <pre>
+     * try (BulkLoadMode ignored = indexManager.beginBulkLoad(index)) {
+     *     // 批量写入
+     * }
+     * </pre>
+     */
+    public BulkLoadMode beginBulkLoad(String index) throws IOException {
+        return beginBulkLoad(index, 1);
+    }
+
+    public BulkLoadMode beginBulkLoad(String index, int maxNumSegments) throws IOException {
+        String refreshInterval = getSetting(index, REFRESH_INTERVAL);
+        String replicas = getSetting(index, NUMBER_OF_REPLICAS);
+        updateSettings(index, Settings.builder()
+                .put(REFRESH_INTERVAL, "-1")
+                .put(NUMBER_OF_REPLICAS, 0)
+                .build());
+        log.info("index {} enters bulk load mode, previous refresh_interval: {}, number_of_replicas: {}",
+                index, refreshInterval, replicas);
+        return new BulkLoadMode(this, index, refreshInterval, replicas, maxNumSegments);
+    }
+}
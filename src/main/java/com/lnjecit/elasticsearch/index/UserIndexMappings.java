@@ -0,0 +1,48 @@
+package com.lnjecit.elasticsearch.index;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+
+import java.io.IOException;
+
+/**
+ * User 索引的显式 mapping 和 settings。
+ * <p>
+ * 不依赖动态映射：age 用 integer 而不是 long，sex 只做精确匹配用 keyword，
+ * name 既要全文搜索又要精确匹配/聚合，用 text 加 name.keyword 子字段。
+ */
+public final class UserIndexMappings {
+
+    private UserIndexMappings() {
+    }
+
+    public static XContentBuilder mapping() throws IOException {
+        XContentBuilder builder = XContentFactory.jsonBuilder();
+        builder.startObject();
+        {
+            builder.startObject("properties");
+            {
+                builder.startObject("id").field("type", "long").endObject();
+                builder.startObject("name").field("type", "text");
+                {
+                    builder.startObject("fields");
+                    builder.startObject("keyword").field("type", "keyword").field("ignore_above", 256).endObject();
+                    builder.endObject();
+                }
+                builder.endObject();
+                builder.startObject("age").field("type", "integer").endObject();
+                builder.startObject("sex").field("type", "keyword").endObject();
+            }
+            builder.endObject();
+        }
+        return builder.endObject();
+    }
+
+    public static Settings settings(int shards, int replicas) {
+        return Settings.builder()
+                .put("index.number_of_shards", shards)
+                .put("index.number_of_replicas", replicas)
+                .build();
+    }
+}
@@ -0,0 +1,150 @@
+package com.lnjecit.elasticsearch.load;
+
+import com.lnjecit.elasticsearch.client.EsClientConfig;
+import com.lnjecit.elasticsearch.client.EsClientFactory;
+import com.lnjecit.elasticsearch.standin.EsStandInServer;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 混合负载压测：按权重随机执行文档和搜索操作，记录每种操作的 HdrHistogram 延迟分布。
+ * <p>
+ * 限速模式下按固定间隔排定每个请求的计划开始时间，延迟从计划时间算起，
+ * 避免服务变慢时压测端随之降速而低估尾延迟（coordinated omission）。
+ */
+public class LoadGenerator {
+    private static final Logger log = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private final RestHighLevelClient client;
+    private final LoadTestConfig config;
+    private final LoadOperation[] operations;
+    private final int[] cumulativeWeights;
+
+    public LoadGenerator(RestHighLevelClient client, LoadTestConfig config) {
+        this.client = client;
+        this.config = config;
+        if (config.getWeights().isEmpty()) {
+            throw new IllegalArgumentException("no operation to run");
+        }
+        this.operations = config.getWeights().keySet().toArray(new LoadOperation[0]);
+        this.cumulativeWeights = new int[operations.length];
+        int sum = 0;
+        for (int i = 0; i < operations.length; i++) {
+            sum += config.getWeights().get(operations[i]);
+            cumulativeWeights[i] = sum;
+        }
+    }
+
+    /**
+     * 先预热再压测，返回压测阶段的统计结果
+     */
+    public LoadReport run() throws InterruptedException {
+        if (config.getWarmupMillis() > 0) {
+            log.info("load test warmup {} ms", config.getWarmupMillis());
+            runPhase(config.getWarmupMillis());
+        }
+        log.info("load test run {} ms, concurrency: {}, rate: {}/s",
+                config.getDurationMillis(), config.getConcurrency(), config.getRatePerSecond());
+        return runPhase(config.getDurationMillis());
+    }
+
+    private LoadReport runPhase(long durationMillis) throws InterruptedException {
+        Map<LoadOperation, OperationStats> stats = new EnumMap<>(LoadOperation.class);
+        for (LoadOperation operation : operations) {
+            stats.put(operation, new OperationStats());
+        }
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        long intervalNanos = config.getRatePerSecond() > 0 ? TimeUnit.SECONDS.toNanos(1) / config.getRatePerSecond() : 0;
+        AtomicLong slot = new AtomicLong();
+
+        List<Thread> workers = new ArrayList<>(config.getConcurrency());
+        for (int i = 0; i < config.getConcurrency(); i++) {
+            Thread worker = new Thread(() -> work(stats, start, end, intervalNanos, slot), "load-worker-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return new LoadReport(stats, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void work(Map<LoadOperation, OperationStats> stats, long start, long end, long intervalNanos, AtomicLong slot) {
+        while (true) {
+            long intendedStart;
+            if (intervalNanos > 0) {
+                intendedStart = start + slot.getAndIncrement() * intervalNanos;
+                if (intendedStart >= end) {
+                    return;
+                }
+                long wait = intendedStart - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            } else {
+                intendedStart = System.nanoTime();
+                if (intendedStart >= end) {
+                    return;
+                }
+            }
+
+            LoadOperation operation = nextOperation();
+            OperationStats operationStats = stats.get(operation);
+            try {
+                operation.execute(client, config.getIndex());
+                operationStats.record(System.nanoTime() - intendedStart);
+            } catch (Exception e) {
+                operationStats.record(System.nanoTime() - intendedStart);
+                operationStats.recordError();
+                log.debug("load operation {} failed", operation, e);
+            }
+        }
+    }
+
+    private LoadOperation nextOperation() {
+        int value = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    /**
+     * 启动进程内替身服务并压测：参数依次为 速率(次/秒，0 不限速) 并发数 持续秒数
+     */
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = new LoadTestConfig();
+        if (args.length > 0) {
+            config.setRatePerSecond(Integer.parseInt(args[0]));
+        }
+        if (args.length > 1) {
+            config.setConcurrency(Integer.parseInt(args[1]));
+        }
+        if (args.length > 2) {
+            config.setDurationMillis(TimeUnit.SECONDS.toMillis(Long.parseLong(args[2])));
+        }
+
+        try (EsStandInServer server = new EsStandInServer(0).start().seedUsers(config.getIndex(), 100)) {
+            EsClientConfig clientConfig = new EsClientConfig("load-test", server.getHttpHost());
+            RestHighLevelClient client = EsClientFactory.getClient(clientConfig);
+            LoadReport report = new LoadGenerator(client, config).run();
+            System.out.println(report);
+        } finally {
+            EsClientFactory.close("load-test");
+        }
+    }
+}
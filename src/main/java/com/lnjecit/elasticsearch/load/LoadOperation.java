@@ -0,0 +1,120 @@
+package com.lnjecit.elasticsearch.load;
+
+import com.lnjecit.elasticsearch.codec.UserSourceSerializer;
+import com.lnjecit.elasticsearch.domain.User;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.BucketOrder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 压测的操作类型，对应 EsDocTest / EsDocSearchTest 中的各个操作
+ */
+public enum LoadOperation {
+    INDEX {
+        @Override
+        void execute(RestHighLevelClient client, String index) throws IOException {
+            User user = randomUser();
+            client.index(new IndexRequest(index).id(user.getId().toString())
+                    .source(UserSourceSerializer.toBytesReference(user), XContentType.JSON), RequestOptions.DEFAULT);
+        }
+    },
+    GET {
+        @Override
+        void execute(RestHighLevelClient client, String index) throws IOException {
+            client.get(new GetRequest(index, randomId()), RequestOptions.DEFAULT);
+        }
+    },
+    UPDATE {
+        @Override
+        void execute(RestHighLevelClient client, String index) throws IOException {
+            User user = randomUser();
+            client.update(new UpdateRequest(index, user.getId().toString())
+                    .doc(UserSourceSerializer.toBytes(user), XContentType.JSON).docAsUpsert(true), RequestOptions.DEFAULT);
+        }
+    },
+    DELETE {
+        @Override
+        void execute(RestHighLevelClient client, String index) throws IOException {
+            client.delete(new DeleteRequest(index, randomId()), RequestOptions.DEFAULT);
+        }
+    },
+    BULK {
+        @Override
+        void execute(RestHighLevelClient client, String index) throws IOException {
+            BulkRequest bulkRequest = new BulkRequest();
+            for (int i = 0; i < 100; i++) {
+                User user = randomUser();
+                bulkRequest.add(new IndexRequest(index).id(user.getId().toString())
+                        .source(UserSourceSerializer.toBytesReference(user), XContentType.JSON));
+            }
+            client.bulk(bulkRequest, RequestOptions.DEFAULT);
+        }
+    },
+    TERM_SEARCH {
+        @Override
+        void execute(RestHighLevelClient client, String index) throws IOException {
+            search(client, index, new SearchSourceBuilder().query(QueryBuilders.termQuery("name.keyword", "韩立")));
+        }
+    },
+    MATCH_SEARCH {
+        @Override
+        void execute(RestHighLevelClient client, String index) throws IOException {
+            search(client, index, new SearchSourceBuilder().query(QueryBuilders.matchQuery("name", "韩")));
+        }
+    },
+    RANGE_SEARCH {
+        @Override
+        void execute(RestHighLevelClient client, String index) throws IOException {
+            search(client, index, new SearchSourceBuilder().query(QueryBuilders.rangeQuery("age").gt(30).lte(40)));
+        }
+    },
+    BOOL_SEARCH {
+        @Override
+        void execute(RestHighLevelClient client, String index) throws IOException {
+            search(client, index, new SearchSourceBuilder().query(QueryBuilders.boolQuery()
+                    .must(QueryBuilders.termQuery("name.keyword", "韩立"))
+                    .must(QueryBuilders.termQuery("age", "35"))));
+        }
+    },
+    AGG_SEARCH {
+        @Override
+        void execute(RestHighLevelClient client, String index) throws IOException {
+            search(client, index, new SearchSourceBuilder().size(0).aggregation(AggregationBuilders.terms("age_group")
+                    .field("age").size(1000).order(BucketOrder.key(true))));
+        }
+    };
+
+    /**
+     * 压测时使用的文档 id 范围，与测试数据的 100 个用户一致
+     */
+    static final int ID_RANGE = 100;
+
+    abstract void execute(RestHighLevelClient client, String index) throws IOException;
+
+    private static void search(RestHighLevelClient client, String index, SearchSourceBuilder sourceBuilder) throws IOException {
+        client.search(new SearchRequest(index).source(sourceBuilder), RequestOptions.DEFAULT);
+    }
+
+    private static String randomId() {
+        return String.valueOf(ThreadLocalRandom.current().nextInt(ID_RANGE) + 1);
+    }
+
+    private static User randomUser() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long id = random.nextInt(ID_RANGE) + 1;
+        return new User(id, "用户" + id, 18 + random.nextInt(50), random.nextBoolean() ? "男" : "女");
+    }
+}
@@ -0,0 +1,63 @@
+package com.lnjecit.elasticsearch.load;
+
+import java.util.Map;
+
+/**
+ * 压测结果：每种操作的吞吐量和 p50/p99/p999 延迟
+ */
+public class LoadReport {
+    private final Map<LoadOperation, OperationStats> stats;
+    private final long elapsedMillis;
+
+    LoadReport(Map<LoadOperation, OperationStats> stats, long elapsedMillis) {
+        this.stats = stats;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public Map<LoadOperation, OperationStats> getStats() {
+        return stats;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (OperationStats operationStats : stats.values()) {
+            total += operationStats.getCount();
+        }
+        return total;
+    }
+
+    public long getTotalErrors() {
+        long total = 0;
+        for (OperationStats operationStats : stats.values()) {
+            total += operationStats.getErrors();
+        }
+        return total;
+    }
+
+    /**
+     * 每秒操作数
+     */
+    public double getThroughput(LoadOperation operation) {
+        OperationStats operationStats = stats.get(operation);
+        return operationStats == null || elapsedMillis == 0 ? 0 : operationStats.getCount() * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-14s %10s %8s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "errors", "ops/s", "p50(us)", "p99(us)", "p999(us)", "max(us)"));
+        for (Map.Entry<LoadOperation, OperationStats> entry : stats.entrySet()) {
+            OperationStats s = entry.getValue();
+            sb.append(String.format("%-14s %10d %8d %10.1f %10d %10d %10d %10d%n",
+                    entry.getKey(), s.getCount(), s.getErrors(), getThroughput(entry.getKey()),
+                    s.getPercentileMicros(50), s.getPercentileMicros(99), s.getPercentileMicros(99.9), s.getMaxMicros()));
+        }
+        sb.append(String.format("total: %d ops, %d errors in %d ms", getTotalCount(), getTotalErrors(), elapsedMillis));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package com.lnjecit.elasticsearch.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 压测配置：速率、并发数、持续时间和各操作的比例
+ */
+public class LoadTestConfig {
+    private String index = "user_test";
+    /**
+     * 目标总速率(次/秒)，0 表示不限速，每个线程连续发送
+     */
+    private int ratePerSecond = 0;
+    private int concurrency = 8;
+    private long durationMillis = 10_000L;
+    private long warmupMillis = 1_000L;
+    /**
+     * 各操作的权重，按权重随机选择操作
+     */
+    private final Map<LoadOperation, Integer> weights = new EnumMap<>(LoadOperation.class);
+
+    public LoadTestConfig() {
+        // 默认读多写少的混合负载
+        weights.put(LoadOperation.GET, 30);
+        weights.put(LoadOperation.TERM_SEARCH, 15);
+        weights.put(LoadOperation.MATCH_SEARCH, 15);
+        weights.put(LoadOperation.RANGE_SEARCH, 10);
+        weights.put(LoadOperation.BOOL_SEARCH, 10);
+        weights.put(LoadOperation.AGG_SEARCH, 5);
+        weights.put(LoadOperation.INDEX, 6);
+        weights.put(LoadOperation.UPDATE, 5);
+        weights.put(LoadOperation.DELETE, 2);
+        weights.put(LoadOperation.BULK, 2);
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public void setIndex(String index) {
+        this.index = index;
+    }
+
+    public int getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    public void setRatePerSecond(int ratePerSecond) {
+        this.ratePerSecond = ratePerSecond;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    public long getWarmupMillis() {
+        return warmupMillis;
+    }
+
+    public void setWarmupMillis(long warmupMillis) {
+        this.warmupMillis = warmupMillis;
+    }
+
+    public Map<LoadOperation, Integer> getWeights() {
+        return weights;
+    }
+
+    /**
+     * 设置操作权重，权重为 0 表示不执行该操作
+     */
+    public void setWeight(LoadOperation operation, int weight) {
+        if (weight <= 0) {
+            weights.remove(operation);
+        } else {
+            weights.put(operation, weight);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.lnjecit.elasticsearch.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个操作类型的延迟直方图（微秒）和错误数
+ */
+public class OperationStats {
+    /**
+     * 最大可记录延迟 60 秒，3 位有效数字
+     */
+    private final Histogram histogram = new ConcurrentHistogram(TimeUnit.SECONDS.toMicros(60), 3);
+    private final AtomicLong errors = new AtomicLong();
+
+    void record(long latencyNanos) {
+        histogram.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), histogram.getHighestTrackableValue()));
+    }
+
+    void recordError() {
+        errors.incrementAndGet();
+    }
+
+    public long getCount() {
+        return histogram.getTotalCount();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * 指定百分位的延迟，单位微秒
+     */
+    public long getPercentileMicros(double percentile) {
+        return histogram.getValueAtPercentile(percentile);
+    }
+
+    public long getMaxMicros() {
+        return histogram.getMaxValue();
+    }
+
+    public Histogram getHistogram() {
+        return histogram;
+    }
+}
@@ -0,0 +1,36 @@
+package com.lnjecit.elasticsearch.metrics;
+
+/**
+ * 指标名
+ */
+public final class EsMetrics {
+    /**
+     * 客户端观察到的请求耗时(微秒)，包含网络、服务端处理和响应解析
+     */
+    public static final String CLIENT_LATENCY = "es.client.latency.micros";
+    /**
+     * 服务端返回的 took(毫秒)，只有 search 和 bulk 有
+     */
+    public static final String SERVER_TOOK = "es.server.took.millis";
+    /**
+     * 结果解码为 User 的耗时(微秒)
+     */
+    public static final String DECODE_LATENCY = "es.client.decode.micros";
+    /**
+     * HTTP 请求体、响应体字节数
+     */
+    public static final String REQUEST_BYTES = "es.http.request.bytes";
+    public static final String RESPONSE_BYTES = "es.http.response.bytes";
+    public static final String ERRORS = "es.client.errors";
+    public static final String BULK_ITEM_FAILURES = "es.bulk.item.failures";
+    /**
+     * 连接池状态，名称为集群名
+     */
+    public static final String POOL_LEASED = "es.pool.leased";
+    public static final String POOL_PENDING = "es.pool.pending";
+    public static final String POOL_AVAILABLE = "es.pool.available";
+    public static final String POOL_MAX = "es.pool.max";
+
+    private EsMetrics() {
+    }
+}
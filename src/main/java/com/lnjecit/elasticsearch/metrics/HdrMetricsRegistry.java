@@ -0,0 +1,75 @@
+package com.lnjecit.elasticsearch.metrics;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 基于 HdrHistogram 的进程内指标注册表，适合压测和排查时直接打印
+ */
+public class HdrMetricsRegistry implements MetricsRegistry {
+    private static final long HIGHEST_TRACKABLE_VALUE = 3_600_000_000L;
+
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    @Override
+    public void recordValue(String metric, String operation, String index, long value) {
+        histograms.computeIfAbsent(key(metric, operation, index), k -> new ConcurrentHistogram(HIGHEST_TRACKABLE_VALUE, 3))
+                .recordValue(Math.max(0, Math.min(value, HIGHEST_TRACKABLE_VALUE)));
+    }
+
+    @Override
+    public void increment(String metric, String operation, String index, long delta) {
+        counters.computeIfAbsent(key(metric, operation, index), k -> new LongAdder()).add(delta);
+    }
+
+    @Override
+    public void registerGauge(String metric, String name, LongSupplier supplier) {
+        gauges.put(metric + '{' + name + '}', supplier);
+    }
+
+    /**
+     * 没有记录过时返回 null
+     */
+    public Histogram getHistogram(String metric, String operation, String index) {
+        return histograms.get(key(metric, operation, index));
+    }
+
+    public long getCount(String metric, String operation, String index) {
+        LongAdder counter = counters.get(key(metric, operation, index));
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public Long getGauge(String metric, String name) {
+        LongSupplier supplier = gauges.get(metric + '{' + name + '}');
+        return supplier == null ? null : supplier.getAsLong();
+    }
+
+    private static String key(String metric, String operation, String index) {
+        return metric + '{' + operation + ',' + index + '}';
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram h = entry.getValue();
+            sb.append(String.format("%s count=%d p50=%d p99=%d max=%d mean=%.1f%n", entry.getKey(), h.getTotalCount(),
+                    h.getValueAtPercentile(50), h.getValueAtPercentile(99), h.getMaxValue(), h.getMean()));
+        }
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+            sb.append(entry.getKey()).append(' ').append(entry.getValue().sum()).append('\n');
+        }
+        for (Map.Entry<String, LongSupplier> entry : new TreeMap<>(gauges).entrySet()) {
+            sb.append(entry.getKey()).append(' ').append(entry.getValue().getAsLong()).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,72 @@
+package com.lnjecit.elasticsearch.metrics;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.protocol.HttpContext;
+
+import java.net.URI;
+
+/**
+ * HTTP 层拦截器，记录每个请求实际发送和接收的字节数。
+ * <p>
+ * 操作和索引从请求路径推断，如 {@code PUT /user_test/_doc/1} 记为 index 操作、user_test 索引。
+ */
+public class HttpMetricsInterceptor implements HttpRequestInterceptor, HttpResponseInterceptor {
+    private static final String ATTRIBUTE_ENDPOINT = HttpMetricsInterceptor.class.getName() + ".endpoint";
+
+    private final MetricsRegistry registry;
+
+    public HttpMetricsInterceptor(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) {
+        String[] endpoint = endpoint(request.getRequestLine().getMethod(), request.getRequestLine().getUri());
+        context.setAttribute(ATTRIBUTE_ENDPOINT, endpoint);
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null && entity.getContentLength() >= 0) {
+                registry.recordValue(EsMetrics.REQUEST_BYTES, endpoint[0], endpoint[1], entity.getContentLength());
+            }
+        }
+    }
+
+    @Override
+    public void process(HttpResponse response, HttpContext context) {
+        String[] endpoint = (String[]) context.getAttribute(ATTRIBUTE_ENDPOINT);
+        HttpEntity entity = response.getEntity();
+        if (endpoint != null && entity != null && entity.getContentLength() >= 0) {
+            registry.recordValue(EsMetrics.RESPONSE_BYTES, endpoint[0], endpoint[1], entity.getContentLength());
+        }
+    }
+
+    /**
+     * 从请求路径推断 [操作, 索引]
+     */
+    static String[] endpoint(String method, String uri) {
+        String path = URI.create(uri).getRawPath();
+        String[] segments = path.substring(1).split("/");
+        String index = "_all";
+        String operation = null;
+        for (String segment : segments) {
+            if (segment.startsWith("_")) {
+                operation = segment.substring(1);
+                break;
+            }
+            if (!segment.isEmpty()) {
+                index = segment;
+            }
+        }
+        if (operation == null) {
+            operation = "index_" + method.toLowerCase();
+        } else if ("doc".equals(operation) || "create".equals(operation)) {
+            operation = "GET".equals(method) ? "get" : "DELETE".equals(method) ? "delete" : "index";
+        }
+        return new String[]{operation, index};
+    }
+}
@@ -0,0 +1,130 @@
+package com.lnjecit.elasticsearch.metrics;
+
+import com.lnjecit.elasticsearch.codec.UserHitDecoder;
+import com.lnjecit.elasticsearch.domain.User;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 带指标记录的客户端包装：每次调用记录客户端耗时、错误数，
+ * search/bulk 额外记录服务端 took，bulk 记录失败条目数，searchUsers 单独记录解码耗时。
+ * <p>
+ * 客户端耗时与服务端 took 的差值即网络和客户端解析的开销。
+ */
+public class InstrumentedClient {
+    private final RestHighLevelClient client;
+    private final MetricsRegistry registry;
+
+    public InstrumentedClient(RestHighLevelClient client, MetricsRegistry registry) {
+        this.client = client;
+        this.registry = registry;
+    }
+
+    public RestHighLevelClient getClient() {
+        return client;
+    }
+
+    public IndexResponse index(IndexRequest request) throws IOException {
+        return timed("index", request.index(), () -> client.index(request, RequestOptions.DEFAULT));
+    }
+
+    public GetResponse get(GetRequest request) throws IOException {
+        return timed("get", request.index(), () -> client.get(request, RequestOptions.DEFAULT));
+    }
+
+    public UpdateResponse update(UpdateRequest request) throws IOException {
+        return timed("update", request.index(), () -> client.update(request, RequestOptions.DEFAULT));
+    }
+
+    public DeleteResponse delete(DeleteRequest request) throws IOException {
+        return timed("delete", request.index(), () -> client.delete(request, RequestOptions.DEFAULT));
+    }
+
+    public BulkResponse bulk(BulkRequest request) throws IOException {
+        String index = bulkIndex(request);
+        BulkResponse response = timed("bulk", index, () -> client.bulk(request, RequestOptions.DEFAULT));
+        registry.recordValue(EsMetrics.SERVER_TOOK, "bulk", index, response.getTook().millis());
+        if (response.hasFailures()) {
+            for (BulkItemResponse item : response.getItems()) {
+                if (item.isFailed()) {
+                    registry.increment(EsMetrics.BULK_ITEM_FAILURES, item.getOpType().getLowercase(), item.getIndex(), 1);
+                }
+            }
+        }
+        return response;
+    }
+
+    public SearchResponse search(SearchRequest request) throws IOException {
+        String index = searchIndex(request);
+        SearchResponse response = timed("search", index, () -> client.search(request, RequestOptions.DEFAULT));
+        registry.recordValue(EsMetrics.SERVER_TOOK, "search", index, response.getTook().millis());
+        return response;
+    }
+
+    /**
+     * 查询并解码 User，解码耗时单独记录
+     */
+    public List<User> searchUsers(SearchRequest request) throws IOException {
+        SearchResponse response = search(request);
+        long start = System.nanoTime();
+        List<User> users = UserHitDecoder.decodeAll(response.getHits());
+        registry.recordValue(EsMetrics.DECODE_LATENCY, "search", searchIndex(request),
+                TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        return users;
+    }
+
+    private <T> T timed(String operation, String index, IOCall<T> call) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return call.call();
+        } catch (IOException | RuntimeException e) {
+            registry.increment(EsMetrics.ERRORS, operation, index, 1);
+            throw e;
+        } finally {
+            registry.recordValue(EsMetrics.CLIENT_LATENCY, operation, index,
+                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        }
+    }
+
+    private static String searchIndex(SearchRequest request) {
+        return request.indices().length == 0 ? "_all" : String.join(",", request.indices());
+    }
+
+    /**
+     * bulk 可以写多个索引，只有一个索引时按该索引记录
+     */
+    private static String bulkIndex(BulkRequest request) {
+        String index = null;
+        for (DocWriteRequest<?> docRequest : request.requests()) {
+            if (index == null) {
+                index = docRequest.index();
+            } else if (!index.equals(docRequest.index())) {
+                return "_multi";
+            }
+        }
+        return index == null ? "_all" : index;
+    }
+
+    @FunctionalInterface
+    private interface IOCall<T> {
+        T call() throws IOException;
+    }
+}
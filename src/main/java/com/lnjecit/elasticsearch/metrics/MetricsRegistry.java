@@ -0,0 +1,27 @@
+package com.lnjecit.elasticsearch.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 指标注册表，按 指标名 + 操作 + 索引 维度记录。
+ * <p>
+ * 实现需要线程安全；可以对接 Micrometer、Prometheus 等监控系统，默认实现见 {@link HdrMetricsRegistry}。
+ * 指标名见 {@link EsMetrics}。
+ */
+public interface MetricsRegistry {
+
+    /**
+     * 记录一个分布值，如延迟、字节数
+     */
+    void recordValue(String metric, String operation, String index, long value);
+
+    /**
+     * 计数器累加，如错误数、bulk 失败条目数
+     */
+    void increment(String metric, String operation, String index, long delta);
+
+    /**
+     * 注册一个实时读取的指标，如连接池已租用连接数
+     */
+    void registerGauge(String metric, String name, LongSupplier supplier);
+}
@@ -0,0 +1,263 @@
+package com.lnjecit.elasticsearch.search;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.Strings;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 客户端查询结果缓存，按需使用：同一索引 + 同一查询体的结果在 TTL 内直接从内存返回。
+ * <ul>
+ *     <li>缓存 key 为索引名 + SearchSourceBuilder 序列化后的规范 JSON</li>
+ *     <li>容量有限，超过后淘汰最久未访问的条目(LRU)，条目过期(TTL)后重新查询</li>
+ *     <li>通过本类的 index/update/delete/bulk 写入时，清除相关索引的缓存</li>
+ * </ul>
+ * 客户端不解析别名和通配符，只有写入响应中出现过的具体索引名才按索引精确失效；
+ * 查询中含通配符、_all、未指定索引，或者索引名还没有被确认为具体索引（可能是别名）时，任何写入都会使其失效。
+ * 索引被删除后以同名别名重建时需要调用 {@link #invalidateAll()}。
+ * 绕过本类直接写入的数据，最多在 TTL 之后可见。
+ */
+public class CachingSearcher {
+    private final RestHighLevelClient client;
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    private final Map<String, Entry> cache;
+    /**
+     * 每个索引的写入版本，查询期间发生写入时不缓存查询结果，避免缓存旧数据
+     */
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    /**
+     * 任意索引的写入次数，不能按索引精确失效的查询按它判断
+     */
+    private final AtomicLong writes = new AtomicLong();
+    /**
+     * 在写入响应中出现过的具体索引名
+     */
+    private final Set<String> concreteIndices = ConcurrentHashMap.newKeySet();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CachingSearcher(RestHighLevelClient client, int maxEntries, long ttl, TimeUnit unit) {
+        this.client = client;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > CachingSearcher.this.maxEntries;
+            }
+        };
+    }
+
+    public SearchResponse search(SearchRequest request) throws IOException {
+        if (request.scroll() != null || request.source() == null) {
+            return client.search(request, RequestOptions.DEFAULT);
+        }
+        String key = cacheKey(request);
+        long now = System.nanoTime();
+        synchronized (cache) {
+            Entry entry = cache.get(key);
+            if (entry != null && entry.expireAt - now > 0) {
+                hits.incrementAndGet();
+                return entry.response;
+            }
+        }
+        misses.incrementAndGet();
+
+        boolean broad = isBroad(request.indices());
+        long generation = generation(request.indices(), broad);
+        SearchResponse response = client.search(request, RequestOptions.DEFAULT);
+        synchronized (cache) {
+            if (generation == generation(request.indices(), broad)) {
+                cache.put(key, new Entry(response, new HashSet<>(Arrays.asList(request.indices())), broad, now + ttlNanos));
+            }
+        }
+        return response;
+    }
+
+    public IndexResponse index(IndexRequest request) throws IOException {
+        IndexResponse response = null;
+        try {
+            response = client.index(request, RequestOptions.DEFAULT);
+            return response;
+        } finally {
+            written(request.index(), response);
+        }
+    }
+
+    public UpdateResponse update(UpdateRequest request) throws IOException {
+        UpdateResponse response = null;
+        try {
+            response = client.update(request, RequestOptions.DEFAULT);
+            return response;
+        } finally {
+            written(request.index(), response);
+        }
+    }
+
+    public DeleteResponse delete(DeleteRequest request) throws IOException {
+        DeleteResponse response = null;
+        try {
+            response = client.delete(request, RequestOptions.DEFAULT);
+            return response;
+        } finally {
+            written(request.index(), response);
+        }
+    }
+
+    public BulkResponse bulk(BulkRequest request) throws IOException {
+        BulkResponse response = null;
+        try {
+            response = client.bulk(request, RequestOptions.DEFAULT);
+            return response;
+        } finally {
+            Set<String> indices = new HashSet<>();
+            for (DocWriteRequest<?> docRequest : request.requests()) {
+                indices.add(docRequest.index());
+            }
+            if (response != null) {
+                for (BulkItemResponse item : response.getItems()) {
+                    if (!item.isFailed()) {
+                        concreteIndices.add(item.getIndex());
+                    }
+                    indices.add(item.getIndex());
+                }
+            }
+            for (String index : indices) {
+                invalidate(index);
+            }
+        }
+    }
+
+    /**
+     * 写入完成后失效缓存；响应中的索引名是具体索引，写入别名时两者不同，都要失效
+     */
+    private void written(String index, DocWriteResponse response) {
+        if (response != null) {
+            concreteIndices.add(response.getIndex());
+            if (!index.equals(response.getIndex())) {
+                invalidate(response.getIndex());
+            }
+        }
+        invalidate(index);
+    }
+
+    /**
+     * 清除与指定索引相关的缓存，不能按索引精确失效的缓存一并清除
+     */
+    public void invalidate(String index) {
+        synchronized (cache) {
+            generations.computeIfAbsent(index, k -> new AtomicLong()).incrementAndGet();
+            writes.incrementAndGet();
+            Iterator<Entry> it = cache.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.broad || entry.indices.contains(index)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (cache) {
+            for (AtomicLong generation : generations.values()) {
+                generation.incrementAndGet();
+            }
+            writes.incrementAndGet();
+            cache.clear();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * 未指定索引、_all、通配符、排除、跨集群，或者还没有确认是具体索引的名称（可能是别名）
+     */
+    private boolean isBroad(String[] indices) {
+        if (indices.length == 0) {
+            return true;
+        }
+        for (String index : indices) {
+            if ("_all".equals(index) || index.startsWith("-") || index.indexOf('*') >= 0 || index.indexOf('?') >= 0
+                    || index.indexOf(':') >= 0 || !concreteIndices.contains(index)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long generation(String[] indices, boolean broad) {
+        if (broad) {
+            // 任意索引写入都要失效
+            return writes.get();
+        }
+        long sum = 0;
+        for (String index : indices) {
+            AtomicLong generation = generations.get(index);
+            sum += generation == null ? 0 : generation.get();
+        }
+        return sum;
+    }
+
+    /**
+     * 索引名排序后拼接查询体 JSON，相同查询条件得到相同 key
+     */
+    private static String cacheKey(SearchRequest request) {
+        String[] indices = request.indices().clone();
+        Arrays.sort(indices);
+        return String.join(",", indices) + '|' + request.routing() + '|' + request.preference()
+                + '|' + Strings.toString(request.source());
+    }
+
+    private static final class Entry {
+        private final SearchResponse response;
+        private final Set<String> indices;
+        private final boolean broad;
+        private final long expireAt;
+
+        private Entry(SearchResponse response, Set<String> indices, boolean broad, long expireAt) {
+            this.response = response;
+            this.indices = Collections.unmodifiableSet(indices);
+            this.broad = broad;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.lnjecit.elasticsearch.search;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.Aggregation;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.Max;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * 扇出搜索的合并结果，包括各目标的原始响应和失败的目标
+ */
+public class FanOutResult {
+    private final List<SearchHit> hits;
+    private final Map<String, SearchResponse> responses;
+    private final Map<String, Exception> failures;
+
+    FanOutResult(List<SearchHit> hits, Map<String, SearchResponse> responses, Map<String, Exception> failures) {
+        this.hits = hits;
+        this.responses = responses;
+        this.failures = failures;
+    }
+
+    /**
+     * 合并排序后的当前页
+     */
+    public List<SearchHit> getHits() {
+        return hits;
+    }
+
+    /**
+     * 成功目标的总命中数之和，关闭 track_total_hits 时为 -1
+     */
+    public long getTotalHits() {
+        long total = 0;
+        for (SearchResponse response : responses.values()) {
+            if (response.getHits().getTotalHits() == null) {
+                return -1;
+            }
+            total += response.getHits().getTotalHits().value;
+        }
+        return total;
+    }
+
+    public Map<String, SearchResponse> getResponses() {
+        return responses;
+    }
+
+    public Map<String, Exception> getFailures() {
+        return failures;
+    }
+
+    /**
+     * 是否有目标失败或超时
+     */
+    public boolean isPartial() {
+        return !failures.isEmpty();
+    }
+
+    /**
+     * 合并各目标的 max 聚合，没有值时为 {@code -Infinity}
+     */
+    public double getMax(String name) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (SearchResponse response : responses.values()) {
+            Max agg = aggregation(response, name);
+            if (agg != null) {
+                max = Math.max(max, agg.getValue());
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 合并各目标的 terms 聚合：同一 key 的文档数相加，按 key 升序。
+     * 各目标只返回了自己的前 size 个分组，按文档数排序时合并结果可能不精确。
+     */
+    @SuppressWarnings("unchecked")
+    public <K extends Comparable<? super K>> SortedMap<K, Long> getTermCounts(String name) {
+        SortedMap<K, Long> counts = new TreeMap<>();
+        for (SearchResponse response : responses.values()) {
+            Terms agg = aggregation(response, name);
+            if (agg != null) {
+                for (Terms.Bucket bucket : agg.getBuckets()) {
+                    counts.merge((K) bucket.getKey(), bucket.getDocCount(), Long::sum);
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static <A extends Aggregation> A aggregation(SearchResponse response, String name) {
+        return response.getAggregations() == null ? null : response.getAggregations().get(name);
+    }
+}
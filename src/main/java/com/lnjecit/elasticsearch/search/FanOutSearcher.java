@@ -0,0 +1,185 @@
+package com.lnjecit.elasticsearch.search;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 扇出搜索：把同一个查询并发发送到多个集群/索引，再合并结果。
+ * <p>
+ * 所有目标同时发出请求，总耗时取决于最慢的目标而不是各目标之和；超过 timeout 仍未返回的目标被取消，
+ * 记为失败，其余目标的结果照常合并（部分结果）。
+ * <p>
+ * 分页时每个目标都取前 from + size 条，按排序合并后再截取 [from, from + size)。
+ * 支持按字段排序（如 {@code sort("id", SortOrder.ASC)}），没有排序时按 _score 降序；排序值相同时按目标顺序。
+ */
+public class FanOutSearcher {
+    private static final Logger log = LoggerFactory.getLogger(FanOutSearcher.class);
+
+    private final List<SearchTarget> targets;
+    private final long timeoutMillis;
+
+    /**
+     * @param targets       名称不能重复，结果和失败按名称区分
+     * @param timeoutMillis 每个目标的超时时间
+     */
+    public FanOutSearcher(List<SearchTarget> targets, long timeoutMillis) {
+        if (targets.isEmpty()) {
+            throw new IllegalArgumentException("no search targets");
+        }
+        Set<String> names = new HashSet<>();
+        for (SearchTarget target : targets) {
+            if (!names.add(target.getName())) {
+                throw new IllegalArgumentException("duplicate search target name: " + target.getName());
+            }
+        }
+        this.targets = new ArrayList<>(targets);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 所有目标都失败时抛出 IOException，否则返回（可能是部分的）合并结果
+     */
+    public FanOutResult search(SearchSourceBuilder source) throws IOException {
+        int from = Math.max(source.from(), 0);
+        int size = source.size() < 0 ? 10 : source.size();
+        SearchSourceBuilder targetSource = source.shallowCopy().from(0).size(from + size);
+
+        List<CompletableFuture<SearchResponse>> futures = new ArrayList<>(targets.size());
+        List<Cancellable> cancellables = new ArrayList<>(targets.size());
+        for (SearchTarget target : targets) {
+            CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+            SearchRequest request = new SearchRequest(target.getIndices()).source(targetSource);
+            cancellables.add(target.getClient().searchAsync(request, RequestOptions.DEFAULT,
+                    ActionListener.wrap(future::complete, future::completeExceptionally)));
+            futures.add(future);
+        }
+
+        // 所有目标同时开始，统一的截止时间即为每个目标的超时
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Map<String, SearchResponse> responses = new LinkedHashMap<>();
+        Map<String, Exception> failures = new LinkedHashMap<>();
+        for (int i = 0; i < targets.size(); i++) {
+            String name = targets.get(i).getName();
+            try {
+                long remaining = Math.max(deadline - System.nanoTime(), 0);
+                responses.put(name, futures.get(i).get(remaining, TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                cancellables.get(i).cancel();
+                failures.put(name, new TimeoutException("search on " + targets.get(i) + " timed out after " + timeoutMillis + "ms"));
+            } catch (ExecutionException e) {
+                failures.put(name, e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancellables.forEach(Cancellable::cancel);
+                throw new InterruptedIOException("interrupted while waiting for fan-out search");
+            }
+        }
+
+        if (responses.isEmpty()) {
+            IOException exception = new IOException("fan-out search failed on all targets: " + failures.keySet());
+            failures.values().forEach(exception::addSuppressed);
+            throw exception;
+        }
+        if (!failures.isEmpty()) {
+            log.warn("fan-out search returns partial results, failed targets: {}", failures.keySet());
+        }
+        List<SearchHit> hits = mergeHits(new ArrayList<>(responses.values()), comparator(source.sorts()), from, size);
+        return new FanOutResult(hits, responses, failures);
+    }
+
+    /**
+     * 各目标的 hit 已按排序返回，k 路归并取 [from, from + size)
+     */
+    static List<SearchHit> mergeHits(List<SearchResponse> responses, Comparator<SearchHit> comparator, int from, int size) {
+        // 元素为 {目标序号, hit 序号}
+        PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) -> {
+            int result = comparator.compare(responses.get(a[0]).getHits().getHits()[a[1]],
+                    responses.get(b[0]).getHits().getHits()[b[1]]);
+            return result != 0 ? result : Integer.compare(a[0], b[0]);
+        });
+        for (int i = 0; i < responses.size(); i++) {
+            if (responses.get(i).getHits().getHits().length > 0) {
+                heads.add(new int[]{i, 0});
+            }
+        }
+        List<SearchHit> page = new ArrayList<>(size);
+        int position = 0;
+        while (!heads.isEmpty() && page.size() < size) {
+            int[] head = heads.poll();
+            SearchHit[] hits = responses.get(head[0]).getHits().getHits();
+            if (position++ >= from) {
+                page.add(hits[head[1]]);
+            }
+            if (++head[1] < hits.length) {
+                heads.add(head);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * 与各目标自身排序一致的比较器：缺失值按 missing 设置排在最后（默认）或最前，不随升降序反转；
+     * 数值按大小比较，不同目标把同一字段映射为 int / long 等不同类型时也能比较
+     */
+    public static Comparator<SearchHit> comparator(List<SortBuilder<?>> sorts) {
+        if (sorts == null || sorts.isEmpty()) {
+            return Comparator.comparing(SearchHit::getScore, Comparator.reverseOrder());
+        }
+        Comparator<SearchHit> comparator = null;
+        for (int i = 0; i < sorts.size(); i++) {
+            SortBuilder<?> sort = sorts.get(i);
+            if (!(sort instanceof FieldSortBuilder)) {
+                throw new IllegalArgumentException("fan-out search only supports field sorts, got: " + sort);
+            }
+            int index = i;
+            Comparator<Object> values = FanOutSearcher::compareValues;
+            if (sort.order() == SortOrder.DESC) {
+                values = values.reversed();
+            }
+            values = "_first".equals(((FieldSortBuilder) sort).missing()) ? Comparator.nullsFirst(values) : Comparator.nullsLast(values);
+            Comparator<SearchHit> next = Comparator.comparing(hit -> hit.getSortValues()[index], values);
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        return comparator;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareValues(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            if (isIntegral(a) && isIntegral(b)) {
+                return Long.compare(((Number) a).longValue(), ((Number) b).longValue());
+            }
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        return ((Comparable) a).compareTo(b);
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+}
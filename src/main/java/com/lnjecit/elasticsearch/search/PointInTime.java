@@ -0,0 +1,53 @@
+package com.lnjecit.elasticsearch.search;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.HttpHeaders;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * point-in-time 上下文的打开与关闭。
+ * <p>
+ * 7.12 的 RestHighLevelClient 还没有 PIT 接口，这里通过 low-level client 调用 {@code _pit} 端点。
+ */
+public final class PointInTime {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    /**
+     * 响应按 JSON 解析，不受客户端默认的 Accept（见 EsClientConfig#setResponseContentType）影响
+     */
+    private static final RequestOptions JSON_RESPONSE = RequestOptions.DEFAULT.toBuilder()
+            .addHeader(HttpHeaders.ACCEPT, "application/json").build();
+
+    private PointInTime() {
+    }
+
+    /**
+     * 打开 PIT，返回 PIT id
+     */
+    public static String open(RestHighLevelClient client, String index, TimeValue keepAlive) throws IOException {
+        Request request = new Request("POST", "/" + index + "/_pit");
+        request.addParameter("keep_alive", keepAlive.getStringRep());
+        request.setOptions(JSON_RESPONSE);
+        Response response = client.getLowLevelClient().performRequest(request);
+        try (InputStream content = response.getEntity().getContent()) {
+            return OBJECT_MAPPER.readTree(content).get("id").asText();
+        }
+    }
+
+    /**
+     * 关闭 PIT，释放服务端保留的 segment
+     */
+    public static void close(RestHighLevelClient client, String pitId) throws IOException {
+        ObjectNode body = OBJECT_MAPPER.createObjectNode().put("id", pitId);
+        Request request = new Request("DELETE", "/_pit");
+        request.setJsonEntity(OBJECT_MAPPER.writeValueAsString(body));
+        client.getLowLevelClient().performRequest(request);
+    }
+}
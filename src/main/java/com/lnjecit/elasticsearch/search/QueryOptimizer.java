@@ -0,0 +1,178 @@
+package com.lnjecit.elasticsearch.search;
+
+import org.elasticsearch.index.query.AbstractQueryBuilder;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.ConstantScoreQueryBuilder;
+import org.elasticsearch.index.query.ExistsQueryBuilder;
+import org.elasticsearch.index.query.IdsQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.index.query.TermQueryBuilder;
+import org.elasticsearch.index.query.TermsQueryBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 查询改写：把不需要打分的精确条件放到 filter 上下文。
+ * <p>
+ * term、terms、range、exists、ids 这类条件放在 must/should 或顶层时会参与打分，也用不上节点的 query cache；
+ * 改写后：
+ * <ul>
+ *     <li>顶层的精确条件包进 constant_score</li>
+ *     <li>bool 中 must 的精确条件移到 filter，filter/must_not 内部的 bool 全部按非打分处理</li>
+ *     <li>只需命中一个 should 时，同一字段的多个 term 合并为一个 terms；should 全是精确条件时整体移到 filter</li>
+ * </ul>
+ * 命中的文档集合不变，只是这些条件不再贡献分数。需要按相关度排序的查询只会改写精确条件，match 等全文条件保持原样；
+ * 显式设置了 boost 的精确条件说明调用方需要它参与打分，在打分上下文中也保持原样。
+ */
+public final class QueryOptimizer {
+
+    private QueryOptimizer() {
+    }
+
+    /**
+     * 改写 source 中的查询；不需要总命中数时关闭 track_total_hits，命中数超过 1 万也不用精确计数
+     */
+    public static SearchSourceBuilder optimize(SearchSourceBuilder source, boolean needTotalHits) {
+        if (source.query() != null) {
+            source.query(optimize(source.query()));
+        }
+        if (!needTotalHits) {
+            source.trackTotalHits(false);
+        }
+        return source;
+    }
+
+    public static QueryBuilder optimize(QueryBuilder query) {
+        QueryBuilder optimized = optimize(query, true);
+        if (isFilterable(optimized) && !(optimized instanceof BoolQueryBuilder) && !(optimized instanceof ConstantScoreQueryBuilder)) {
+            return QueryBuilders.constantScoreQuery(optimized);
+        }
+        return optimized;
+    }
+
+    private static QueryBuilder optimize(QueryBuilder query, boolean scoring) {
+        if (query instanceof BoolQueryBuilder) {
+            return optimizeBool((BoolQueryBuilder) query, scoring);
+        }
+        if (query instanceof ConstantScoreQueryBuilder) {
+            ConstantScoreQueryBuilder constantScore = (ConstantScoreQueryBuilder) query;
+            return copyMeta(constantScore, QueryBuilders.constantScoreQuery(optimize(constantScore.innerQuery(), false)));
+        }
+        return query;
+    }
+
+    private static QueryBuilder optimizeBool(BoolQueryBuilder bool, boolean scoring) {
+        BoolQueryBuilder result = copyMeta(bool, QueryBuilders.boolQuery());
+        result.adjustPureNegative(bool.adjustPureNegative());
+
+        for (QueryBuilder clause : bool.must()) {
+            QueryBuilder optimized = optimize(clause, scoring);
+            if (!scoring || isFilterable(optimized)) {
+                result.filter(optimized);
+            } else {
+                result.must(optimized);
+            }
+        }
+        for (QueryBuilder clause : bool.filter()) {
+            result.filter(optimize(clause, false));
+        }
+        for (QueryBuilder clause : bool.mustNot()) {
+            result.mustNot(optimize(clause, false));
+        }
+
+        List<QueryBuilder> should = new ArrayList<>(bool.should().size());
+        for (QueryBuilder clause : bool.should()) {
+            should.add(optimize(clause, scoring));
+        }
+        boolean hasRequired = !bool.must().isEmpty() || !bool.filter().isEmpty();
+        String minimumShouldMatch = bool.minimumShouldMatch();
+        // 只需命中一个 should：没有 must/filter 且未设置 minimum_should_match，或显式设置为 1
+        boolean matchAnyShould = !should.isEmpty()
+                && (minimumShouldMatch == null ? !hasRequired : "1".equals(minimumShouldMatch));
+        if (matchAnyShould) {
+            should = mergeTerms(should);
+            if (!scoring || should.stream().allMatch(QueryOptimizer::isFilterable)) {
+                result.filter(should.size() == 1 ? should.get(0) : anyOf(should));
+                return result;
+            }
+        }
+        should.forEach(result::should);
+        result.minimumShouldMatch(minimumShouldMatch);
+        return result;
+    }
+
+    /**
+     * 同一字段上没有 boost 和 _name 的 term 合并为一个 terms，其它条件保持原有顺序
+     */
+    private static List<QueryBuilder> mergeTerms(List<QueryBuilder> clauses) {
+        Map<String, List<Object>> valuesByField = new LinkedHashMap<>();
+        for (QueryBuilder clause : clauses) {
+            if (isPlainTerm(clause)) {
+                TermQueryBuilder term = (TermQueryBuilder) clause;
+                valuesByField.computeIfAbsent(term.fieldName(), field -> new ArrayList<>()).add(term.value());
+            }
+        }
+        List<QueryBuilder> merged = new ArrayList<>(clauses.size());
+        for (QueryBuilder clause : clauses) {
+            if (!isPlainTerm(clause)) {
+                merged.add(clause);
+                continue;
+            }
+            TermQueryBuilder term = (TermQueryBuilder) clause;
+            List<Object> values = valuesByField.remove(term.fieldName());
+            if (values == null) {
+                // 已合并到该字段第一个 term 的位置
+                continue;
+            }
+            merged.add(values.size() == 1 ? term : QueryBuilders.termsQuery(term.fieldName(), values));
+        }
+        return merged;
+    }
+
+    private static BoolQueryBuilder anyOf(List<QueryBuilder> clauses) {
+        BoolQueryBuilder bool = QueryBuilders.boolQuery();
+        clauses.forEach(bool::should);
+        return bool;
+    }
+
+    private static boolean isPlainTerm(QueryBuilder query) {
+        if (!(query instanceof TermQueryBuilder)) {
+            return false;
+        }
+        TermQueryBuilder term = (TermQueryBuilder) query;
+        return term.boost() == AbstractQueryBuilder.DEFAULT_BOOST && term.queryName() == null && !term.caseInsensitive();
+    }
+
+    /**
+     * 可以从打分上下文移到 filter 的条件：精确条件且 boost 为默认值
+     */
+    private static boolean isFilterable(QueryBuilder query) {
+        return isExact(query) && query.boost() == AbstractQueryBuilder.DEFAULT_BOOST;
+    }
+
+    /**
+     * 不需要打分的精确条件；只有 filter/must_not 的 bool 也算
+     */
+    static boolean isExact(QueryBuilder query) {
+        if (query instanceof TermQueryBuilder || query instanceof TermsQueryBuilder || query instanceof RangeQueryBuilder
+                || query instanceof ExistsQueryBuilder || query instanceof IdsQueryBuilder
+                || query instanceof ConstantScoreQueryBuilder) {
+            return true;
+        }
+        if (query instanceof BoolQueryBuilder) {
+            BoolQueryBuilder bool = (BoolQueryBuilder) query;
+            return bool.must().isEmpty() && bool.should().isEmpty() && !bool.filter().isEmpty();
+        }
+        return false;
+    }
+
+    private static <Q extends AbstractQueryBuilder<Q>> Q copyMeta(QueryBuilder from, Q to) {
+        return to.boost(from.boost()).queryName(from.queryName());
+    }
+}
@@ -0,0 +1,98 @@
+package com.lnjecit.elasticsearch.search;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.script.ScriptType;
+import org.elasticsearch.script.mustache.SearchTemplateRequest;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预编译的查询模板（mustache search template）。
+ * <p>
+ * 请求体只在创建模板时由 SearchSourceBuilder 渲染一次，参数位置用 {@code {{name}}} 占位。
+ * 每次调用只发送模板 id（或模板源码）和参数，不再构建、序列化整棵查询对象树。
+ */
+public class QueryTemplate {
+    private final String id;
+    private final String source;
+    private final List<String> params;
+
+    QueryTemplate(String id, String source, List<String> params) {
+        this.id = id;
+        this.source = source;
+        this.params = params;
+    }
+
+    /**
+     * 由原型查询生成模板：原型中用 {@link #placeholder(String)} 作为参数值，
+     * numericParams 中的参数渲染时去掉引号，作为数字填入
+     */
+    public static QueryTemplate of(String id, SearchSourceBuilder prototype, List<String> params, String... numericParams) {
+        String source = Strings.toString(prototype);
+        for (String param : numericParams) {
+            source = source.replace("\"" + placeholder(param) + "\"", placeholder(param));
+        }
+        for (String param : params) {
+            if (!source.contains(placeholder(param))) {
+                throw new IllegalArgumentException("template " + id + " has no slot for param: " + param);
+            }
+        }
+        return new QueryTemplate(id, source, Collections.unmodifiableList(params));
+    }
+
+    public static String placeholder(String param) {
+        return "{{" + param + "}}";
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public List<String> getParams() {
+        return params;
+    }
+
+    /**
+     * 存储脚本请求体，用于 {@code PUT _scripts/{id}}
+     */
+    public BytesReference storedScript() throws IOException {
+        XContentBuilder builder = XContentFactory.jsonBuilder();
+        builder.startObject().startObject("script")
+                .field("lang", "mustache")
+                .field("source", source)
+                .endObject().endObject();
+        return BytesReference.bytes(builder);
+    }
+
+    /**
+     * @param stored true 时按 id 引用已存储的模板，否则把模板源码随请求发送
+     */
+    public SearchTemplateRequest request(String index, Map<String, Object> values, boolean stored) {
+        if (!values.keySet().containsAll(params)) {
+            throw new IllegalArgumentException("template " + id + " requires params " + params + ", got " + values.keySet());
+        }
+        SearchTemplateRequest request = new SearchTemplateRequest(new SearchRequest(index));
+        request.setScriptType(stored ? ScriptType.STORED : ScriptType.INLINE);
+        request.setScript(stored ? id : source);
+        request.setScriptParams(values);
+        return request;
+    }
+
+    @Override
+    public String toString() {
+        return id + Arrays.toString(params.toArray()) + ": " + source;
+    }
+}
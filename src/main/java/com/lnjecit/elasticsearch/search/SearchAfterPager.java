@@ -0,0 +1,141 @@
+package com.lnjecit.elasticsearch.search;
+
+import com.lnjecit.elasticsearch.codec.UserHitDecoder;
+import com.lnjecit.elasticsearch.domain.User;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 基于 search_after + point-in-time 的深分页。
+ * <p>
+ * from + size 翻到第 N 页时每个分片都要取出 from + size 条再丢弃前 from 条，页码越深越慢，
+ * 并且受 index.max_result_window(默认 10000) 限制。search_after 用上一页最后一条的排序值作为游标，
+ * 每一页的代价都与第一页相同；PIT 保证翻页过程中看到的是同一份数据快照。
+ * <p>
+ * 非线程安全，一个 pager 对应一次遍历，用完需要 close 释放 PIT。
+ */
+public class SearchAfterPager implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(SearchAfterPager.class);
+
+    private final RestHighLevelClient client;
+    private final String index;
+    private final QueryBuilder query;
+    private final int pageSize;
+    private final TimeValue keepAlive;
+    private final String sortField;
+
+    private String pitId;
+    private Object[] searchAfter;
+    private boolean finished;
+
+    /**
+     * @param sortField 唯一且可排序的字段，作为翻页游标，如 id
+     */
+    public SearchAfterPager(RestHighLevelClient client, String index, QueryBuilder query,
+                            int pageSize, TimeValue keepAlive, String sortField) {
+        this.client = client;
+        this.index = index;
+        this.query = query;
+        this.pageSize = pageSize;
+        this.keepAlive = keepAlive;
+        this.sortField = sortField;
+    }
+
+    /**
+     * 从指定游标继续翻页，游标来自上一次遍历的 {@link #getSearchAfter()}
+     */
+    public SearchAfterPager startAfter(Object[] searchAfter) {
+        this.searchAfter = searchAfter;
+        return this;
+    }
+
+    /**
+     * 当前游标，即最后一条结果的排序值
+     */
+    public Object[] getSearchAfter() {
+        return searchAfter;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * 取下一页，没有更多数据时返回空列表
+     */
+    public List<User> nextPage() throws IOException {
+        if (finished) {
+            return Collections.emptyList();
+        }
+        if (pitId == null) {
+            pitId = PointInTime.open(client, index, keepAlive);
+        }
+
+        SearchSourceBuilder sourceBuilder = new SearchSourceBuilder()
+                .query(query)
+                .size(pageSize)
+                .sort(sortField, SortOrder.ASC)
+                // 翻页不需要精确总数
+                .trackTotalHits(false)
+                .pointInTimeBuilder(new PointInTimeBuilder(pitId).setKeepAlive(keepAlive));
+        if (searchAfter != null) {
+            sourceBuilder.searchAfter(searchAfter);
+        }
+        // 使用 PIT 时不能指定索引
+        SearchRequest searchRequest = new SearchRequest().source(sourceBuilder);
+        searchRequest.setCcsMinimizeRoundtrips(false);
+
+        SearchResponse response = client.search(searchRequest, RequestOptions.DEFAULT);
+        if (response.pointInTimeId() != null) {
+            pitId = response.pointInTimeId();
+        }
+        SearchHit[] hits = response.getHits().getHits();
+        if (hits.length < pageSize) {
+            finished = true;
+        }
+        if (hits.length > 0) {
+            searchAfter = hits[hits.length - 1].getSortValues();
+        }
+        return UserHitDecoder.decodeAll(response.getHits());
+    }
+
+    /**
+     * 遍历全部结果，内存中只保留一页
+     */
+    public void forEach(Consumer<User> consumer) throws IOException {
+        while (!finished) {
+            for (User user : nextPage()) {
+                consumer.accept(user);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (pitId != null) {
+            try {
+                PointInTime.close(client, pitId);
+            } catch (IOException e) {
+                // PIT 到期后会被服务端自动清理
+                log.warn("close point in time failed, index: {}", index, e);
+            }
+            pitId = null;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.lnjecit.elasticsearch.search;
+
+import org.elasticsearch.client.RestHighLevelClient;
+
+import java.util.Arrays;
+
+/**
+ * 扇出搜索的一个目标：某个集群上的一组索引
+ */
+public class SearchTarget {
+    private final String name;
+    private final RestHighLevelClient client;
+    private final String[] indices;
+
+    /**
+     * @param name    目标名称，用于区分结果和失败，如 "cluster-a/user_test_2024"
+     * @param indices 该集群上要搜索的索引，可以是别名或通配符
+     */
+    public SearchTarget(String name, RestHighLevelClient client, String... indices) {
+        this.name = name;
+        this.client = client;
+        this.indices = indices;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public RestHighLevelClient getClient() {
+        return client;
+    }
+
+    public String[] getIndices() {
+        return indices;
+    }
+
+    @Override
+    public String toString() {
+        return name + Arrays.toString(indices);
+    }
+}
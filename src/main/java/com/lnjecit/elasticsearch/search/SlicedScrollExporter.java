@@ -0,0 +1,140 @@
+package com.lnjecit.elasticsearch.search;
+
+import com.lnjecit.elasticsearch.codec.UserHitDecoder;
+import com.lnjecit.elasticsearch.domain.User;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 并行 sliced scroll 导出整个索引。
+ * <p>
+ * 把一次 scroll 拆成 N 个 slice，每个 slice 是一个独立的 scroll 游标，由有界线程池并发拉取，
+ * 导出耗时随 CPU 核数和分片数扩展，而不是受限于单个顺序游标。slice 数一般取分片数的整数倍。
+ */
+public class SlicedScrollExporter {
+    private static final Logger log = LoggerFactory.getLogger(SlicedScrollExporter.class);
+
+    private final RestHighLevelClient client;
+    private final int slices;
+    private final int parallelism;
+    private final int batchSize;
+    private final TimeValue keepAlive;
+
+    /**
+     * @param slices      slice 数
+     * @param parallelism 同时拉取的 slice 数（线程数）
+     * @param batchSize   每次 scroll 拉取的条数
+     * @param keepAlive   scroll 上下文保活时间
+     */
+    public SlicedScrollExporter(RestHighLevelClient client, int slices, int parallelism, int batchSize, TimeValue keepAlive) {
+        if (slices < 1 || parallelism < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("slices, parallelism and batchSize must be positive");
+        }
+        this.client = client;
+        this.slices = slices;
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * 导出索引中满足查询的全部文档，返回导出条数。
+     * <p>
+     * consumer 会被多个线程同时调用，必须是线程安全的。任一 slice 失败时取消其余 slice 并抛出异常。
+     */
+    public long export(String index, QueryBuilder query, Consumer<User> consumer) throws IOException {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, slices),
+                r -> new Thread(r, "sliced-scroll-" + index + "-" + threadIndex.incrementAndGet()));
+        try {
+            List<Future<Long>> futures = new ArrayList<>(slices);
+            for (int sliceId = 0; sliceId < slices; sliceId++) {
+                int id = sliceId;
+                futures.add(executor.submit(() -> exportSlice(index, query, id, consumer)));
+            }
+
+            long total = 0;
+            for (Future<Long> future : futures) {
+                total += future.get();
+            }
+            return total;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while exporting index " + index);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException("export index " + index + " failed", cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long exportSlice(String index, QueryBuilder query, int sliceId, Consumer<User> consumer) throws IOException {
+        SearchSourceBuilder sourceBuilder = new SearchSourceBuilder()
+                .query(query)
+                .size(batchSize)
+                // 按 _doc 排序是 scroll 最快的方式
+                .sort("_doc", SortOrder.ASC);
+        if (slices > 1) {
+            sourceBuilder.slice(new SliceBuilder(sliceId, slices));
+        }
+        SearchRequest searchRequest = new SearchRequest(index).source(sourceBuilder).scroll(keepAlive);
+
+        SearchResponse response = client.search(searchRequest, RequestOptions.DEFAULT);
+        String scrollId = response.getScrollId();
+        long count = 0;
+        try {
+            while (response.getHits().getHits().length > 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("slice " + sliceId + " cancelled");
+                }
+                for (User user : UserHitDecoder.lazy(response.getHits())) {
+                    consumer.accept(user);
+                    count++;
+                }
+                response = client.scroll(new SearchScrollRequest(scrollId).scroll(keepAlive), RequestOptions.DEFAULT);
+                scrollId = response.getScrollId();
+            }
+        } finally {
+            clearScroll(scrollId);
+        }
+        log.debug("slice {}/{} of index {} exported {} docs", sliceId, slices, index, count);
+        return count;
+    }
+
+    private void clearScroll(String scrollId) {
+        if (scrollId == null) {
+            return;
+        }
+        ClearScrollRequest request = new ClearScrollRequest();
+        request.addScrollId(scrollId);
+        try {
+            client.clearScroll(request, RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            // scroll 到期后会被服务端自动清理
+            log.warn("clear scroll failed", e);
+        }
+    }
+}
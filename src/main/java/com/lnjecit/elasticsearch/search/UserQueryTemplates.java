@@ -0,0 +1,116 @@
+package com.lnjecit.elasticsearch.search;
+
+import org.elasticsearch.action.admin.cluster.storedscripts.PutStoredScriptRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.script.mustache.SearchTemplateRequest;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.BucketOrder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.lnjecit.elasticsearch.search.QueryTemplate.placeholder;
+
+/**
+ * User 常用查询的模板：按姓名精确查询、年龄范围、姓名全文匹配并高亮、按年龄分组计数。
+ * <p>
+ * 调用 {@link #store()} 后按 id 引用服务端存储的模板，请求体只有 id 和参数；
+ * 未存储时把模板源码随请求发送（inline），同样不需要在客户端构建查询。
+ */
+public class UserQueryTemplates {
+    public static final QueryTemplate USER_BY_NAME = QueryTemplate.of("user_by_name",
+            new SearchSourceBuilder().query(QueryBuilders.termQuery("name.keyword", placeholder("name"))),
+            Collections.singletonList("name"));
+
+    public static final QueryTemplate AGE_RANGE = QueryTemplate.of("user_age_range",
+            new SearchSourceBuilder()
+                    .query(QueryBuilders.rangeQuery("age").gte(placeholder("from")).lte(placeholder("to")))
+                    .size(100)
+                    .sort("age", SortOrder.ASC),
+            Arrays.asList("from", "to"), "from", "to");
+
+    public static final QueryTemplate NAME_MATCH_HIGHLIGHT = QueryTemplate.of("user_name_match_highlight",
+            new SearchSourceBuilder()
+                    .query(QueryBuilders.matchQuery("name", placeholder("name")))
+                    .from(0)
+                    .size(10)
+                    .highlighter(new HighlightBuilder().field("name").preTags("<em>").postTags("</em>")),
+            Collections.singletonList("name"));
+
+    public static final QueryTemplate AGE_BUCKET_COUNTS = QueryTemplate.of("user_age_bucket_counts",
+            new SearchSourceBuilder()
+                    .size(0)
+                    .aggregation(AggregationBuilders.terms("age_group").field("age").size(1000).order(BucketOrder.key(true))),
+            Collections.emptyList());
+
+    private static final QueryTemplate[] ALL = {USER_BY_NAME, AGE_RANGE, NAME_MATCH_HIGHLIGHT, AGE_BUCKET_COUNTS};
+
+    private final RestHighLevelClient client;
+    private final String index;
+    private volatile boolean stored;
+
+    public UserQueryTemplates(RestHighLevelClient client, String index) {
+        this.client = client;
+        this.index = index;
+    }
+
+    /**
+     * 把全部模板存储到服务端 (PUT _scripts/{id})，之后的查询按 id 引用
+     */
+    public void store() throws IOException {
+        for (QueryTemplate template : ALL) {
+            PutStoredScriptRequest request = new PutStoredScriptRequest()
+                    .id(template.getId())
+                    .content(template.storedScript(), XContentType.JSON);
+            client.putScript(request, RequestOptions.DEFAULT);
+        }
+        stored = true;
+    }
+
+    public boolean isStored() {
+        return stored;
+    }
+
+    public SearchResponse userByName(String name) throws IOException {
+        return search(USER_BY_NAME, Collections.singletonMap("name", name));
+    }
+
+    public SearchResponse ageRange(int from, int to) throws IOException {
+        Map<String, Object> params = new HashMap<>(4);
+        params.put("from", from);
+        params.put("to", to);
+        return search(AGE_RANGE, params);
+    }
+
+    /**
+     * 姓名全文匹配，命中部分用 &lt;em&gt; 高亮
+     */
+    public SearchResponse nameMatchWithHighlight(String name) throws IOException {
+        return search(NAME_MATCH_HIGHLIGHT, Collections.singletonMap("name", name));
+    }
+
+    /**
+     * 按年龄分组计数，聚合名 age_group，按年龄升序
+     */
+    public SearchResponse ageBucketCounts() throws IOException {
+        return search(AGE_BUCKET_COUNTS, Collections.emptyMap());
+    }
+
+    public SearchResponse search(QueryTemplate template, Map<String, Object> params) throws IOException {
+        return client.searchTemplate(request(template, params), RequestOptions.DEFAULT).getResponse();
+    }
+
+    public SearchTemplateRequest request(QueryTemplate template, Map<String, Object> params) {
+        return template.request(index, params, stored);
+    }
+}
@@ -0,0 +1,1403 @@
+package com.lnjecit.elasticsearch.standin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.lnjecit.elasticsearch.standin.StandInIndex.Doc;
+import com.lnjecit.elasticsearch.standin.StandInSearch.Hit;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.common.unit.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 进程内的 Elasticsearch HTTP 替身，不需要启动真实集群即可运行测试和压测，启动耗时在毫秒级。
+ * <p>
+ * 在内存中保存索引和文档，支持 EsIndexTest / EsDocTest / EsDocSearchTest 用到的 REST 接口：
+ * 索引创建/查询/删除、settings、别名，文档增删改查、_bulk、_mget，
+ * _search（查询语义见 {@link StandInQuery}，聚合见 {@link StandInAggregations}）、_count、_msearch、
+ * scroll、point-in-time、存储的 mustache 查询模板。
+ * 还可以模拟慢节点、故障节点，以及 _nodes/http 节点发现；与 es 一样接收 gzip 请求体，客户端接受时返回 gzip 响应；
+ * 请求体可以是 JSON、SMILE 或 CBOR（按 Content-Type），响应格式按 Accept 选择，未指定时与请求体相同。
+ * <p>
+ * 只有一个分片、没有 refresh 延迟，写入后立即可查；评分是近似值，不能用于验证相关性。
+ * <p>
+ * 响应头和响应体分两次写出，会与客户端的延迟 ACK 叠加出约 40ms 延迟，需要在 JVM 启动参数中用
+ * {@code -Dsun.net.httpserver.nodelay=true} 关闭 Nagle 算法；测试由 surefire 配置，{@link #main} 自行设置。
+ */
+public class EsStandInServer implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(EsStandInServer.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final ObjectMapper SMILE_MAPPER = new ObjectMapper(new SmileFactory());
+    private static final ObjectMapper CBOR_MAPPER = new ObjectMapper(new CBORFactory());
+    /**
+     * SMILE 格式的 _bulk / _msearch 用 0xFF 分隔各行
+     */
+    private static final byte SMILE_SEPARATOR = (byte) 0xFF;
+    private static final String[] NAMES = {"王林", "韩立", "紫川秀", "张小凡", "路明非", "楚子航", "李沐婉", "紫灵"};
+    private static final Pattern MUSTACHE_TO_JSON = Pattern.compile("\\{\\{#toJson}}([^{}]+)\\{\\{/toJson}}");
+    private static final Pattern MUSTACHE_VARIABLE = Pattern.compile("\\{\\{(\\{?)\\s*([^{}\\s]+)\\s*}?}}");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private volatile long responseDelayMillis;
+    private volatile boolean unavailable;
+    private volatile HttpHost[] clusterNodes;
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, StandInIndex> indices = new TreeMap<>();
+    private final Map<String, String> scripts = new ConcurrentHashMap<>();
+    private final Map<String, ScrollContext> scrolls = new ConcurrentHashMap<>();
+    private final Map<String, PitContext> pits = new ConcurrentHashMap<>();
+
+    /**
+     * @param port 监听端口，0 表示随机端口
+     */
+    public EsStandInServer(int port) throws IOException {
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2, r -> {
+            Thread thread = new Thread(r, "es-stand-in-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 1024);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+    }
+
+    public EsStandInServer start() {
+        server.start();
+        log.info("es stand-in server started on {}", getHttpHost());
+        return this;
+    }
+
+    public HttpHost getHttpHost() {
+        return new HttpHost("localhost", server.getAddress().getPort(), "http");
+    }
+
+    /**
+     * 已收到的请求数
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * 每个响应前等待的时间，用于模拟慢节点
+     */
+    public void setResponseDelayMillis(long responseDelayMillis) {
+        this.responseDelayMillis = responseDelayMillis;
+    }
+
+    /**
+     * 为 true 时所有请求返回 503，用于模拟故障节点
+     */
+    public void setUnavailable(boolean unavailable) {
+        this.unavailable = unavailable;
+    }
+
+    /**
+     * _nodes/http 返回的节点，默认只有自身
+     */
+    public void setClusterNodes(HttpHost... clusterNodes) {
+        this.clusterNodes = clusterNodes;
+    }
+
+    /**
+     * 直接写入 id 为 1..count 的测试用户，不经过 HTTP
+     */
+    public EsStandInServer seedUsers(String index, int count) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            StandInIndex target = writeIndex(index);
+            for (long id = 1; id <= count; id++) {
+                target.put(String.valueOf(id), userSource(id));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * 索引中的文档数，索引不存在时为 -1
+     */
+    public int getDocCount(String index) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            StandInIndex target = indices.get(index);
+            return target == null ? -1 : target.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        try {
+            byte[] body = readBody("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))
+                    ? new GZIPInputStream(exchange.getRequestBody()) : exchange.getRequestBody());
+            ObjectMapper requestMapper = mapper(exchange.getRequestHeaders().getFirst("Content-Type"));
+            ObjectMapper responseMapper = mapper(exchange.getRequestHeaders().getFirst("Accept"));
+            if (responseMapper == null) {
+                responseMapper = requestMapper == null ? OBJECT_MAPPER : requestMapper;
+            }
+            if (responseDelayMillis > 0) {
+                Thread.sleep(responseDelayMillis);
+            }
+            if (unavailable) {
+                ObjectNode error = OBJECT_MAPPER.createObjectNode();
+                error.putObject("error").put("type", "unavailable").put("reason", "stand-in node is unavailable");
+                error.put("status", 503);
+                send(exchange, 503, error, responseMapper);
+                return;
+            }
+            Call call = new Call(exchange.getRequestMethod(), exchange.getRequestURI().getRawPath(),
+                    exchange.getRequestURI().getRawQuery(), body, requestMapper == null ? OBJECT_MAPPER : requestMapper);
+            Reply reply;
+            try {
+                reply = route(call);
+            } catch (StandInException e) {
+                reply = new Reply(e.getStatus(), error(e));
+            }
+            send(exchange, reply.status, "HEAD".equals(call.method) ? null : reply.body, responseMapper);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            log.warn("es stand-in request failed: {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+            send(exchange, 500, error(new StandInException(500, "stand_in_exception", String.valueOf(e.getMessage()))), OBJECT_MAPPER);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Reply route(Call call) throws IOException {
+        List<String> path = call.path;
+        String method = call.method;
+        if (path.isEmpty()) {
+            return ok(info());
+        }
+        String first = path.get(0);
+        String second = path.size() > 1 ? path.get(1) : null;
+        if (first.startsWith("_")) {
+            switch (first) {
+                case "_nodes":
+                    return ok(nodes());
+                case "_bulk":
+                    return ok(bulk(null, call));
+                case "_search":
+                    if ("scroll".equals(second)) {
+                        return "DELETE".equals(method) ? ok(clearScroll(call)) : scroll(call);
+                    }
+                    return "template".equals(second) ? searchTemplate(null, call) : ok(search(null, call, call.json()));
+                case "_msearch":
+                    return ok(msearch(null, call));
+                case "_mget":
+                    return ok(mget(null, call.json()));
+                case "_count":
+                    return ok(count(null, call));
+                case "_pit":
+                    return ok(closePit(call.json()));
+                case "_scripts":
+                    return script(method, second, call);
+                case "_aliases":
+                    return ok(updateAliases(call.json()));
+                case "_alias":
+                    return getAliases(null, second);
+                case "_refresh":
+                case "_flush":
+                case "_forcemerge":
+                    return ok(shardsResponse(null));
+                case "_settings":
+                    return ok(getSettings(null, second));
+                default:
+                    break;
+            }
+        } else if (second == null) {
+            switch (method) {
+                case "PUT":
+                    return ok(createIndex(first, call.json()));
+                case "HEAD":
+                case "GET":
+                    return getIndex(first);
+                case "DELETE":
+                    return ok(deleteIndex(first));
+                default:
+                    break;
+            }
+        } else {
+            String id = path.size() > 2 ? path.get(2) : null;
+            switch (second) {
+                case "_doc":
+                    if (id == null) {
+                        return indexDoc(first, UUID.randomUUID().toString().replace("-", ""), call, false);
+                    }
+                    if ("GET".equals(method) || "HEAD".equals(method)) {
+                        return getDoc(first, id, call.params.get("_source"), call.params.get("version"));
+                    }
+                    return "DELETE".equals(method) ? deleteDoc(first, id) : indexDoc(first, id, call, "create".equals(call.params.get("op_type")));
+                case "_create":
+                    return indexDoc(first, id, call, true);
+                case "_update":
+                    return updateDoc(first, id, call.json());
+                case "_bulk":
+                    return ok(bulk(first, call));
+                case "_search":
+                    return "template".equals(id) ? searchTemplate(first, call) : ok(search(first, call, call.json()));
+                case "_msearch":
+                    return ok(msearch(first, call));
+                case "_mget":
+                    return ok(mget(first, call.json()));
+                case "_count":
+                    return ok(count(first, call));
+                case "_pit":
+                    return ok(openPit(first, call));
+                case "_settings":
+                    return ok("PUT".equals(method) ? putSettings(first, call.json()) : getSettings(first, id));
+                case "_mapping":
+                    return ok("PUT".equals(method) ? putMapping(first, call.json()) : getMapping(first));
+                case "_alias":
+                case "_aliases":
+                    return getAliases(first, id);
+                case "_refresh":
+                case "_flush":
+                case "_forcemerge":
+                    return ok(shardsResponse(first));
+                default:
+                    break;
+            }
+        }
+        throw StandInException.badRequest("stand-in does not support endpoint: " + method + " /" + String.join("/", path));
+    }
+
+    // ---------------------------------------------------------------- 索引
+
+    private ObjectNode createIndex(String name, JsonNode body) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            if (indices.containsKey(name) || isAlias(name)) {
+                throw new StandInException(400, "resource_already_exists_exception", "index [" + name + "] already exists");
+            }
+            StandInIndex index = newIndex(name);
+            putSettings(index, body.path("settings"));
+            index.putMapping(body.get("mappings"));
+            body.path("aliases").fieldNames().forEachRemaining(alias -> index.getAliases().add(alias));
+            indices.put(name, index);
+        } finally {
+            writeLock.unlock();
+        }
+        return OBJECT_MAPPER.createObjectNode().put("acknowledged", true).put("shards_acknowledged", true).put("index", name);
+    }
+
+    private Reply getIndex(String expression) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            ObjectNode response = OBJECT_MAPPER.createObjectNode();
+            for (StandInIndex index : resolve(expression, false)) {
+                ObjectNode node = response.putObject(index.getName());
+                ObjectNode aliases = node.putObject("aliases");
+                index.getAliases().forEach(aliases::putObject);
+                ObjectNode mappings = node.putObject("mappings");
+                if (index.getProperties().size() > 0) {
+                    mappings.set("properties", index.getProperties().deepCopy());
+                }
+                node.set("settings", nestSettings(index.getSettings(), null));
+            }
+            return ok(response);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private ObjectNode deleteIndex(String expression) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            for (String name : expression.split(",")) {
+                if (!StandInPatterns.isWildcard(name) && !indices.containsKey(name) && isAlias(name)) {
+                    throw StandInException.badRequest("The provided expression [" + name
+                            + "] matches an alias, specify the corresponding concrete indices instead.");
+                }
+            }
+            for (StandInIndex index : resolve(expression, false)) {
+                indices.remove(index.getName());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return OBJECT_MAPPER.createObjectNode().put("acknowledged", true);
+    }
+
+    private ObjectNode getSettings(String expression, String names) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            ObjectNode response = OBJECT_MAPPER.createObjectNode();
+            for (StandInIndex index : resolve(expression, false)) {
+                response.putObject(index.getName()).set("settings", nestSettings(index.getSettings(), names));
+            }
+            return response;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private ObjectNode putSettings(String expression, JsonNode body) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            for (StandInIndex index : resolve(expression, false)) {
+                putSettings(index, body.has("settings") ? body.get("settings") : body);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return OBJECT_MAPPER.createObjectNode().put("acknowledged", true);
+    }
+
+    /**
+     * 嵌套或扁平的 settings 统一展开为 index.xxx 形式，null 表示恢复默认（删除）
+     */
+    private static void putSettings(StandInIndex index, JsonNode settings) {
+        Map<String, JsonNode> flat = new TreeMap<>();
+        flatten("", settings, flat);
+        for (Map.Entry<String, JsonNode> entry : flat.entrySet()) {
+            String key = entry.getKey().startsWith("index.") ? entry.getKey() : "index." + entry.getKey();
+            if (entry.getValue().isNull()) {
+                index.getSettings().remove(key);
+            } else {
+                index.getSettings().put(key, entry.getValue().asText());
+            }
+        }
+    }
+
+    private static void flatten(String prefix, JsonNode node, Map<String, JsonNode> flat) {
+        if (node == null || !node.isObject()) {
+            return;
+        }
+        node.fields().forEachRemaining(entry -> {
+            String key = prefix + entry.getKey();
+            if (entry.getValue().isObject()) {
+                flatten(key + ".", entry.getValue(), flat);
+            } else {
+                flat.put(key, entry.getValue());
+            }
+        });
+    }
+
+    private static ObjectNode nestSettings(Map<String, String> settings, String names) {
+        ObjectNode root = OBJECT_MAPPER.createObjectNode();
+        for (Map.Entry<String, String> entry : settings.entrySet()) {
+            if (names != null && !matchesAny(names, entry.getKey())) {
+                continue;
+            }
+            String[] parts = entry.getKey().split("\\.");
+            ObjectNode node = root;
+            for (int i = 0; i < parts.length - 1; i++) {
+                node = node.has(parts[i]) && node.get(parts[i]).isObject() ? (ObjectNode) node.get(parts[i]) : node.putObject(parts[i]);
+            }
+            node.put(parts[parts.length - 1], entry.getValue());
+        }
+        return root;
+    }
+
+    private ObjectNode getMapping(String expression) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            ObjectNode response = OBJECT_MAPPER.createObjectNode();
+            for (StandInIndex index : resolve(expression, false)) {
+                response.putObject(index.getName()).putObject("mappings").set("properties", index.getProperties().deepCopy());
+            }
+            return response;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private ObjectNode putMapping(String expression, JsonNode body) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            for (StandInIndex index : resolve(expression, false)) {
+                index.putMapping(body);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return OBJECT_MAPPER.createObjectNode().put("acknowledged", true);
+    }
+
+    private ObjectNode shardsResponse(String expression) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            int shards = resolve(expression, false).size();
+            ObjectNode response = OBJECT_MAPPER.createObjectNode();
+            response.putObject("_shards").put("total", shards).put("successful", shards).put("failed", 0);
+            return response;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // ---------------------------------------------------------------- 别名
+
+    private Reply getAliases(String expression, String names) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            ObjectNode response = OBJECT_MAPPER.createObjectNode();
+            Set<String> found = new LinkedHashSet<>();
+            for (StandInIndex index : resolve(expression, false)) {
+                ObjectNode aliases = OBJECT_MAPPER.createObjectNode();
+                for (String alias : index.getAliases()) {
+                    if (names == null || matchesAny(names, alias)) {
+                        aliases.putObject(alias);
+                        found.add(alias);
+                    }
+                }
+                if (aliases.size() > 0 || names == null) {
+                    response.putObject(index.getName()).set("aliases", aliases);
+                }
+            }
+            if (names != null) {
+                List<String> missing = new ArrayList<>();
+                for (String name : names.split(",")) {
+                    if (!StandInPatterns.isWildcard(name) && !found.contains(name)) {
+                        missing.add(name);
+                    }
+                }
+                if (!missing.isEmpty()) {
+                    response.put("error", (missing.size() == 1 ? "alias [" : "aliases [") + String.join(",", missing) + "] missing");
+                    response.put("status", 404);
+                    return new Reply(404, response);
+                }
+            }
+            return ok(response);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * 原子地执行 add / remove / remove_index，与 es 一样先处理 remove_index，以便用别名替换同名索引
+     */
+    private ObjectNode updateAliases(JsonNode body) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            List<JsonNode> actions = new ArrayList<>();
+            body.path("actions").forEach(actions::add);
+            Set<String> removedIndices = new LinkedHashSet<>();
+            for (JsonNode action : actions) {
+                if (action.has("remove_index")) {
+                    for (String name : names(action.get("remove_index"), "index", "indices")) {
+                        for (StandInIndex index : resolve(name, false)) {
+                            removedIndices.add(index.getName());
+                        }
+                    }
+                }
+            }
+            Map<String, StandInIndex> next = new TreeMap<>(indices);
+            removedIndices.forEach(next::remove);
+            // 先在副本上校验，全部通过后再生效
+            Map<String, Set<String>> aliases = new HashMap<>();
+            for (StandInIndex index : next.values()) {
+                aliases.put(index.getName(), new LinkedHashSet<>(index.getAliases()));
+            }
+            for (JsonNode action : actions) {
+                String type = action.fieldNames().next();
+                if ("remove_index".equals(type)) {
+                    continue;
+                }
+                JsonNode options = action.get(type);
+                List<String> targets = new ArrayList<>();
+                for (String name : names(options, "index", "indices")) {
+                    for (String indexName : next.keySet()) {
+                        if (name.equals(indexName) || StandInPatterns.isWildcard(name) && StandInPatterns.matches(name, indexName)) {
+                            targets.add(indexName);
+                        }
+                    }
+                    if (!StandInPatterns.isWildcard(name) && !next.containsKey(name)) {
+                        throw StandInException.indexNotFound(name);
+                    }
+                }
+                for (String alias : names(options, "alias", "aliases")) {
+                    if ("add".equals(type) && next.containsKey(alias)) {
+                        throw new StandInException(400, "invalid_alias_name_exception",
+                                "Invalid alias name [" + alias + "]: an index or data stream exists with the same name as the alias");
+                    }
+                    for (String target : targets) {
+                        if ("add".equals(type)) {
+                            aliases.get(target).add(alias);
+                        } else if ("remove".equals(type) && !aliases.get(target).remove(alias)) {
+                            throw new StandInException(404, "aliases_not_found_exception", "aliases [" + alias + "] missing");
+                        }
+                    }
+                }
+            }
+            removedIndices.forEach(indices::remove);
+            for (StandInIndex index : indices.values()) {
+                index.getAliases().clear();
+                index.getAliases().addAll(aliases.get(index.getName()));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return OBJECT_MAPPER.createObjectNode().put("acknowledged", true);
+    }
+
+    private static List<String> names(JsonNode options, String single, String multiple) {
+        List<String> names = new ArrayList<>();
+        if (options.has(single)) {
+            names.add(options.get(single).asText());
+        }
+        options.path(multiple).forEach(name -> names.add(name.asText()));
+        return names;
+    }
+
+    private boolean isAlias(String name) {
+        for (StandInIndex index : indices.values()) {
+            if (index.getAliases().contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ---------------------------------------------------------------- 文档
+
+    private Reply indexDoc(String indexName, String id, Call call, boolean create) {
+        JsonNode source = call.json();
+        if (!source.isObject()) {
+            throw new StandInException(400, "mapper_parsing_exception", "failed to parse, document is empty");
+        }
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            StandInIndex index = writeIndex(indexName);
+            Doc existing = index.get(id);
+            if (create && existing != null) {
+                throw versionConflict(id, "document already exists (current version [" + existing.version + "])");
+            }
+            String ifSeqNo = call.params.get("if_seq_no");
+            if (ifSeqNo != null && (existing == null || existing.seqNo != Long.parseLong(ifSeqNo))) {
+                throw versionConflict(id, "required seqNo [" + ifSeqNo + "], current document has seqNo ["
+                        + (existing == null ? -2 : existing.seqNo) + "]");
+            }
+            Doc doc = index.put(id, (ObjectNode) source);
+            return new Reply(existing == null ? 201 : 200, writeResult(doc, existing == null ? "created" : "updated"));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @param version 指定时与文档版本不一致返回 409，与 es 的内部版本校验一致
+     */
+    private Reply getDoc(String indexName, String id, String sourceParam, String version) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            StandInIndex index = readIndex(indexName);
+            Doc doc = index.get(id);
+            ObjectNode response = OBJECT_MAPPER.createObjectNode().put("_index", index.getName()).put("_type", "_doc").put("_id", id);
+            if (doc == null) {
+                return new Reply(404, response.put("found", false));
+            }
+            // 负数为 Versions.MATCH_ANY 等特殊值，不校验
+            if (version != null && Long.parseLong(version) >= 0 && Long.parseLong(version) != doc.version) {
+                throw versionConflict(id, "current version [" + doc.version + "] is different than the one provided [" + version + "]");
+            }
+            response.put("_version", doc.version).put("_seq_no", doc.seqNo).put("_primary_term", 1).put("found", true);
+            if (!"false".equals(sourceParam)) {
+                response.set("_source", doc.source);
+            }
+            return ok(response);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private Reply deleteDoc(String indexName, String id) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            StandInIndex index = readIndex(indexName);
+            Doc previous = index.delete(id);
+            if (previous == null) {
+                ObjectNode response = writeResult(index, id, 1, index.nextSeqNo(), "not_found");
+                return new Reply(404, response);
+            }
+            return ok(writeResult(index, id, previous.version + 1, index.nextSeqNo() - 1, "deleted"));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 部分更新：doc 与原文档深度合并，文档不存在时按 upsert / doc_as_upsert 创建，内容不变时返回 noop
+     */
+    private Reply updateDoc(String indexName, String id, JsonNode body) {
+        if (body.has("script")) {
+            throw StandInException.badRequest("stand-in does not support scripted updates");
+        }
+        JsonNode partial = body.get("doc");
+        boolean docAsUpsert = body.path("doc_as_upsert").asBoolean(false);
+        JsonNode upsert = body.get("upsert");
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            StandInIndex index = indices.containsKey(indexName) || isAlias(indexName) || docAsUpsert || upsert != null
+                    ? writeIndex(indexName) : readIndex(indexName);
+            Doc existing = index.get(id);
+            if (existing == null) {
+                JsonNode created = docAsUpsert ? partial : upsert;
+                if (created == null || !created.isObject()) {
+                    throw new StandInException(404, "document_missing_exception", "[_doc][" + id + "]: document missing");
+                }
+                return new Reply(201, writeResult(index.put(id, (ObjectNode) created.deepCopy()), "created"));
+            }
+            ObjectNode merged = existing.source.deepCopy();
+            if (partial != null) {
+                merge(merged, partial);
+            }
+            if (body.path("detect_noop").asBoolean(true) && merged.equals(existing.source)) {
+                return ok(writeResult(existing, "noop"));
+            }
+            return ok(writeResult(index.put(id, merged), "updated"));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static void merge(ObjectNode target, JsonNode partial) {
+        partial.fields().forEachRemaining(entry -> {
+            JsonNode current = target.get(entry.getKey());
+            if (current != null && current.isObject() && entry.getValue().isObject()) {
+                merge((ObjectNode) current, entry.getValue());
+            } else {
+                target.set(entry.getKey(), entry.getValue());
+            }
+        });
+    }
+
+    private ObjectNode bulk(String defaultIndex, Call call) throws IOException {
+        long start = System.nanoTime();
+        ArrayNode items = OBJECT_MAPPER.createArrayNode();
+        boolean errors = false;
+        Iterator<JsonNode> lines = call.lines().iterator();
+        while (lines.hasNext()) {
+            JsonNode action = lines.next();
+            String opType = action.fieldNames().next();
+            JsonNode meta = action.get(opType);
+            JsonNode source = "delete".equals(opType) || !lines.hasNext() ? null : lines.next();
+            String index = meta.path("_index").asText(defaultIndex);
+            String id = meta.has("_id") ? meta.get("_id").asText() : UUID.randomUUID().toString().replace("-", "");
+            Reply reply;
+            try {
+                switch (opType) {
+                    case "index":
+                    case "create":
+                        reply = indexDoc(index, id, new Call("PUT", source), "create".equals(opType));
+                        break;
+                    case "update":
+                        reply = updateDoc(index, id, source);
+                        break;
+                    case "delete":
+                        reply = deleteDoc(index, id);
+                        break;
+                    default:
+                        throw StandInException.badRequest("Malformed action/metadata line, expected one of [create, delete, index, update] but found [" + opType + "]");
+                }
+            } catch (StandInException e) {
+                ObjectNode failure = OBJECT_MAPPER.createObjectNode().put("_index", index).put("_type", "_doc").put("_id", id);
+                failure.putObject("error").put("type", e.getType()).put("reason", e.getMessage()).put("index", index);
+                reply = new Reply(e.getStatus(), failure);
+            }
+            ObjectNode item = (ObjectNode) reply.body;
+            item.put("status", reply.status);
+            errors |= item.has("error");
+            items.addObject().set(opType, item);
+        }
+        ObjectNode response = OBJECT_MAPPER.createObjectNode().put("took", elapsedMillis(start)).put("errors", errors);
+        response.set("items", items);
+        return response;
+    }
+
+    private ObjectNode mget(String defaultIndex, JsonNode body) {
+        ArrayNode docs = OBJECT_MAPPER.createArrayNode();
+        List<JsonNode> requests = new ArrayList<>();
+        body.path("docs").forEach(requests::add);
+        body.path("ids").forEach(id -> requests.add(OBJECT_MAPPER.createObjectNode().put("_id", id.asText())));
+        for (JsonNode request : requests) {
+            String index = request.path("_index").asText(defaultIndex);
+            String id = request.path("_id").asText();
+            try {
+                docs.add(getDoc(index, id, request.path("_source").isBoolean() ? request.get("_source").asText() : null,
+                        request.has("version") ? request.get("version").asText() : null).body);
+            } catch (StandInException e) {
+                ObjectNode failure = docs.addObject().put("_index", index).put("_type", "_doc").put("_id", id);
+                failure.set("error", error(e).get("error"));
+            }
+        }
+        ObjectNode response = OBJECT_MAPPER.createObjectNode();
+        response.set("docs", docs);
+        return response;
+    }
+
+    private static ObjectNode writeResult(Doc doc, String result) {
+        return writeResult(doc.index, doc.id, doc.version, doc.seqNo, result);
+    }
+
+    private static ObjectNode writeResult(StandInIndex index, String id, long version, long seqNo, String result) {
+        ObjectNode response = OBJECT_MAPPER.createObjectNode()
+                .put("_index", index.getName()).put("_type", "_doc").put("_id", id)
+                .put("_version", version).put("result", result);
+        response.putObject("_shards").put("total", 2).put("successful", 1).put("failed", 0);
+        response.put("_seq_no", seqNo).put("_primary_term", 1);
+        return response;
+    }
+
+    private static StandInException versionConflict(String id, String reason) {
+        return new StandInException(409, "version_conflict_engine_exception", "[" + id + "]: version conflict, " + reason);
+    }
+
+    // ---------------------------------------------------------------- 搜索
+
+    private ObjectNode search(String expression, Call call, JsonNode body) {
+        long start = System.nanoTime();
+        boolean typedKeys = call.params.containsKey("typed_keys");
+        StandInSearch search = new StandInSearch(body, typedKeys);
+        JsonNode pit = body.get("pit");
+        List<Doc> candidates;
+        int shards;
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            if (pit != null) {
+                PitContext context = pits.get(pit.path("id").asText());
+                if (context == null) {
+                    throw new StandInException(404, "search_context_missing_exception", "No search context found for id [" + pit.path("id").asText() + "]");
+                }
+                context.touch(pit.path("keep_alive").asText(null));
+                candidates = context.docs;
+                shards = context.shards;
+            } else {
+                List<StandInIndex> targets = resolve(expression, "true".equals(call.params.get("ignore_unavailable")));
+                candidates = new ArrayList<>();
+                for (StandInIndex index : targets) {
+                    candidates.addAll(index.snapshot());
+                }
+                shards = targets.size();
+            }
+            List<Hit> hits = search.execute(candidates);
+            String scroll = call.params.get("scroll");
+            List<Hit> page = scroll != null ? hits.subList(0, Math.min(hits.size(), search.getSize())) : search.page(hits);
+            ObjectNode response = search.response(hits, page, elapsedMillis(start), shards);
+            if (scroll != null) {
+                String scrollId = newContextId();
+                scrolls.put(scrollId, new ScrollContext(search, hits, page.size(), shards, scroll));
+                response.put("_scroll_id", scrollId);
+            }
+            if (pit != null) {
+                response.put("pit_id", pit.path("id").asText());
+            }
+            return response;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private ObjectNode count(String expression, Call call) {
+        JsonNode body = call.json();
+        StandInQuery query = StandInQuery.parse(body.get("query"));
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            List<StandInIndex> targets = resolve(expression, "true".equals(call.params.get("ignore_unavailable")));
+            long count = 0;
+            for (StandInIndex index : targets) {
+                for (Doc doc : index.snapshot()) {
+                    if (query.score(doc) != StandInQuery.NO_MATCH) {
+                        count++;
+                    }
+                }
+            }
+            ObjectNode response = OBJECT_MAPPER.createObjectNode().put("count", count);
+            response.putObject("_shards").put("total", targets.size()).put("successful", targets.size()).put("skipped", 0).put("failed", 0);
+            return response;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private ObjectNode msearch(String defaultIndex, Call call) throws IOException {
+        long start = System.nanoTime();
+        ArrayNode responses = OBJECT_MAPPER.createArrayNode();
+        Iterator<JsonNode> lines = call.lines().iterator();
+        while (lines.hasNext()) {
+            JsonNode headerNode = lines.next();
+            JsonNode body = lines.hasNext() ? lines.next() : OBJECT_MAPPER.createObjectNode();
+            JsonNode indexNode = headerNode.get("index");
+            String expression = indexNode == null ? defaultIndex : indexNode.isArray() ? join(indexNode) : indexNode.asText();
+            try {
+                responses.add(search(expression, call, body).put("status", 200));
+            } catch (StandInException e) {
+                responses.add(error(e));
+            }
+        }
+        ObjectNode response = OBJECT_MAPPER.createObjectNode().put("took", elapsedMillis(start));
+        response.set("responses", responses);
+        return response;
+    }
+
+    private Reply scroll(Call call) {
+        JsonNode body = call.json();
+        String scrollId = body.has("scroll_id") ? body.get("scroll_id").asText() : call.params.get("scroll_id");
+        ScrollContext context = scrollId == null ? null : scrolls.get(scrollId);
+        if (context == null || context.expired()) {
+            scrolls.remove(String.valueOf(scrollId));
+            throw new StandInException(404, "search_context_missing_exception", "No search context found for id [" + scrollId + "]");
+        }
+        long start = System.nanoTime();
+        context.touch(body.has("scroll") ? body.get("scroll").asText() : call.params.get("scroll"));
+        List<Hit> page;
+        synchronized (context) {
+            int from = context.position;
+            int to = Math.min(context.hits.size(), from + context.search.getSize());
+            page = context.hits.subList(from, to);
+            context.position = to;
+        }
+        ObjectNode response = OBJECT_MAPPER.createObjectNode().put("_scroll_id", scrollId)
+                .put("took", elapsedMillis(start)).put("timed_out", false);
+        response.putObject("_shards").put("total", context.shards).put("successful", context.shards).put("skipped", 0).put("failed", 0);
+        response.set("hits", context.search.renderHits(context.hits.size(), page));
+        return ok(response);
+    }
+
+    private ObjectNode clearScroll(Call call) {
+        JsonNode ids = call.json().path("scroll_id");
+        int freed = 0;
+        if ("_all".equals(call.params.get("scroll_id"))) {
+            freed = scrolls.size();
+            scrolls.clear();
+        }
+        for (JsonNode id : ids.isArray() ? ids : OBJECT_MAPPER.createArrayNode().add(ids)) {
+            if (scrolls.remove(id.asText()) != null) {
+                freed++;
+            }
+        }
+        return OBJECT_MAPPER.createObjectNode().put("succeeded", true).put("num_freed", freed);
+    }
+
+    private ObjectNode openPit(String expression, Call call) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            List<StandInIndex> targets = resolve(expression, false);
+            List<Doc> docs = new ArrayList<>();
+            for (StandInIndex index : targets) {
+                docs.addAll(index.snapshot());
+            }
+            String id = newContextId();
+            pits.put(id, new PitContext(docs, targets.size(), call.params.getOrDefault("keep_alive", "1m")));
+            return OBJECT_MAPPER.createObjectNode().put("id", id);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private ObjectNode closePit(JsonNode body) {
+        boolean freed = pits.remove(body.path("id").asText()) != null;
+        return OBJECT_MAPPER.createObjectNode().put("succeeded", true).put("num_freed", freed ? 1 : 0);
+    }
+
+    /**
+     * 清理过期的 scroll / PIT，并生成新的上下文 id
+     */
+    private String newContextId() {
+        scrolls.values().removeIf(ScrollContext::expired);
+        pits.values().removeIf(PitContext::expired);
+        return UUID.randomUUID().toString();
+    }
+
+    // ---------------------------------------------------------------- 查询模板
+
+    private Reply script(String method, String id, Call call) {
+        if (id == null) {
+            throw StandInException.badRequest("script id is required");
+        }
+        switch (method) {
+            case "PUT":
+            case "POST":
+                JsonNode source = call.json().path("script").path("source");
+                scripts.put(id, source.isTextual() ? source.asText() : source.toString());
+                return ok(OBJECT_MAPPER.createObjectNode().put("acknowledged", true));
+            case "DELETE":
+                if (scripts.remove(id) == null) {
+                    throw new StandInException(404, "resource_not_found_exception", "stored script [" + id + "] does not exist");
+                }
+                return ok(OBJECT_MAPPER.createObjectNode().put("acknowledged", true));
+            default:
+                String script = scripts.get(id);
+                ObjectNode response = OBJECT_MAPPER.createObjectNode().put("_id", id).put("found", script != null);
+                if (script != null) {
+                    response.putObject("script").put("lang", "mustache").put("source", script);
+                }
+                return new Reply(script != null ? 200 : 404, response);
+        }
+    }
+
+    private Reply searchTemplate(String expression, Call call) throws IOException {
+        JsonNode body = call.json();
+        String template;
+        if (body.has("id")) {
+            template = scripts.get(body.get("id").asText());
+            if (template == null) {
+                throw new StandInException(404, "resource_not_found_exception", "unable to find script [" + body.get("id").asText() + "]");
+            }
+        } else {
+            JsonNode source = body.path("source");
+            template = source.isTextual() ? source.asText() : source.toString();
+        }
+        String rendered = renderMustache(template, body.path("params"));
+        return ok(search(expression, call, OBJECT_MAPPER.readTree(rendered)));
+    }
+
+    /**
+     * mustache 的 JSON 渲染：字符串转义后替换（模板中已有引号），数字、布尔原样替换，{{#toJson}} 输出 JSON
+     */
+    static String renderMustache(String template, JsonNode params) {
+        Matcher toJson = MUSTACHE_TO_JSON.matcher(template);
+        StringBuffer out = new StringBuffer();
+        while (toJson.find()) {
+            toJson.appendReplacement(out, Matcher.quoteReplacement(param(params, toJson.group(1).trim()).toString()));
+        }
+        toJson.appendTail(out);
+
+        Matcher variable = MUSTACHE_VARIABLE.matcher(out.toString());
+        StringBuffer rendered = new StringBuffer();
+        while (variable.find()) {
+            JsonNode value = param(params, variable.group(2));
+            String text;
+            if (value.isMissingNode() || value.isNull()) {
+                text = "";
+            } else if (value.isTextual()) {
+                String json = value.toString();
+                // 三个括号不转义
+                text = variable.group(1).isEmpty() ? json.substring(1, json.length() - 1) : value.asText();
+            } else {
+                text = value.isContainerNode() ? value.toString() : value.asText();
+            }
+            variable.appendReplacement(rendered, Matcher.quoteReplacement(text));
+        }
+        variable.appendTail(rendered);
+        return rendered.toString();
+    }
+
+    private static JsonNode param(JsonNode params, String name) {
+        JsonNode value = params;
+        for (String part : name.split("\\.")) {
+            value = value.path(part);
+        }
+        return value;
+    }
+
+    // ---------------------------------------------------------------- 集群
+
+    private ObjectNode info() {
+        ObjectNode response = OBJECT_MAPPER.createObjectNode()
+                .put("name", "stand-in-" + server.getAddress().getPort())
+                .put("cluster_name", "es-stand-in")
+                .put("tagline", "You Know, for Search");
+        response.putObject("version").put("number", "7.12.1");
+        return response;
+    }
+
+    private ObjectNode nodes() {
+        HttpHost[] hosts = clusterNodes == null ? new HttpHost[]{getHttpHost()} : clusterNodes;
+        ObjectNode response = OBJECT_MAPPER.createObjectNode().put("cluster_name", "es-stand-in");
+        response.putObject("_nodes").put("total", hosts.length).put("successful", hosts.length).put("failed", 0);
+        ObjectNode nodes = response.putObject("nodes");
+        for (int i = 0; i < hosts.length; i++) {
+            nodes.putObject("stand-in-node-" + i)
+                    .put("name", "stand-in-node-" + i)
+                    .putObject("http").put("publish_address", hosts[i].getHostName() + "/127.0.0.1:" + hosts[i].getPort());
+        }
+        return response;
+    }
+
+    // ---------------------------------------------------------------- 索引名解析
+
+    /**
+     * 解析逗号分隔的索引名、通配符和别名，null / _all 表示全部索引。调用方需持有锁。
+     *
+     * @param ignoreUnavailable 为 true 时跳过不存在的索引，否则抛出 index_not_found_exception
+     */
+    private List<StandInIndex> resolve(String expression, boolean ignoreUnavailable) {
+        Set<StandInIndex> resolved = new LinkedHashSet<>();
+        if (expression == null || expression.isEmpty() || "_all".equals(expression)) {
+            return new ArrayList<>(indices.values());
+        }
+        for (String name : expression.split(",")) {
+            if (StandInPatterns.isWildcard(name)) {
+                for (StandInIndex index : indices.values()) {
+                    if (StandInPatterns.matches(name, index.getName())) {
+                        resolved.add(index);
+                    }
+                }
+                continue;
+            }
+            StandInIndex index = indices.get(name);
+            if (index != null) {
+                resolved.add(index);
+                continue;
+            }
+            boolean alias = false;
+            for (StandInIndex candidate : indices.values()) {
+                if (candidate.getAliases().contains(name)) {
+                    resolved.add(candidate);
+                    alias = true;
+                }
+            }
+            if (!alias && !ignoreUnavailable) {
+                throw StandInException.indexNotFound(name);
+            }
+        }
+        return new ArrayList<>(resolved);
+    }
+
+    private StandInIndex readIndex(String name) {
+        List<StandInIndex> resolved = resolve(name, false);
+        if (resolved.size() != 1) {
+            throw StandInException.badRequest("[" + name + "] resolves to " + resolved.size() + " indices, expected exactly one");
+        }
+        return resolved.get(0);
+    }
+
+    /**
+     * 写入的目标索引，不存在时自动创建。调用方需持有写锁。
+     */
+    private StandInIndex writeIndex(String name) {
+        StandInIndex index = indices.get(name);
+        if (index != null) {
+            return index;
+        }
+        if (isAlias(name)) {
+            return readIndex(name);
+        }
+        if (name == null || name.isEmpty() || name.startsWith("_") || !name.equals(name.toLowerCase())) {
+            throw new StandInException(400, "invalid_index_name_exception", "Invalid index name [" + name + "]");
+        }
+        index = newIndex(name);
+        indices.put(name, index);
+        return index;
+    }
+
+    private static StandInIndex newIndex(String name) {
+        return new StandInIndex(name);
+    }
+
+    private static boolean matchesAny(String patterns, String value) {
+        for (String pattern : patterns.split(",")) {
+            if (pattern.equals(value) || "_all".equals(pattern) || StandInPatterns.matches(pattern, value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ---------------------------------------------------------------- HTTP
+
+    private static ObjectNode error(StandInException e) {
+        ObjectNode response = OBJECT_MAPPER.createObjectNode();
+        ObjectNode error = response.putObject("error");
+        error.putArray("root_cause").addObject().put("type", e.getType()).put("reason", e.getMessage());
+        error.put("type", e.getType()).put("reason", e.getMessage());
+        response.put("status", e.getStatus());
+        return response;
+    }
+
+    private static ObjectNode userSource(long id) {
+        return OBJECT_MAPPER.createObjectNode()
+                .put("id", id)
+                .put("name", NAMES[(int) (id % NAMES.length)])
+                .put("age", 18 + id % 50)
+                .put("sex", id % 3 == 0 ? "女" : "男");
+    }
+
+    private static String join(JsonNode array) {
+        List<String> names = new ArrayList<>();
+        array.forEach(name -> names.add(name.asText()));
+        return String.join(",", names);
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private static Reply ok(JsonNode body) {
+        return new Reply(200, body);
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 按 Content-Type / Accept 的媒体类型选择编解码器，未指定或不认识时返回 null
+     */
+    private static ObjectMapper mapper(String mediaType) {
+        if (mediaType == null) {
+            return null;
+        }
+        if (mediaType.startsWith("application/smile")) {
+            return SMILE_MAPPER;
+        }
+        if (mediaType.startsWith("application/cbor")) {
+            return CBOR_MAPPER;
+        }
+        return mediaType.startsWith("application/json") || mediaType.startsWith("application/x-ndjson") ? OBJECT_MAPPER : null;
+    }
+
+    private static void send(HttpExchange exchange, int status, JsonNode body, ObjectMapper mapper) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", mapper == SMILE_MAPPER ? "application/smile"
+                : mapper == CBOR_MAPPER ? "application/cbor" : "application/json; charset=UTF-8");
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = mapper.writeValueAsBytes(body);
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            // 与 es 的 http.compression 一样，客户端接受时压缩响应
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(bytes);
+            }
+            bytes = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            // es 的压缩响应使用分块传输，不带 Content-Length
+            exchange.sendResponseHeaders(status, 0);
+        } else {
+            exchange.sendResponseHeaders(status, bytes.length);
+        }
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * 启动独立的替身服务供基准测试或手工调试连接：参数依次为 端口(默认 9200) 写入 user_test 的用户数(默认 100)
+     */
+    public static void main(String[] args) throws Exception {
+        // 独立进程中只有替身一个 HttpServer，在创建前设置
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 9200;
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        EsStandInServer server = new EsStandInServer(port).start().seedUsers("user_test", users);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        log.info("es stand-in server seeded {} users into user_test, press Ctrl+C to stop", users);
+        Thread.currentThread().join();
+    }
+
+    private static final class Reply {
+        final int status;
+        final JsonNode body;
+
+        Reply(int status, JsonNode body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    /**
+     * 一次 HTTP 请求：方法、解码后的路径段、查询参数和请求体
+     */
+    private static final class Call {
+        final String method;
+        final List<String> path = new ArrayList<>();
+        final Map<String, String> params = new HashMap<>();
+        final byte[] body;
+        private final ObjectMapper mapper;
+        private JsonNode json;
+
+        Call(String method, String rawPath, String rawQuery, byte[] body, ObjectMapper mapper) {
+            this.method = method;
+            this.body = body;
+            this.mapper = mapper;
+            for (String segment : rawPath.split("/")) {
+                if (!segment.isEmpty()) {
+                    path.add(decode(segment));
+                }
+            }
+            if (rawQuery != null) {
+                for (String pair : rawQuery.split("&")) {
+                    int eq = pair.indexOf('=');
+                    params.put(decode(eq < 0 ? pair : pair.substring(0, eq)), eq < 0 ? "" : decode(pair.substring(eq + 1)));
+                }
+            }
+        }
+
+        /**
+         * bulk 条目：请求体已解析
+         */
+        Call(String method, JsonNode json) {
+            this.method = method;
+            this.body = new byte[0];
+            this.mapper = OBJECT_MAPPER;
+            this.json = json;
+        }
+
+        JsonNode json() {
+            if (json == null) {
+                try {
+                    json = body.length == 0 ? OBJECT_MAPPER.createObjectNode() : mapper.readTree(body);
+                } catch (IOException e) {
+                    throw new StandInException(400, "parse_exception", "request body is not valid JSON: " + e.getMessage());
+                }
+            }
+            return json;
+        }
+
+        /**
+         * _bulk / _msearch 的请求体：JSON 按换行分隔，SMILE 按 0xFF 分隔，跳过空行
+         */
+        List<JsonNode> lines() {
+            byte separator = mapper == SMILE_MAPPER ? SMILE_SEPARATOR : (byte) '\n';
+            List<JsonNode> lines = new ArrayList<>();
+            int from = 0;
+            while (from < body.length) {
+                int to = from;
+                while (to < body.length && body[to] != separator) {
+                    to++;
+                }
+                if (to > from) {
+                    try {
+                        JsonNode line = mapper.readTree(body, from, to - from);
+                        if (line != null && !line.isMissingNode()) {
+                            lines.add(line);
+                        }
+                    } catch (IOException e) {
+                        throw new StandInException(400, "parse_exception", "malformed bulk line: " + e.getMessage());
+                    }
+                }
+                from = to + 1;
+            }
+            return lines;
+        }
+
+        private static String decode(String value) {
+            try {
+                return URLDecoder.decode(value.replace("+", "%2B"), "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private abstract static class Context {
+        private volatile long keepAliveMillis;
+        private volatile long expiresAt;
+
+        Context(String keepAlive) {
+            touch(keepAlive);
+        }
+
+        void touch(String keepAlive) {
+            if (keepAlive != null) {
+                keepAliveMillis = TimeValue.parseTimeValue(keepAlive, "keep_alive").millis();
+            }
+            expiresAt = System.currentTimeMillis() + keepAliveMillis;
+        }
+
+        boolean expired() {
+            return System.currentTimeMillis() > expiresAt;
+        }
+    }
+
+    private static final class ScrollContext extends Context {
+        final StandInSearch search;
+        final List<Hit> hits;
+        final int shards;
+        int position;
+
+        ScrollContext(StandInSearch search, List<Hit> hits, int position, int shards, String keepAlive) {
+            super(keepAlive);
+            this.search = search;
+            this.hits = hits;
+            this.position = position;
+            this.shards = shards;
+        }
+    }
+
+    /**
+     * point-in-time：打开时的文档快照，之后的写入不可见
+     */
+    private static final class PitContext extends Context {
+        final List<Doc> docs;
+        final int shards;
+
+        PitContext(List<Doc> docs, int shards, String keepAlive) {
+            super(keepAlive);
+            this.docs = Collections.unmodifiableList(docs);
+            this.shards = shards;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.lnjecit.elasticsearch.standin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lnjecit.elasticsearch.standin.StandInQuery.FieldKind;
+import com.lnjecit.elasticsearch.standin.StandInSearch.Hit;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 替身支持的聚合：max、min、sum、avg、value_count、cardinality、terms（可嵌套子聚合）和 top_hits。
+ * <p>
+ * 请求带 typed_keys 参数时，响应中的聚合名带类型前缀（如 {@code lterms#age_group}），RestHighLevelClient 依此选择解析器。
+ */
+class StandInAggregations {
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    private final Map<String, Aggregation> aggregations = new LinkedHashMap<>();
+    private final boolean typedKeys;
+
+    StandInAggregations(JsonNode aggs, boolean typedKeys) {
+        this.typedKeys = typedKeys;
+        aggs.fields().forEachRemaining(entry -> aggregations.put(entry.getKey(), parse(entry.getKey(), entry.getValue())));
+    }
+
+    ObjectNode render(List<Hit> hits) {
+        ObjectNode result = NODES.objectNode();
+        for (Map.Entry<String, Aggregation> entry : aggregations.entrySet()) {
+            Aggregation aggregation = entry.getValue();
+            ObjectNode rendered = aggregation.render(hits);
+            String name = typedKeys ? aggregation.typedName(hits) + "#" + entry.getKey() : entry.getKey();
+            result.set(name, rendered);
+        }
+        return result;
+    }
+
+    private Aggregation parse(String name, JsonNode definition) {
+        StandInAggregations subAggregations = null;
+        JsonNode subs = definition.has("aggs") ? definition.get("aggs") : definition.get("aggregations");
+        if (subs != null) {
+            subAggregations = new StandInAggregations(subs, typedKeys);
+        }
+        for (Map.Entry<String, JsonNode> entry : (Iterable<Map.Entry<String, JsonNode>>) definition::fields) {
+            String type = entry.getKey();
+            JsonNode body = entry.getValue();
+            switch (type) {
+                case "aggs":
+                case "aggregations":
+                case "meta":
+                    continue;
+                case "max":
+                case "min":
+                case "sum":
+                case "avg":
+                case "value_count":
+                case "cardinality":
+                    return new Metric(type, body.path("field").asText());
+                case "terms":
+                    return new Terms(body, subAggregations);
+                case "top_hits":
+                    return new TopHits(StandInSearch.topHits(body));
+                default:
+                    throw StandInQuery.parsingException("stand-in does not support aggregation [" + type + "] in [" + name + "]");
+            }
+        }
+        throw StandInQuery.parsingException("missing aggregation type in [" + name + "]");
+    }
+
+    private interface Aggregation {
+        String typedName(List<Hit> hits);
+
+        ObjectNode render(List<Hit> hits);
+    }
+
+    private static final class Metric implements Aggregation {
+        private final String type;
+        private final String field;
+
+        Metric(String type, String field) {
+            this.type = type;
+            this.field = field;
+        }
+
+        @Override
+        public String typedName(List<Hit> hits) {
+            return type;
+        }
+
+        @Override
+        public ObjectNode render(List<Hit> hits) {
+            double max = Double.NEGATIVE_INFINITY;
+            double min = Double.POSITIVE_INFINITY;
+            double sum = 0;
+            long count = 0;
+            Set<String> distinct = new HashSet<>();
+            for (Hit hit : hits) {
+                for (JsonNode value : hit.doc.values(field)) {
+                    double number = value.asDouble();
+                    max = Math.max(max, number);
+                    min = Math.min(min, number);
+                    sum += number;
+                    count++;
+                    distinct.add(value.asText());
+                }
+            }
+            ObjectNode result = NODES.objectNode();
+            switch (type) {
+                case "max":
+                    return count == 0 ? result.putNull("value") : result.put("value", max);
+                case "min":
+                    return count == 0 ? result.putNull("value") : result.put("value", min);
+                case "avg":
+                    return count == 0 ? result.putNull("value") : result.put("value", sum / count);
+                case "sum":
+                    return result.put("value", sum);
+                case "value_count":
+                    return result.put("value", count);
+                default:
+                    return result.put("value", distinct.size());
+            }
+        }
+    }
+
+    private static final class Terms implements Aggregation {
+        private final String field;
+        private final int size;
+        private final long minDocCount;
+        private final List<String[]> order = new ArrayList<>();
+        private final StandInAggregations subAggregations;
+
+        Terms(JsonNode body, StandInAggregations subAggregations) {
+            this.field = body.path("field").asText();
+            this.size = body.path("size").asInt(10);
+            this.minDocCount = body.path("min_doc_count").asLong(1);
+            JsonNode orderNode = body.get("order");
+            if (orderNode != null) {
+                for (JsonNode element : orderNode.isArray() ? orderNode : NODES.arrayNode().add(orderNode)) {
+                    element.fields().forEachRemaining(entry -> order.add(new String[]{entry.getKey(), entry.getValue().asText()}));
+                }
+            }
+            if (order.isEmpty()) {
+                order.add(new String[]{"_count", "desc"});
+            }
+            this.subAggregations = subAggregations;
+        }
+
+        @Override
+        public String typedName(List<Hit> hits) {
+            JsonNode mapping = hits.isEmpty() ? null : hits.get(0).doc.index.fieldMapping(field);
+            String type = mapping == null ? "keyword" : mapping.path("type").asText();
+            switch (type) {
+                case "long":
+                case "integer":
+                case "short":
+                case "byte":
+                    return "lterms";
+                case "double":
+                case "float":
+                case "half_float":
+                case "scaled_float":
+                    return "dterms";
+                default:
+                    return "sterms";
+            }
+        }
+
+        @Override
+        public ObjectNode render(List<Hit> hits) {
+            String typedName = typedName(hits);
+            Map<String, List<Hit>> buckets = new LinkedHashMap<>();
+            Map<String, JsonNode> keys = new LinkedHashMap<>();
+            for (Hit hit : hits) {
+                Set<String> seen = new HashSet<>();
+                for (JsonNode value : hit.doc.values(field)) {
+                    JsonNode key = key(typedName, value, StandInQuery.kind(hit.doc, field));
+                    String keyText = key.asText();
+                    if (seen.add(keyText)) {
+                        buckets.computeIfAbsent(keyText, k -> new ArrayList<>()).add(hit);
+                        keys.putIfAbsent(keyText, key);
+                    }
+                }
+            }
+            List<String> sorted = new ArrayList<>(buckets.keySet());
+            sorted.removeIf(key -> buckets.get(key).size() < minDocCount);
+            Comparator<String> comparator = null;
+            for (String[] criterion : order) {
+                Comparator<String> next = "_key".equals(criterion[0])
+                        ? (a, b) -> compareKeys(keys.get(a), keys.get(b))
+                        : Comparator.comparingInt(key -> buckets.get(key).size());
+                if ("desc".equalsIgnoreCase(criterion[1])) {
+                    next = next.reversed();
+                }
+                comparator = comparator == null ? next : comparator.thenComparing(next);
+            }
+            // 相同计数时按 key 升序，与 es 一致
+            sorted.sort(comparator.thenComparing((a, b) -> compareKeys(keys.get(a), keys.get(b))));
+
+            long otherDocCount = 0;
+            ArrayNode bucketArray = NODES.arrayNode();
+            for (int i = 0; i < sorted.size(); i++) {
+                List<Hit> bucketHits = buckets.get(sorted.get(i));
+                if (i >= size) {
+                    otherDocCount += bucketHits.size();
+                    continue;
+                }
+                ObjectNode bucket = bucketArray.addObject();
+                bucket.set("key", keys.get(sorted.get(i)));
+                bucket.put("doc_count", bucketHits.size());
+                if (subAggregations != null) {
+                    bucket.setAll(subAggregations.render(bucketHits));
+                }
+            }
+            ObjectNode result = NODES.objectNode()
+                    .put("doc_count_error_upper_bound", 0)
+                    .put("sum_other_doc_count", otherDocCount);
+            result.set("buckets", bucketArray);
+            return result;
+        }
+
+        private static JsonNode key(String typedName, JsonNode value, FieldKind kind) {
+            if ("lterms".equals(typedName)) {
+                return NODES.numberNode(value.asLong());
+            }
+            if ("dterms".equals(typedName)) {
+                return NODES.numberNode(value.asDouble());
+            }
+            return NODES.textNode(kind == FieldKind.BOOLEAN ? String.valueOf(value.asBoolean()) : value.asText());
+        }
+
+        private static int compareKeys(JsonNode a, JsonNode b) {
+            if (a.isNumber() && b.isNumber()) {
+                return Double.compare(a.asDouble(), b.asDouble());
+            }
+            return a.asText().compareTo(b.asText());
+        }
+    }
+
+    private static final class TopHits implements Aggregation {
+        private final StandInSearch search;
+
+        TopHits(StandInSearch search) {
+            this.search = search;
+        }
+
+        @Override
+        public String typedName(List<Hit> hits) {
+            return "top_hits";
+        }
+
+        @Override
+        public ObjectNode render(List<Hit> hits) {
+            // 复制命中，排序值不影响外层搜索
+            List<Hit> copies = new ArrayList<>(hits.size());
+            for (Hit hit : hits) {
+                copies.add(new Hit(hit.doc, hit.score));
+            }
+            List<Hit> sorted = search.sort(copies);
+            ObjectNode result = NODES.objectNode();
+            result.set("hits", search.renderHits(sorted.size(), search.page(sorted)));
+            return result;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.lnjecit.elasticsearch.standin;
+
+/**
+ * 替身返回给客户端的错误，按 es 的错误格式渲染为 {"error":{"type","reason"},"status"}
+ */
+class StandInException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+    private final String type;
+
+    StandInException(int status, String type, String reason) {
+        super(reason);
+        this.status = status;
+        this.type = type;
+    }
+
+    static StandInException badRequest(String reason) {
+        return new StandInException(400, "illegal_argument_exception", reason);
+    }
+
+    static StandInException indexNotFound(String index) {
+        return new StandInException(404, "index_not_found_exception", "no such index [" + index + "]");
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    String getType() {
+        return type;
+    }
+}
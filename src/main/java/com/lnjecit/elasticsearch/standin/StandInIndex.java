@@ -0,0 +1,274 @@
+package com.lnjecit.elasticsearch.standin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * 替身中的一个索引：按写入顺序保存文档，维护 mapping、settings 和别名。
+ * <p>
+ * 未映射的字段按 es 的动态 mapping 规则推断：字符串为 text + keyword 子字段，整数为 long，小数为 float。
+ * 线程安全由 {@link EsStandInServer} 的读写锁保证。
+ */
+class StandInIndex {
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    private final String name;
+    private final Map<String, Doc> docs = new LinkedHashMap<>();
+    private final ObjectNode properties = NODES.objectNode();
+    private final Map<String, String> settings = new TreeMap<>();
+    private final Set<String> aliases = new TreeSet<>();
+    private long seqNo;
+    private long docOrder;
+
+    StandInIndex(String name) {
+        this.name = name;
+        settings.put("index.number_of_shards", "1");
+        settings.put("index.number_of_replicas", "1");
+        settings.put("index.uuid", UUID.randomUUID().toString());
+        settings.put("index.provided_name", name);
+        settings.put("index.creation_date", String.valueOf(System.currentTimeMillis()));
+        settings.put("index.version.created", "7120199");
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Set<String> getAliases() {
+        return aliases;
+    }
+
+    Map<String, String> getSettings() {
+        return settings;
+    }
+
+    ObjectNode getProperties() {
+        return properties;
+    }
+
+    int size() {
+        return docs.size();
+    }
+
+    Doc get(String id) {
+        return docs.get(id);
+    }
+
+    /**
+     * 当前文档的快照，之后的写入不影响已返回的列表
+     */
+    List<Doc> snapshot() {
+        return new ArrayList<>(docs.values());
+    }
+
+    /**
+     * 写入文档，返回新版本
+     */
+    Doc put(String id, ObjectNode source) {
+        mapDynamic(properties, source);
+        Doc previous = docs.get(id);
+        Doc doc = new Doc(this, id, source, previous == null ? 1 : previous.version + 1, seqNo++,
+                previous == null ? docOrder++ : previous.order);
+        docs.put(id, doc);
+        return doc;
+    }
+
+    Doc delete(String id) {
+        Doc previous = docs.remove(id);
+        if (previous != null) {
+            seqNo++;
+        }
+        return previous;
+    }
+
+    long nextSeqNo() {
+        return seqNo;
+    }
+
+    /**
+     * 合并显式 mapping，兼容带 _doc 类型的写法
+     */
+    void putMapping(JsonNode mapping) {
+        if (mapping == null || !mapping.isObject()) {
+            return;
+        }
+        JsonNode typed = mapping.get("_doc");
+        JsonNode props = (typed != null ? typed : mapping).get("properties");
+        if (props != null && props.isObject()) {
+            properties.setAll((ObjectNode) props);
+        }
+    }
+
+    /**
+     * 字段的 mapping，支持对象路径 a.b 和多字段 name.keyword，未映射时返回 null
+     */
+    JsonNode fieldMapping(String field) {
+        return fieldMapping(properties, field);
+    }
+
+    /**
+     * 字段对应的 _source 路径：多字段 name.keyword 取父字段 name 的值
+     */
+    String sourcePath(String field) {
+        return sourcePath(properties, field, "");
+    }
+
+    private static JsonNode fieldMapping(ObjectNode properties, String field) {
+        JsonNode direct = properties.get(field);
+        if (direct != null) {
+            return direct;
+        }
+        int dot = field.indexOf('.');
+        while (dot > 0) {
+            JsonNode parent = properties.get(field.substring(0, dot));
+            String rest = field.substring(dot + 1);
+            if (parent != null) {
+                JsonNode nested = parent.path("properties");
+                if (nested.isObject()) {
+                    JsonNode mapping = fieldMapping((ObjectNode) nested, rest);
+                    if (mapping != null) {
+                        return mapping;
+                    }
+                }
+                JsonNode subField = parent.path("fields").get(rest);
+                if (subField != null) {
+                    return subField;
+                }
+            }
+            dot = field.indexOf('.', dot + 1);
+        }
+        return null;
+    }
+
+    private static String sourcePath(ObjectNode properties, String field, String prefix) {
+        if (properties.has(field)) {
+            return prefix + field;
+        }
+        int dot = field.indexOf('.');
+        while (dot > 0) {
+            String head = field.substring(0, dot);
+            JsonNode parent = properties.get(head);
+            String rest = field.substring(dot + 1);
+            if (parent != null) {
+                JsonNode nested = parent.path("properties");
+                if (nested.isObject()) {
+                    return sourcePath((ObjectNode) nested, rest, prefix + head + ".");
+                }
+                if (parent.path("fields").has(rest)) {
+                    return prefix + head;
+                }
+            }
+            dot = field.indexOf('.', dot + 1);
+        }
+        return prefix + field;
+    }
+
+    private static void mapDynamic(ObjectNode properties, JsonNode source) {
+        Iterator<Map.Entry<String, JsonNode>> fields = source.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode value = field.getValue();
+            while (value.isArray() && value.size() > 0) {
+                value = value.get(0);
+            }
+            JsonNode existing = properties.get(field.getKey());
+            if (value.isObject()) {
+                ObjectNode mapping = existing != null ? (ObjectNode) existing : properties.putObject(field.getKey());
+                ObjectNode nested = mapping.has("properties") ? (ObjectNode) mapping.get("properties") : mapping.putObject("properties");
+                mapDynamic(nested, value);
+            } else if (existing == null && !value.isNull() && !value.isArray()) {
+                properties.set(field.getKey(), dynamicMapping(value));
+            }
+        }
+    }
+
+    private static ObjectNode dynamicMapping(JsonNode value) {
+        ObjectNode mapping = NODES.objectNode();
+        if (value.isIntegralNumber()) {
+            mapping.put("type", "long");
+        } else if (value.isNumber()) {
+            mapping.put("type", "float");
+        } else if (value.isBoolean()) {
+            mapping.put("type", "boolean");
+        } else {
+            mapping.put("type", "text");
+            mapping.putObject("fields").putObject("keyword").put("type", "keyword").put("ignore_above", 256);
+        }
+        return mapping;
+    }
+
+    /**
+     * 不可变的文档版本，更新时整体替换
+     */
+    static final class Doc {
+        final StandInIndex index;
+        final String id;
+        final ObjectNode source;
+        final long version;
+        final long seqNo;
+        final long order;
+
+        Doc(StandInIndex index, String id, ObjectNode source, long version, long seqNo, long order) {
+            this.index = index;
+            this.id = id;
+            this.source = source;
+            this.version = version;
+            this.seqNo = seqNo;
+            this.order = order;
+        }
+
+        /**
+         * 字段的全部取值，数组展开，缺失时为空
+         */
+        List<JsonNode> values(String field) {
+            List<JsonNode> values = new ArrayList<>(1);
+            collect(source, index.sourcePath(field), values);
+            return values;
+        }
+
+        private static void collect(JsonNode node, String path, List<JsonNode> values) {
+            if (node.isArray()) {
+                for (JsonNode element : node) {
+                    collect(element, path, values);
+                }
+                return;
+            }
+            if (!node.isObject()) {
+                return;
+            }
+            JsonNode direct = node.get(path);
+            if (direct != null) {
+                if (direct.isArray()) {
+                    for (JsonNode element : direct) {
+                        if (!element.isNull()) {
+                            values.add(element);
+                        }
+                    }
+                } else if (!direct.isNull()) {
+                    values.add(direct);
+                }
+                return;
+            }
+            int dot = path.indexOf('.');
+            while (dot > 0) {
+                JsonNode child = node.get(path.substring(0, dot));
+                if (child != null) {
+                    collect(child, path.substring(dot + 1), values);
+                    return;
+                }
+                dot = path.indexOf('.', dot + 1);
+            }
+        }
+    }
+}
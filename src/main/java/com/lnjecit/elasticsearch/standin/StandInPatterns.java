@@ -0,0 +1,38 @@
+package com.lnjecit.elasticsearch.standin;
+
+/**
+ * 只支持 * 的通配匹配，用于索引名和 _source 字段过滤
+ */
+final class StandInPatterns {
+
+    private StandInPatterns() {
+    }
+
+    static boolean isWildcard(String pattern) {
+        return pattern.indexOf('*') >= 0;
+    }
+
+    static boolean matches(String pattern, String value) {
+        return matches(pattern, 0, value, 0);
+    }
+
+    private static boolean matches(String pattern, int p, String value, int v) {
+        while (p < pattern.length()) {
+            char c = pattern.charAt(p);
+            if (c == '*') {
+                for (int i = v; i <= value.length(); i++) {
+                    if (matches(pattern, p + 1, value, i)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (v >= value.length() || value.charAt(v) != c) {
+                return false;
+            }
+            p++;
+            v++;
+        }
+        return v == value.length();
+    }
+}
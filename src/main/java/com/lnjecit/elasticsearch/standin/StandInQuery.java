@@ -0,0 +1,677 @@
+package com.lnjecit.elasticsearch.standin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.lnjecit.elasticsearch.standin.StandInIndex.Doc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 替身支持的查询 DSL：match_all、match_none、term、terms、match、fuzzy、prefix、range、exists、ids、bool、constant_score。
+ * <p>
+ * 语义按 mapping 区分：text 字段按标准分词器分词（中文每个字一个词，英文转小写），keyword 整体比较，数值按数值比较。
+ * 评分只是近似值：匹配的词越多、字段越短分数越高，filter 上下文不计分。
+ */
+abstract class StandInQuery {
+    /**
+     * 不匹配时 {@link #score(Doc)} 的返回值
+     */
+    static final float NO_MATCH = -1f;
+
+    static final StandInQuery MATCH_ALL = new MatchAll(1f);
+
+    /**
+     * 文档匹配时返回分数（不小于 0），否则返回 {@link #NO_MATCH}
+     */
+    abstract float score(Doc doc);
+
+    /**
+     * 收集查询中针对 field 的词，用于高亮
+     */
+    void collectTerms(String field, Set<String> terms) {
+    }
+
+    static StandInQuery parse(JsonNode query) {
+        if (query == null || query.isNull() || query.size() == 0) {
+            return MATCH_ALL;
+        }
+        if (!query.isObject() || query.size() != 1) {
+            throw parsingException("query must be an object with a single query type: " + query);
+        }
+        Map.Entry<String, JsonNode> entry = query.fields().next();
+        String type = entry.getKey();
+        JsonNode body = entry.getValue();
+        switch (type) {
+            case "match_all":
+                return new MatchAll(boost(body));
+            case "match_none":
+                return new MatchNone();
+            case "term":
+                return new Term(field(body), fieldBody(body, "value"), boost(body.path(field(body))));
+            case "terms":
+                return terms(body);
+            case "match":
+                return match(body);
+            case "fuzzy":
+                return new Fuzzy(field(body), fieldBody(body, "value").asText(), body.path(field(body)).path("fuzziness").asText("AUTO"),
+                        boost(body.path(field(body))));
+            case "prefix":
+                return new Prefix(field(body), fieldBody(body, "value").asText(), boost(body.path(field(body))));
+            case "range":
+                return range(body);
+            case "exists":
+                return new Exists(body.path("field").asText(), boost(body));
+            case "ids":
+                return ids(body);
+            case "bool":
+                return bool(body);
+            case "constant_score":
+                return new ConstantScore(parse(body.path("filter")), boost(body));
+            default:
+                throw parsingException("unknown query [" + type + "]");
+        }
+    }
+
+    private static StandInQuery terms(JsonNode body) {
+        String field = field(body);
+        List<JsonNode> values = new ArrayList<>();
+        body.path(field).forEach(values::add);
+        return new Terms(field, values, boost(body));
+    }
+
+    private static StandInQuery match(JsonNode body) {
+        String field = field(body);
+        JsonNode options = body.path(field);
+        String text = options.isObject() ? options.path("query").asText() : options.asText();
+        boolean and = "and".equalsIgnoreCase(options.path("operator").asText("or"));
+        return new Match(field, text, and, options.path("minimum_should_match").asText(null), boost(options));
+    }
+
+    private static StandInQuery range(JsonNode body) {
+        String field = field(body);
+        JsonNode options = body.path(field);
+        JsonNode lower = null;
+        JsonNode upper = null;
+        boolean includeLower = options.path("include_lower").asBoolean(true);
+        boolean includeUpper = options.path("include_upper").asBoolean(true);
+        if (options.has("from")) {
+            lower = options.get("from");
+        }
+        if (options.has("to")) {
+            upper = options.get("to");
+        }
+        if (options.has("gt")) {
+            lower = options.get("gt");
+            includeLower = false;
+        }
+        if (options.has("gte")) {
+            lower = options.get("gte");
+            includeLower = true;
+        }
+        if (options.has("lt")) {
+            upper = options.get("lt");
+            includeUpper = false;
+        }
+        if (options.has("lte")) {
+            upper = options.get("lte");
+            includeUpper = true;
+        }
+        return new Range(field, lower != null && lower.isNull() ? null : lower, upper != null && upper.isNull() ? null : upper,
+                includeLower, includeUpper, boost(options));
+    }
+
+    private static StandInQuery ids(JsonNode body) {
+        Set<String> ids = new HashSet<>();
+        body.path("values").forEach(id -> ids.add(id.asText()));
+        return new Ids(ids, boost(body));
+    }
+
+    private static StandInQuery bool(JsonNode body) {
+        return new Bool(clauses(body.get("must")), clauses(body.get("filter")), clauses(body.get("should")),
+                clauses(body.get("must_not")), body.path("minimum_should_match").asText(null), boost(body));
+    }
+
+    private static List<StandInQuery> clauses(JsonNode node) {
+        if (node == null || node.isNull()) {
+            return Collections.emptyList();
+        }
+        List<StandInQuery> clauses = new ArrayList<>();
+        if (node.isArray()) {
+            node.forEach(clause -> clauses.add(parse(clause)));
+        } else {
+            clauses.add(parse(node));
+        }
+        return clauses;
+    }
+
+    /**
+     * 字段级查询的字段名：{"term":{"age":{"value":35,"boost":1.0}}} 中的 age
+     */
+    private static String field(JsonNode body) {
+        Iterator<String> names = body.fieldNames();
+        while (names.hasNext()) {
+            String name = names.next();
+            if (!"boost".equals(name) && !"_name".equals(name)) {
+                return name;
+            }
+        }
+        throw parsingException("query is missing a field: " + body);
+    }
+
+    /**
+     * 字段级查询的取值，兼容简写 {"term":{"age":35}}
+     */
+    private static JsonNode fieldBody(JsonNode body, String valueName) {
+        JsonNode options = body.path(field(body));
+        return options.isObject() ? options.path(valueName) : options;
+    }
+
+    private static float boost(JsonNode options) {
+        return options.isObject() ? (float) options.path("boost").asDouble(1.0) : 1f;
+    }
+
+    static StandInException parsingException(String reason) {
+        return new StandInException(400, "parsing_exception", reason);
+    }
+
+    /**
+     * 标准分词器的近似：中日韩文字每个字一个词，字母数字连续成词并转小写，其余字符作为分隔符
+     */
+    static List<String> analyze(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isIdeographic(codePoint)) {
+                flush(word, tokens);
+                tokens.add(new String(Character.toChars(codePoint)));
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                word.appendCodePoint(codePoint);
+            } else {
+                flush(word, tokens);
+            }
+        }
+        flush(word, tokens);
+        return tokens;
+    }
+
+    private static void flush(StringBuilder word, List<String> tokens) {
+        if (word.length() > 0) {
+            tokens.add(word.toString().toLowerCase(Locale.ROOT));
+            word.setLength(0);
+        }
+    }
+
+    enum FieldKind {TEXT, KEYWORD, NUMERIC, BOOLEAN}
+
+    static FieldKind kind(Doc doc, String field) {
+        JsonNode mapping = doc.index.fieldMapping(field);
+        String type = mapping == null ? "keyword" : mapping.path("type").asText("object");
+        switch (type) {
+            case "text":
+                return FieldKind.TEXT;
+            case "long":
+            case "integer":
+            case "short":
+            case "byte":
+            case "double":
+            case "float":
+            case "half_float":
+            case "scaled_float":
+                return FieldKind.NUMERIC;
+            case "boolean":
+                return FieldKind.BOOLEAN;
+            default:
+                return FieldKind.KEYWORD;
+        }
+    }
+
+    static boolean isNumber(String text) {
+        try {
+            Double.parseDouble(text);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 单个取值是否等于查询值，text 字段比较分词后的词
+     */
+    static boolean valueEquals(FieldKind kind, JsonNode value, String expected) {
+        switch (kind) {
+            case TEXT:
+                return analyze(value.asText()).contains(expected);
+            case NUMERIC:
+                return isNumber(expected) && value.asDouble() == Double.parseDouble(expected);
+            default:
+                return value.asText().equals(expected);
+        }
+    }
+
+    private static final class MatchAll extends StandInQuery {
+        private final float boost;
+
+        MatchAll(float boost) {
+            this.boost = boost;
+        }
+
+        @Override
+        float score(Doc doc) {
+            return boost;
+        }
+    }
+
+    private static final class MatchNone extends StandInQuery {
+        @Override
+        float score(Doc doc) {
+            return NO_MATCH;
+        }
+    }
+
+    private static final class Term extends StandInQuery {
+        private final String field;
+        private final String value;
+        private final float boost;
+
+        Term(String field, JsonNode value, float boost) {
+            this.field = field;
+            this.value = value.asText();
+            this.boost = boost;
+        }
+
+        @Override
+        float score(Doc doc) {
+            FieldKind kind = kind(doc, field);
+            for (JsonNode fieldValue : doc.values(field)) {
+                if (valueEquals(kind, fieldValue, value)) {
+                    return boost;
+                }
+            }
+            return NO_MATCH;
+        }
+
+        @Override
+        void collectTerms(String field, Set<String> terms) {
+            if (this.field.equals(field)) {
+                terms.add(value);
+            }
+        }
+    }
+
+    private static final class Terms extends StandInQuery {
+        private final String field;
+        private final List<String> values = new ArrayList<>();
+        private final float boost;
+
+        Terms(String field, List<JsonNode> values, float boost) {
+            this.field = field;
+            values.forEach(value -> this.values.add(value.asText()));
+            this.boost = boost;
+        }
+
+        @Override
+        float score(Doc doc) {
+            FieldKind kind = kind(doc, field);
+            for (JsonNode fieldValue : doc.values(field)) {
+                for (String value : values) {
+                    if (valueEquals(kind, fieldValue, value)) {
+                        return boost;
+                    }
+                }
+            }
+            return NO_MATCH;
+        }
+
+        @Override
+        void collectTerms(String field, Set<String> terms) {
+            if (this.field.equals(field)) {
+                terms.addAll(values);
+            }
+        }
+    }
+
+    private static final class Match extends StandInQuery {
+        private final String field;
+        private final String text;
+        private final List<String> tokens;
+        private final boolean and;
+        private final String minimumShouldMatch;
+        private final float boost;
+
+        Match(String field, String text, boolean and, String minimumShouldMatch, float boost) {
+            this.field = field;
+            this.text = text;
+            this.tokens = new ArrayList<>(new LinkedHashSet<>(analyze(text)));
+            this.and = and;
+            this.minimumShouldMatch = minimumShouldMatch;
+            this.boost = boost;
+        }
+
+        @Override
+        float score(Doc doc) {
+            FieldKind kind = kind(doc, field);
+            if (kind != FieldKind.TEXT) {
+                for (JsonNode fieldValue : doc.values(field)) {
+                    if (valueEquals(kind, fieldValue, text)) {
+                        return boost;
+                    }
+                }
+                return NO_MATCH;
+            }
+            List<String> fieldTokens = new ArrayList<>();
+            for (JsonNode fieldValue : doc.values(field)) {
+                fieldTokens.addAll(analyze(fieldValue.asText()));
+            }
+            int matched = 0;
+            for (String token : tokens) {
+                if (fieldTokens.contains(token)) {
+                    matched++;
+                }
+            }
+            int required = and ? tokens.size() : Math.max(1, minimumShouldMatch(minimumShouldMatch, tokens.size(), 1));
+            if (tokens.isEmpty() || matched < required) {
+                return NO_MATCH;
+            }
+            // 近似 BM25：命中的词越多、字段越短分数越高
+            return (float) (boost * matched / Math.sqrt(fieldTokens.size()));
+        }
+
+        @Override
+        void collectTerms(String field, Set<String> terms) {
+            if (this.field.equals(field)) {
+                terms.addAll(tokens);
+            }
+        }
+    }
+
+    private static final class Fuzzy extends StandInQuery {
+        private final String field;
+        private final String value;
+        private final String fuzziness;
+        private final float boost;
+
+        Fuzzy(String field, String value, String fuzziness, float boost) {
+            this.field = field;
+            this.value = value;
+            this.fuzziness = fuzziness;
+            this.boost = boost;
+        }
+
+        @Override
+        float score(Doc doc) {
+            FieldKind kind = kind(doc, field);
+            int maxEdits = maxEdits(value.codePointCount(0, value.length()));
+            for (JsonNode fieldValue : doc.values(field)) {
+                List<String> candidates = kind == FieldKind.TEXT ? analyze(fieldValue.asText()) : Collections.singletonList(fieldValue.asText());
+                for (String candidate : candidates) {
+                    int distance = editDistance(value, candidate);
+                    if (distance <= maxEdits) {
+                        return boost * (1f - (float) distance / (value.length() + 1));
+                    }
+                }
+            }
+            return NO_MATCH;
+        }
+
+        private int maxEdits(int length) {
+            if (fuzziness.startsWith("AUTO")) {
+                int low = 3;
+                int high = 6;
+                String[] bounds = fuzziness.length() > 5 ? fuzziness.substring(5).split(",") : new String[0];
+                if (bounds.length == 2) {
+                    low = Integer.parseInt(bounds[0].trim());
+                    high = Integer.parseInt(bounds[1].trim());
+                }
+                return length < low ? 0 : length < high ? 1 : 2;
+            }
+            return Math.min(2, (int) Double.parseDouble(fuzziness));
+        }
+
+        private static int editDistance(String a, String b) {
+            int[] previous = new int[b.length() + 1];
+            int[] current = new int[b.length() + 1];
+            for (int j = 0; j <= b.length(); j++) {
+                previous[j] = j;
+            }
+            for (int i = 1; i <= a.length(); i++) {
+                current[0] = i;
+                for (int j = 1; j <= b.length(); j++) {
+                    int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                    current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                }
+                int[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+            return previous[b.length()];
+        }
+
+        @Override
+        void collectTerms(String field, Set<String> terms) {
+            if (this.field.equals(field)) {
+                terms.add(value);
+            }
+        }
+    }
+
+    private static final class Prefix extends StandInQuery {
+        private final String field;
+        private final String prefix;
+        private final float boost;
+
+        Prefix(String field, String prefix, float boost) {
+            this.field = field;
+            this.prefix = prefix;
+            this.boost = boost;
+        }
+
+        @Override
+        float score(Doc doc) {
+            FieldKind kind = kind(doc, field);
+            for (JsonNode fieldValue : doc.values(field)) {
+                List<String> candidates = kind == FieldKind.TEXT ? analyze(fieldValue.asText()) : Collections.singletonList(fieldValue.asText());
+                for (String candidate : candidates) {
+                    if (candidate.startsWith(prefix)) {
+                        return boost;
+                    }
+                }
+            }
+            return NO_MATCH;
+        }
+    }
+
+    private static final class Range extends StandInQuery {
+        private final String field;
+        private final JsonNode lower;
+        private final JsonNode upper;
+        private final boolean includeLower;
+        private final boolean includeUpper;
+        private final float boost;
+
+        Range(String field, JsonNode lower, JsonNode upper, boolean includeLower, boolean includeUpper, float boost) {
+            this.field = field;
+            this.lower = lower;
+            this.upper = upper;
+            this.includeLower = includeLower;
+            this.includeUpper = includeUpper;
+            this.boost = boost;
+        }
+
+        @Override
+        float score(Doc doc) {
+            boolean numeric = kind(doc, field) == FieldKind.NUMERIC;
+            for (JsonNode value : doc.values(field)) {
+                if (inRange(value, numeric)) {
+                    return boost;
+                }
+            }
+            return NO_MATCH;
+        }
+
+        private boolean inRange(JsonNode value, boolean numeric) {
+            if (lower != null) {
+                int cmp = compare(value, lower, numeric);
+                if (cmp < 0 || cmp == 0 && !includeLower) {
+                    return false;
+                }
+            }
+            if (upper != null) {
+                int cmp = compare(value, upper, numeric);
+                return cmp < 0 || cmp == 0 && includeUpper;
+            }
+            return true;
+        }
+
+        private static int compare(JsonNode value, JsonNode bound, boolean numeric) {
+            if (numeric) {
+                return Double.compare(value.asDouble(), Double.parseDouble(bound.asText()));
+            }
+            return value.asText().compareTo(bound.asText());
+        }
+    }
+
+    private static final class Exists extends StandInQuery {
+        private final String field;
+        private final float boost;
+
+        Exists(String field, float boost) {
+            this.field = field;
+            this.boost = boost;
+        }
+
+        @Override
+        float score(Doc doc) {
+            return doc.values(field).isEmpty() ? NO_MATCH : boost;
+        }
+    }
+
+    private static final class Ids extends StandInQuery {
+        private final Set<String> ids;
+        private final float boost;
+
+        Ids(Set<String> ids, float boost) {
+            this.ids = ids;
+            this.boost = boost;
+        }
+
+        @Override
+        float score(Doc doc) {
+            return ids.contains(doc.id) ? boost : NO_MATCH;
+        }
+    }
+
+    private static final class ConstantScore extends StandInQuery {
+        private final StandInQuery filter;
+        private final float boost;
+
+        ConstantScore(StandInQuery filter, float boost) {
+            this.filter = filter;
+            this.boost = boost;
+        }
+
+        @Override
+        float score(Doc doc) {
+            return filter.score(doc) == NO_MATCH ? NO_MATCH : boost;
+        }
+
+        @Override
+        void collectTerms(String field, Set<String> terms) {
+            filter.collectTerms(field, terms);
+        }
+    }
+
+    private static final class Bool extends StandInQuery {
+        private final List<StandInQuery> must;
+        private final List<StandInQuery> filter;
+        private final List<StandInQuery> should;
+        private final List<StandInQuery> mustNot;
+        private final int requiredShould;
+        private final float boost;
+
+        Bool(List<StandInQuery> must, List<StandInQuery> filter, List<StandInQuery> should, List<StandInQuery> mustNot,
+             String minimumShouldMatch, float boost) {
+            this.must = must;
+            this.filter = filter;
+            this.should = should;
+            this.mustNot = mustNot;
+            // 没有 must/filter 时至少匹配一个 should，否则 should 只影响打分
+            int defaultRequired = must.isEmpty() && filter.isEmpty() && !should.isEmpty() ? 1 : 0;
+            this.requiredShould = minimumShouldMatch(minimumShouldMatch, should.size(), defaultRequired);
+            this.boost = boost;
+        }
+
+        @Override
+        float score(Doc doc) {
+            float score = 0;
+            for (StandInQuery clause : must) {
+                float clauseScore = clause.score(doc);
+                if (clauseScore == NO_MATCH) {
+                    return NO_MATCH;
+                }
+                score += clauseScore;
+            }
+            for (StandInQuery clause : filter) {
+                if (clause.score(doc) == NO_MATCH) {
+                    return NO_MATCH;
+                }
+            }
+            for (StandInQuery clause : mustNot) {
+                if (clause.score(doc) != NO_MATCH) {
+                    return NO_MATCH;
+                }
+            }
+            int matchedShould = 0;
+            for (StandInQuery clause : should) {
+                float clauseScore = clause.score(doc);
+                if (clauseScore != NO_MATCH) {
+                    matchedShould++;
+                    score += clauseScore;
+                }
+            }
+            if (matchedShould < requiredShould) {
+                return NO_MATCH;
+            }
+            return boost * score;
+        }
+
+        @Override
+        void collectTerms(String field, Set<String> terms) {
+            for (StandInQuery clause : must) {
+                clause.collectTerms(field, terms);
+            }
+            for (StandInQuery clause : filter) {
+                clause.collectTerms(field, terms);
+            }
+            for (StandInQuery clause : should) {
+                clause.collectTerms(field, terms);
+            }
+        }
+    }
+
+    /**
+     * minimum_should_match：支持整数、负数和百分比
+     */
+    static int minimumShouldMatch(String spec, int clauses, int defaultValue) {
+        if (spec == null || spec.isEmpty() || "null".equals(spec)) {
+            return defaultValue;
+        }
+        int required;
+        if (spec.endsWith("%")) {
+            int percent = Integer.parseInt(spec.substring(0, spec.length() - 1).trim());
+            required = percent < 0 ? clauses - clauses * -percent / 100 : clauses * percent / 100;
+        } else {
+            int value = Integer.parseInt(spec.trim());
+            required = value < 0 ? clauses + value : value;
+        }
+        return Math.max(0, Math.min(clauses, required));
+    }
+}
@@ -0,0 +1,420 @@
+package com.lnjecit.elasticsearch.standin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lnjecit.elasticsearch.standin.StandInIndex.Doc;
+import com.lnjecit.elasticsearch.standin.StandInQuery.FieldKind;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 解析后的搜索请求体：查询、排序、search_after、分页、slice、_source 过滤、高亮、聚合和 track_total_hits。
+ * <p>
+ * 执行时先对候选文档逐个打分过滤，再整体排序，聚合基于全部命中文档计算。
+ */
+class StandInSearch {
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+    private static final int DEFAULT_TRACK_TOTAL_HITS = 10_000;
+
+    private final StandInQuery query;
+    private final int from;
+    private final int size;
+    private final List<SortField> sort;
+    private final boolean sortByScore;
+    private final JsonNode searchAfter;
+    private final int trackTotalHitsUpTo;
+    private final JsonNode sourceFilter;
+    private final JsonNode highlight;
+    private final JsonNode slice;
+    private final StandInAggregations aggregations;
+
+    StandInSearch(JsonNode body, boolean typedKeys) {
+        this(body, StandInQuery.parse(body.get("query")), 10, typedKeys);
+    }
+
+    private StandInSearch(JsonNode body, StandInQuery query, int defaultSize, boolean typedKeys) {
+        this.query = query;
+        this.from = body.path("from").asInt(0);
+        this.size = body.path("size").asInt(defaultSize);
+        this.sort = parseSort(body.get("sort"));
+        this.sortByScore = sort.isEmpty() || sort.stream().anyMatch(field -> "_score".equals(field.name))
+                || body.path("track_scores").asBoolean(false);
+        this.searchAfter = body.get("search_after");
+        this.trackTotalHitsUpTo = trackTotalHits(body.get("track_total_hits"));
+        this.sourceFilter = body.get("_source");
+        this.highlight = body.get("highlight");
+        this.slice = body.get("slice");
+        this.aggregations = body.has("aggs") || body.has("aggregations")
+                ? new StandInAggregations(body.has("aggs") ? body.get("aggs") : body.get("aggregations"), typedKeys) : null;
+    }
+
+    /**
+     * top_hits 聚合：复用排序、分页和 _source 过滤，默认返回 3 条
+     */
+    static StandInSearch topHits(JsonNode body) {
+        return new StandInSearch(body, StandInQuery.MATCH_ALL, 3, false);
+    }
+
+    int getFrom() {
+        return from;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * 打分、过滤并排序，search_after 之前的命中被跳过
+     */
+    List<Hit> execute(List<Doc> candidates) {
+        List<Hit> hits = new ArrayList<>();
+        for (Doc doc : candidates) {
+            if (slice != null && Math.floorMod(doc.id.hashCode(), slice.path("max").asInt(1)) != slice.path("id").asInt(0)) {
+                continue;
+            }
+            float score = query.score(doc);
+            if (score != StandInQuery.NO_MATCH) {
+                hits.add(new Hit(doc, score));
+            }
+        }
+        return sort(hits);
+    }
+
+    List<Hit> sort(List<Hit> hits) {
+        for (Hit hit : hits) {
+            hit.sortValues = sortValues(hit);
+        }
+        Comparator<Hit> comparator = comparator();
+        hits.sort(comparator);
+        if (searchAfter != null && searchAfter.isArray()) {
+            List<Hit> after = new ArrayList<>();
+            for (Hit hit : hits) {
+                if (compareSortValues(hit.sortValues, searchAfter) > 0) {
+                    after.add(hit);
+                }
+            }
+            return after;
+        }
+        return hits;
+    }
+
+    /**
+     * from/size 对应的一页
+     */
+    List<Hit> page(List<Hit> hits) {
+        if (from >= hits.size()) {
+            return Collections.emptyList();
+        }
+        return hits.subList(from, Math.min(hits.size(), from + size));
+    }
+
+    /**
+     * 完整的搜索响应，hits 为要返回的一页，total 为命中总数
+     */
+    ObjectNode response(List<Hit> allHits, List<Hit> pageHits, long took, int shards) {
+        ObjectNode response = NODES.objectNode().put("took", took).put("timed_out", false);
+        response.putObject("_shards").put("total", shards).put("successful", shards).put("skipped", 0).put("failed", 0);
+        response.set("hits", renderHits(allHits.size(), pageHits));
+        if (aggregations != null) {
+            response.set("aggregations", aggregations.render(allHits));
+        }
+        return response;
+    }
+
+    ObjectNode renderHits(int total, List<Hit> pageHits) {
+        ObjectNode hitsNode = NODES.objectNode();
+        if (trackTotalHitsUpTo >= 0) {
+            boolean capped = total > trackTotalHitsUpTo;
+            hitsNode.putObject("total").put("value", capped ? trackTotalHitsUpTo : total).put("relation", capped ? "gte" : "eq");
+        }
+        float maxScore = Float.NEGATIVE_INFINITY;
+        ArrayNode hitArray = NODES.arrayNode();
+        for (Hit hit : pageHits) {
+            hitArray.add(renderHit(hit));
+            maxScore = Math.max(maxScore, hit.score);
+        }
+        if (sortByScore && !pageHits.isEmpty()) {
+            hitsNode.put("max_score", maxScore);
+        } else {
+            hitsNode.putNull("max_score");
+        }
+        hitsNode.set("hits", hitArray);
+        return hitsNode;
+    }
+
+    private ObjectNode renderHit(Hit hit) {
+        Doc doc = hit.doc;
+        ObjectNode node = NODES.objectNode()
+                .put("_index", doc.index.getName())
+                .put("_type", "_doc")
+                .put("_id", doc.id);
+        if (sortByScore) {
+            node.put("_score", hit.score);
+        } else {
+            node.putNull("_score");
+        }
+        ObjectNode source = filterSource(doc.source, sourceFilter);
+        if (source != null) {
+            node.set("_source", source);
+        }
+        if (!sort.isEmpty()) {
+            ArrayNode sortValues = node.putArray("sort");
+            for (JsonNode value : hit.sortValues) {
+                sortValues.add(value);
+            }
+        }
+        if (highlight != null) {
+            ObjectNode fragments = highlight(hit);
+            if (fragments.size() > 0) {
+                node.set("highlight", fragments);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * _source 过滤：false、字段数组或 {includes, excludes}，支持 * 通配
+     */
+    static ObjectNode filterSource(ObjectNode source, JsonNode filter) {
+        if (filter == null || filter.isNull() || filter.isBoolean() && filter.asBoolean()) {
+            return source;
+        }
+        if (filter.isBoolean()) {
+            return null;
+        }
+        List<String> includes = new ArrayList<>();
+        List<String> excludes = new ArrayList<>();
+        if (filter.isObject()) {
+            filter.path("includes").forEach(field -> includes.add(field.asText()));
+            filter.path("excludes").forEach(field -> excludes.add(field.asText()));
+        } else if (filter.isArray()) {
+            filter.forEach(field -> includes.add(field.asText()));
+        } else {
+            includes.add(filter.asText());
+        }
+        ObjectNode filtered = NODES.objectNode();
+        Iterator<Map.Entry<String, JsonNode>> fields = source.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            boolean included = includes.isEmpty() || includes.stream().anyMatch(pattern -> StandInPatterns.matches(pattern, field.getKey()));
+            boolean excluded = excludes.stream().anyMatch(pattern -> StandInPatterns.matches(pattern, field.getKey()));
+            if (included && !excluded) {
+                filtered.set(field.getKey(), field.getValue());
+            }
+        }
+        return filtered;
+    }
+
+    private ObjectNode highlight(Hit hit) {
+        String preTag = highlight.path("pre_tags").path(0).asText("<em>");
+        String postTag = highlight.path("post_tags").path(0).asText("</em>");
+        List<String> fields = new ArrayList<>();
+        JsonNode fieldsNode = highlight.path("fields");
+        if (fieldsNode.isArray()) {
+            fieldsNode.forEach(field -> field.fieldNames().forEachRemaining(fields::add));
+        } else {
+            fieldsNode.fieldNames().forEachRemaining(fields::add);
+        }
+        ObjectNode fragments = NODES.objectNode();
+        for (String field : fields) {
+            Set<String> terms = new LinkedHashSet<>();
+            query.collectTerms(field, terms);
+            if (terms.isEmpty()) {
+                continue;
+            }
+            boolean text = StandInQuery.kind(hit.doc, field) == FieldKind.TEXT;
+            ArrayNode fieldFragments = NODES.arrayNode();
+            for (JsonNode value : hit.doc.values(field)) {
+                String fragment = text ? highlightTokens(value.asText(), terms, preTag, postTag)
+                        : terms.contains(value.asText()) ? preTag + value.asText() + postTag : null;
+                if (fragment != null) {
+                    fieldFragments.add(fragment);
+                }
+            }
+            if (fieldFragments.size() > 0) {
+                fragments.set(field, fieldFragments);
+            }
+        }
+        return fragments;
+    }
+
+    /**
+     * 按分词规则给命中的词加标签，未命中任何词时返回 null
+     */
+    private static String highlightTokens(String text, Set<String> terms, String preTag, String postTag) {
+        StringBuilder out = new StringBuilder();
+        boolean matched = false;
+        int i = 0;
+        while (i < text.length()) {
+            int codePoint = text.codePointAt(i);
+            int end = i + Character.charCount(codePoint);
+            if (!Character.isIdeographic(codePoint) && Character.isLetterOrDigit(codePoint)) {
+                while (end < text.length()) {
+                    int next = text.codePointAt(end);
+                    if (Character.isIdeographic(next) || !Character.isLetterOrDigit(next)) {
+                        break;
+                    }
+                    end += Character.charCount(next);
+                }
+            }
+            String token = text.substring(i, end);
+            if (Character.isLetterOrDigit(codePoint) && terms.contains(token.toLowerCase(Locale.ROOT))) {
+                out.append(preTag).append(token).append(postTag);
+                matched = true;
+            } else {
+                out.append(token);
+            }
+            i = end;
+        }
+        return matched ? out.toString() : null;
+    }
+
+    private List<JsonNode> sortValues(Hit hit) {
+        List<JsonNode> values = new ArrayList<>(sort.size());
+        for (SortField field : sort) {
+            values.add(field.value(hit));
+        }
+        return values;
+    }
+
+    private Comparator<Hit> comparator() {
+        if (sort.isEmpty()) {
+            return Comparator.<Hit>comparingDouble(hit -> -hit.score).thenComparing(StandInSearch::compareDocOrder);
+        }
+        return ((Comparator<Hit>) (a, b) -> compareSortValues(a.sortValues, b.sortValues)).thenComparing(StandInSearch::compareDocOrder);
+    }
+
+    private int compareSortValues(List<JsonNode> values, JsonNode other) {
+        for (int i = 0; i < sort.size(); i++) {
+            int cmp = sort.get(i).compare(values.get(i), other.path(i));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private int compareSortValues(List<JsonNode> values, List<JsonNode> other) {
+        for (int i = 0; i < sort.size(); i++) {
+            int cmp = sort.get(i).compare(values.get(i), other.get(i));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private static int compareDocOrder(Hit a, Hit b) {
+        int cmp = a.doc.index.getName().compareTo(b.doc.index.getName());
+        return cmp != 0 ? cmp : Long.compare(a.doc.order, b.doc.order);
+    }
+
+    private static List<SortField> parseSort(JsonNode sortNode) {
+        List<SortField> fields = new ArrayList<>();
+        if (sortNode == null || sortNode.isNull()) {
+            return fields;
+        }
+        for (JsonNode element : sortNode.isArray() ? sortNode : NODES.arrayNode().add(sortNode)) {
+            if (element.isTextual()) {
+                fields.add(new SortField(element.asText(), null));
+            } else {
+                element.fields().forEachRemaining(entry -> {
+                    JsonNode options = entry.getValue();
+                    String order = options.isObject() ? options.path("order").asText(null) : options.asText(null);
+                    fields.add(new SortField(entry.getKey(), order));
+                });
+            }
+        }
+        return fields;
+    }
+
+    private static int trackTotalHits(JsonNode node) {
+        if (node == null || node.isNull()) {
+            return DEFAULT_TRACK_TOTAL_HITS;
+        }
+        if (node.isBoolean()) {
+            return node.asBoolean() ? Integer.MAX_VALUE : -1;
+        }
+        return node.asInt(DEFAULT_TRACK_TOTAL_HITS);
+    }
+
+    /**
+     * 一条命中：文档、分数和排序值
+     */
+    static final class Hit {
+        final Doc doc;
+        final float score;
+        List<JsonNode> sortValues = Collections.emptyList();
+
+        Hit(Doc doc, float score) {
+            this.doc = doc;
+            this.score = score;
+        }
+    }
+
+    private static final class SortField {
+        private final String name;
+        private final boolean descending;
+
+        SortField(String name, String order) {
+            this.name = name;
+            this.descending = order == null ? "_score".equals(name) : "desc".equalsIgnoreCase(order);
+        }
+
+        /**
+         * 多值字段升序取最小值、降序取最大值，缺失时为 null
+         */
+        JsonNode value(Hit hit) {
+            switch (name) {
+                case "_score":
+                    return NODES.numberNode(hit.score);
+                case "_doc":
+                case "_shard_doc":
+                    return NODES.numberNode(hit.doc.order);
+                case "_id":
+                    return NODES.textNode(hit.doc.id);
+                default:
+                    JsonNode selected = null;
+                    for (JsonNode value : hit.doc.values(name)) {
+                        if (selected == null || compareValues(value, selected) * (descending ? -1 : 1) < 0) {
+                            selected = value;
+                        }
+                    }
+                    if (selected != null && StandInQuery.kind(hit.doc, name) == FieldKind.TEXT) {
+                        selected = NODES.textNode(selected.asText());
+                    }
+                    return selected == null ? NODES.nullNode() : selected;
+            }
+        }
+
+        /**
+         * 缺失值总是排在最后
+         */
+        int compare(JsonNode a, JsonNode b) {
+            boolean aMissing = a == null || a.isNull() || a.isMissingNode();
+            boolean bMissing = b == null || b.isNull() || b.isMissingNode();
+            if (aMissing || bMissing) {
+                return aMissing == bMissing ? 0 : aMissing ? 1 : -1;
+            }
+            int cmp = compareValues(a, b);
+            return descending ? -cmp : cmp;
+        }
+
+        private static int compareValues(JsonNode a, JsonNode b) {
+            if ((a.isNumber() || b.isNumber()) && StandInQuery.isNumber(a.asText()) && StandInQuery.isNumber(b.asText())) {
+                return Double.compare(Double.parseDouble(a.asText()), Double.parseDouble(b.asText()));
+            }
+            return a.asText().compareTo(b.asText());
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.lnjecit.elasticsearch;
+
+import com.lnjecit.elasticsearch.analytics.LocalAggregation;
+import com.lnjecit.elasticsearch.analytics.LocalAggregationResults;
+import com.lnjecit.elasticsearch.analytics.LocalAggregations;
+import com.lnjecit.elasticsearch.analytics.LocalAggregator;
+import com.lnjecit.elasticsearch.analytics.UserColumns;
+import com.lnjecit.elasticsearch.client.EsClientConfig;
+import com.lnjecit.elasticsearch.client.EsClientFactory;
+import com.lnjecit.elasticsearch.codec.UserHitDecoder;
+import com.lnjecit.elasticsearch.codec.UserSourceSerializer;
+import com.lnjecit.elasticsearch.domain.User;
+import com.lnjecit.elasticsearch.standin.EsStandInServer;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * 内存中的统计分析：列存储的过滤、分组，本地聚合，不需要启动 es
+ */
+public class EsAnalyticsTest {
+
+    private final static String USER_INDEX = "user_test";
+    private final static String[] NAMES = {"王林", "韩立", "紫川秀", "张小凡", "路明非", "楚子航", "李沐婉", "紫灵"};
+    private EsStandInServer server;
+    private RestHighLevelClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new EsStandInServer(0).start().seedUsers(USER_INDEX, 100);
+        client = EsClientFactory.getClient(new EsClientConfig("analytics-test", server.getHttpHost()));
+    }
+
+    @After
+    public void tearDown() {
+        EsClientFactory.close("analytics-test");
+        server.close();
+    }
+
+    /**
+     * 搜索结果直接填充列存储，过滤、分组结果与 List<User> 上计算的一致
+     */
+    @Test
+    public void testUserColumnsFromHits() throws IOException {
+        SearchRequest searchRequest = new SearchRequest(USER_INDEX).source(new SearchSourceBuilder().size(1000));
+        SearchResponse searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
+
+        UserColumns columns = UserColumns.of(searchResponse.getHits());
+        List<User> users = UserHitDecoder.decodeAll(searchResponse.getHits());
+        Assert.assertEquals(users.size(), columns.size());
+        Assert.assertEquals(users.get(7).toString(), columns.getUser(7).toString());
+
+        // 20 到 30 岁的女性，按年龄分组
+        int[] rows = columns.filter(columns.ageBetween(20, 30).and(columns.sexEquals("女")));
+        SortedMap<Integer, Long> byAge = columns.countByAge(rows);
+        System.out.println("20 到 30 岁女性按年龄分组:" + byAge);
+
+        SortedMap<Integer, Long> expected = users.stream()
+                .filter(user -> user.getAge() >= 20 && user.getAge() <= 30 && "女".equals(user.getSex()))
+                .collect(Collectors.groupingBy(User::getAge, TreeMap::new, Collectors.counting()));
+        Assert.assertEquals(expected, byAge);
+
+        Map<String, Long> bySex = columns.countBySex();
+        System.out.println("按性别分组:" + bySex + "，平均年龄:" + columns.avgAgeBySex(columns.rows()));
+        Assert.assertEquals(users.stream().collect(Collectors.groupingBy(User::getSex, Collectors.counting())), bySex);
+    }
+
+    /**
+     * _source 中未知的数组、对象字段跳过；已知字段不是标量时报错，不会被读成 0 或 null
+     */
+    @Test
+    public void testUserColumnsNonScalarField() throws IOException {
+        UserColumns columns = new UserColumns();
+        columns.add(new BytesArray("{\"tags\":[\"a\",{\"id\":9}],\"id\":1,\"extra\":{\"name\":\"x\"},\"name\":\"王林\",\"age\":20}"));
+        Assert.assertEquals(1, columns.size());
+        Assert.assertEquals(Long.valueOf(1), columns.getId(0));
+        Assert.assertEquals("王林", columns.getName(0));
+
+        try {
+            columns.add(new BytesArray("{\"id\":[1,2],\"name\":\"韩立\"}"));
+            Assert.fail("array id should be rejected");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("[id]"));
+        }
+        Assert.assertEquals(1, columns.size());
+    }
+
+    /**
+     * 对比 20 万用户在 List<User> 和列存储中占用的堆内存。
+     * System.gc() 前后的差值受收集器和 JIT 影响，只打印；断言使用确定的估算值
+     */
+    @Test
+    public void testUserColumnsHeapUsage() throws IOException {
+        int count = 200_000;
+        List<byte[]> sources = new ArrayList<>(count);
+        for (long id = 1; id <= count; id++) {
+            User user = new User(id, NAMES[(int) (id % NAMES.length)], 18 + (int) (id % 50), id % 3 == 0 ? "女" : "男");
+            sources.add(UserSourceSerializer.toBytes(user));
+        }
+
+        long before = usedHeap();
+        List<User> users = new ArrayList<>(count);
+        for (byte[] source : sources) {
+            users.add(UserHitDecoder.decode(new BytesArray(source)));
+        }
+        long listBytes = usedHeap() - before;
+        Assert.assertEquals(count, users.size());
+        users = null;
+
+        before = usedHeap();
+        UserColumns columns = new UserColumns(count);
+        for (byte[] source : sources) {
+            columns.add(new BytesArray(source));
+        }
+        long columnBytes = usedHeap() - before;
+        Assert.assertEquals(count, columns.size());
+
+        System.out.println("List<User> 占用:" + listBytes / 1024 + "KB，列存储占用:" + columnBytes / 1024 + "KB");
+
+        // List<User> 每行至少有：列表中的引用 4 + User 对象 32（头 12 + 4 个引用，8 字节对齐）+ Long 16 + Integer 16，
+        // 还不算每行各自解码出的 name/sex 字符串
+        long listEstimate = (long) count * (4 + 32 + 16 + 16);
+        long columnEstimate = columns.estimatedBytes();
+        System.out.println("List<User> 估算:" + listEstimate / 1024 + "KB，列存储估算:" + columnEstimate / 1024 + "KB");
+        Assert.assertTrue(columnEstimate * 3 < listEstimate);
+    }
+
+    /**
+     * 本地聚合：并行计算、分两批计算后合并，与顺序计算结果一致
+     */
+    @Test
+    public void testLocalAggregator() {
+        List<User> users = new ArrayList<>();
+        for (long id = 1; id <= 100_000; id++) {
+            users.add(new User(id, NAMES[(int) (id % NAMES.length)], 18 + (int) (id * 7 % 50), id % 3 == 0 ? "女" : "男"));
+        }
+        LocalAggregation<?, Double> maxAge = LocalAggregations.max("max_age", User::getAge);
+        LocalAggregation<?, SortedMap<Integer, Long>> ageGroup = LocalAggregations.terms("age_group", User::getAge, 10);
+        LocalAggregation<?, List<User>> youngest = LocalAggregations.topHits("youngest",
+                Comparator.comparing(User::getAge).thenComparing(User::getId), 3);
+
+        LocalAggregationResults sequential = new LocalAggregator(ForkJoinPool.commonPool(), Integer.MAX_VALUE)
+                .aggregate(users, maxAge, ageGroup, youngest);
+        LocalAggregationResults parallel = new LocalAggregator(ForkJoinPool.commonPool(), 1000)
+                .aggregate(users, maxAge, ageGroup, youngest);
+        LocalAggregationResults merged = new LocalAggregator().aggregate(users.subList(0, 30_000), maxAge, ageGroup, youngest)
+                .merge(new LocalAggregator().aggregate(users.subList(30_000, users.size()).stream(), maxAge, ageGroup, youngest));
+        System.out.println("最大年龄:" + parallel.get(maxAge) + "，年龄分组:" + parallel.get("age_group") + "，最年轻:" + parallel.get(youngest));
+
+        for (LocalAggregationResults results : Arrays.asList(parallel, merged)) {
+            Assert.assertEquals(sequential.get(maxAge), results.get(maxAge));
+            Assert.assertEquals(sequential.get(ageGroup), results.get(ageGroup));
+            Assert.assertEquals(sequential.get(youngest).toString(), results.get(youngest).toString());
+        }
+        Assert.assertEquals(67.0, sequential.get(maxAge), 0.0);
+        Assert.assertEquals(10, sequential.get(ageGroup).size());
+        Assert.assertEquals(Integer.valueOf(18), sequential.get(ageGroup).firstKey());
+        Assert.assertEquals(Long.valueOf(2000), sequential.get(ageGroup).get(18));
+        Assert.assertEquals(Long.valueOf(50), sequential.get(youngest).get(0).getId());
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
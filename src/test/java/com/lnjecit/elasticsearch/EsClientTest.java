@@ -1,12 +1,42 @@
 package com.lnjecit.elasticsearch;
 
+import com.lnjecit.elasticsearch.analytics.UserColumns;
+import com.lnjecit.elasticsearch.bulk.BulkIngestConfig;
+import com.lnjecit.elasticsearch.bulk.UserBulkIngester;
+import com.lnjecit.elasticsearch.client.AdaptiveNodeSelector;
+import com.lnjecit.elasticsearch.client.EsClientConfig;
+import com.lnjecit.elasticsearch.client.EsClientFactory;
+import com.lnjecit.elasticsearch.client.GzipCompression;
+import com.lnjecit.elasticsearch.codec.UserHitDecoder;
+import com.lnjecit.elasticsearch.codec.UserSourceSerializer;
+import com.lnjecit.elasticsearch.domain.User;
+import com.lnjecit.elasticsearch.search.PointInTime;
+import com.lnjecit.elasticsearch.standin.EsStandInServer;
 import org.apache.http.HttpHost;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestClientBuilder;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class EsClientTest {
 
@@ -19,4 +49,241 @@ public class EsClientTest {
         client.close();
     }
 
+    /**
+     * 同一集群共享同一个客户端，不同集群各自一个
+     */
+    @Test
+    public void testSharedClient() {
+        RestHighLevelClient client1 = EsClientFactory.getClient();
+        RestHighLevelClient client2 = EsClientFactory.getClient();
+        Assert.assertSame(client1, client2);
+
+        EsClientConfig config = new EsClientConfig("other", new HttpHost("localhost", 9201, "http"));
+        config.setMaxConnTotal(20);
+        config.setMaxConnPerRoute(10);
+        config.setIoThreadCount(1);
+        RestHighLevelClient otherClient = EsClientFactory.getClient(config);
+        Assert.assertNotSame(client1, otherClient);
+
+        EsClientFactory.close("other");
+        Assert.assertNotSame(otherClient, EsClientFactory.getClient(config));
+        EsClientFactory.close("other");
+    }
+
+    /**
+     * 自适应节点选择：通过 _nodes/http 发现三个替身节点，慢节点很少被选中，
+     * 故障节点被拉黑，恢复后经健康检查重新加入
+     */
+    @Test
+    public void testAdaptiveRouting() throws Exception {
+        EsStandInServer[] servers = new EsStandInServer[3];
+        for (int i = 0; i < servers.length; i++) {
+            // 三个节点模拟同一集群，数据相同
+            servers[i] = new EsStandInServer(0).start().seedUsers("user_test", 300);
+        }
+        servers[0].setClusterNodes(servers[0].getHttpHost(), servers[1].getHttpHost(), servers[2].getHttpHost());
+        EsStandInServer slow = servers[1];
+        EsStandInServer failing = servers[2];
+        slow.setResponseDelayMillis(30);
+        // 节点发现得到的是 publish_address 中的 ip
+        HttpHost failingNode = new HttpHost("127.0.0.1", failing.getHttpHost().getPort(), "http");
+
+        EsClientConfig config = new EsClientConfig("adaptive", servers[0].getHttpHost());
+        config.setAdaptiveRouting(true);
+        config.setSniffIntervalMillis(60_000);
+        config.setBlacklistMillis(200);
+        try {
+            RestHighLevelClient client = EsClientFactory.getClient(config);
+            AdaptiveNodeSelector nodeSelector = EsClientFactory.getNodeSelector("adaptive");
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (client.getLowLevelClient().getNodes().size() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(3, client.getLowLevelClient().getNodes().size());
+
+            for (int i = 0; i < 300; i++) {
+                client.get(new GetRequest("user_test", String.valueOf(i)), RequestOptions.DEFAULT);
+            }
+            System.out.println("各节点请求数:" + servers[0].getRequestCount() + "," + slow.getRequestCount() + "," + failing.getRequestCount()
+                    + "，路由统计:" + nodeSelector.getAllStats());
+            Assert.assertTrue(slow.getRequestCount() < 300 * 0.15);
+
+            // 故障节点：失败后被拉黑，之后的请求不再发往该节点
+            failing.setUnavailable(true);
+            int errors = 0;
+            for (int i = 0; i < 100; i++) {
+                try {
+                    client.get(new GetRequest("user_test", String.valueOf(i)), RequestOptions.DEFAULT);
+                } catch (IOException | ElasticsearchException e) {
+                    errors++;
+                }
+            }
+            System.out.println("故障节点期间失败请求数:" + errors + "，路由统计:" + nodeSelector.getAllStats());
+            Assert.assertTrue(errors <= 2);
+            Assert.assertTrue(nodeSelector.getStats(failingNode).isBlacklisted());
+
+            // 恢复后，拉黑到期时由健康检查重新加入
+            failing.setUnavailable(false);
+            deadline = System.currentTimeMillis() + 5_000;
+            while (nodeSelector.getStats(failingNode).isBlacklisted() && System.currentTimeMillis() < deadline) {
+                client.get(new GetRequest("user_test", "1"), RequestOptions.DEFAULT);
+                Thread.sleep(20);
+            }
+            Assert.assertFalse(nodeSelector.getStats(failingNode).isBlacklisted());
+        } finally {
+            EsClientFactory.close("adaptive");
+            for (EsStandInServer server : servers) {
+                server.close();
+            }
+        }
+    }
+
+    /**
+     * 自适应节点选择的在途请求数：尚无延迟样本的节点同样按在途请求数分摊并发请求，
+     * 被取消的请求也会释放在途计数
+     */
+    @Test
+    public void testAdaptiveRoutingCancellation() throws Exception {
+        EsStandInServer[] servers = {new EsStandInServer(0).start(), new EsStandInServer(0).start()};
+        EsClientConfig config = new EsClientConfig("adaptive-cancel", servers[0].getHttpHost(), servers[1].getHttpHost());
+        config.setAdaptiveRouting(true);
+        config.setRoutingExplorationRate(0);
+        try {
+            RestHighLevelClient client = EsClientFactory.getClient(config);
+            AdaptiveNodeSelector nodeSelector = EsClientFactory.getNodeSelector("adaptive-cancel");
+            for (EsStandInServer server : servers) {
+                server.setResponseDelayMillis(2_000);
+            }
+            List<Cancellable> cancellables = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                cancellables.add(client.searchAsync(new SearchRequest("user_test"), RequestOptions.DEFAULT,
+                        ActionListener.wrap(response -> { }, e -> { })));
+            }
+            System.out.println("取消前路由统计:" + nodeSelector.getAllStats());
+            for (EsStandInServer server : servers) {
+                Assert.assertEquals(5, nodeSelector.getStats(server.getHttpHost()).getInFlight());
+            }
+
+            cancellables.forEach(Cancellable::cancel);
+            long deadline = System.currentTimeMillis() + 1_000;
+            while (nodeSelector.getAllStats().stream().anyMatch(stats -> stats.getInFlight() > 0)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            System.out.println("取消后路由统计:" + nodeSelector.getAllStats());
+            for (EsStandInServer server : servers) {
+                Assert.assertEquals(0, nodeSelector.getStats(server.getHttpHost()).getInFlight());
+            }
+        } finally {
+            EsClientFactory.close("adaptive-cancel");
+            for (EsStandInServer server : servers) {
+                server.close();
+            }
+        }
+    }
+
+    /**
+     * gzip 压缩：超过阈值的 bulk 请求体压缩发送，搜索响应压缩返回，结果与不压缩时一致
+     */
+    @Test
+    public void testCompression() throws Exception {
+        try (EsStandInServer server = new EsStandInServer(0).start()) {
+            EsClientConfig config = new EsClientConfig("compression", server.getHttpHost());
+            config.setCompressionThresholdBytes(1024);
+            config.setCompressionLevel(6);
+            RestHighLevelClient client = EsClientFactory.getClient(config);
+            GzipCompression compression = EsClientFactory.getCompression("compression");
+
+            // 小请求低于阈值，不压缩
+            client.index(new IndexRequest("user_test").id("0")
+                    .source(UserSourceSerializer.toBytesReference(new User(0L, "王林", 18, "男")), XContentType.JSON), RequestOptions.DEFAULT);
+            Assert.assertEquals(0, compression.getCompressedRequests());
+
+            BulkRequest bulkRequest = new BulkRequest();
+            for (long id = 1; id <= 1000; id++) {
+                bulkRequest.add(new IndexRequest("user_test").id(String.valueOf(id))
+                        .source(UserSourceSerializer.toBytesReference(new User(id, "用户" + id, 18 + (int) (id % 50), id % 3 == 0 ? "女" : "男")),
+                                XContentType.JSON));
+            }
+            Assert.assertFalse(client.bulk(bulkRequest, RequestOptions.DEFAULT).hasFailures());
+            Assert.assertEquals(1, compression.getCompressedRequests());
+
+            SearchResponse response = client.search(new SearchRequest("user_test")
+                    .source(new SearchSourceBuilder().query(QueryBuilders.matchAllQuery()).size(1000)), RequestOptions.DEFAULT);
+            Assert.assertEquals(1001, response.getHits().getTotalHits().value);
+            Assert.assertEquals(1000, response.getHits().getHits().length);
+            Assert.assertEquals("用户999", response.getHits().getAt(999).getSourceAsMap().get("name"));
+
+            System.out.println("压缩统计:" + compression);
+            Assert.assertTrue(compression.getRequestWireBytes() * 3 < compression.getRequestBytes());
+            Assert.assertEquals(3, compression.getCompressedResponses());
+            Assert.assertTrue(compression.getResponseWireBytes() > 0);
+            // 分块传输的压缩响应同样计入，1000 条结果的搜索响应压缩后不到原来的 1/3
+            Assert.assertTrue(compression.getResponseWireBytes() * 3 < compression.getResponseBytes());
+            Assert.assertEquals(compression.getResponseBytes() - compression.getResponseWireBytes(), compression.getSavedResponseBytes());
+        } finally {
+            EsClientFactory.close("compression");
+        }
+    }
+
+    /**
+     * SMILE / CBOR 编码：SMILE 批量写入、CBOR 单文档写入，响应按 Accept 返回二进制格式后解码
+     */
+    @Test
+    public void testBinaryContentType() throws Exception {
+        User sample = new User(1L, "王林", 18, "男");
+        for (XContentType type : new XContentType[]{XContentType.JSON, XContentType.SMILE, XContentType.CBOR}) {
+            System.out.println(type + " 编码字节数:" + UserSourceSerializer.toBytes(sample, type).length);
+        }
+
+        try (EsStandInServer server = new EsStandInServer(0).start()) {
+            EsClientConfig config = new EsClientConfig("binary", server.getHttpHost());
+            config.setResponseContentType(XContentType.SMILE);
+            RestHighLevelClient client = EsClientFactory.getClient(config);
+
+            // bulk 请求体只支持 JSON 和 SMILE
+            BulkIngestConfig ingestConfig = new BulkIngestConfig();
+            ingestConfig.setContentType(XContentType.SMILE);
+            try (UserBulkIngester ingester = new UserBulkIngester(client, "user_test", ingestConfig)) {
+                for (long id = 1; id <= 100; id++) {
+                    ingester.add(new User(id, "用户" + id, 18 + (int) (id % 50), id % 3 == 0 ? "女" : "男"));
+                }
+            }
+            // 单文档写入可以使用 CBOR
+            client.index(new IndexRequest("user_test").id("101").setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE)
+                    .source(UserSourceSerializer.toBytesReference(new User(101L, "韩立", 20, "男"), XContentType.CBOR),
+                            XContentType.CBOR), RequestOptions.DEFAULT);
+
+            SearchResponse response = client.search(new SearchRequest("user_test").source(new SearchSourceBuilder()
+                    .query(QueryBuilders.matchAllQuery()).sort("id", SortOrder.ASC).size(200)), RequestOptions.DEFAULT);
+            Assert.assertEquals(101, response.getHits().getTotalHits().value);
+            // 响应为 SMILE，_source 也是 SMILE
+            Assert.assertEquals(':', response.getHits().getAt(0).getSourceRef().get(0));
+            List<User> users = UserHitDecoder.decodeAll(response.getHits());
+            Assert.assertEquals("用户1", users.get(0).getName());
+            Assert.assertEquals(Integer.valueOf(18 + 99 % 50), users.get(98).getAge());
+            Assert.assertEquals("女", users.get(98).getSex());
+            Assert.assertEquals("韩立", users.get(100).getName());
+            UserColumns columns = UserColumns.of(response.getHits());
+            Assert.assertEquals(101, columns.size());
+            Assert.assertEquals("用户1", columns.getName(0));
+            Assert.assertEquals(Integer.valueOf(18 + 99 % 50), columns.getAge(98));
+            Assert.assertEquals("女", columns.getSex(98));
+
+            // 低级客户端自行解析响应的请求仍按 JSON 返回
+            String pitId = PointInTime.open(client, "user_test", TimeValue.timeValueMinutes(1));
+            PointInTime.close(client, pitId);
+
+            // 单个请求可以覆盖默认的 Accept
+            RequestOptions cbor = RequestOptions.DEFAULT.toBuilder().addHeader("Accept", "application/cbor").build();
+            SearchResponse cborResponse = client.search(new SearchRequest("user_test").source(new SearchSourceBuilder()
+                    .query(QueryBuilders.termQuery("id", 101))), cbor);
+            User decoded = UserHitDecoder.decode(cborResponse.getHits().getAt(0));
+            Assert.assertEquals("韩立", decoded.getName());
+            Assert.assertEquals(Integer.valueOf(20), decoded.getAge());
+            Assert.assertEquals("韩立", UserColumns.of(cborResponse.getHits()).getName(0));
+        } finally {
+            EsClientFactory.close("binary");
+        }
+    }
 }
@@ -1,17 +1,42 @@
 package com.lnjecit.elasticsearch;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lnjecit.elasticsearch.analytics.LocalAggregation;
+import com.lnjecit.elasticsearch.analytics.LocalAggregationResults;
+import com.lnjecit.elasticsearch.analytics.LocalAggregations;
+import com.lnjecit.elasticsearch.analytics.LocalAggregator;
+import com.lnjecit.elasticsearch.client.EsClientConfig;
+import com.lnjecit.elasticsearch.client.EsClientFactory;
+import com.lnjecit.elasticsearch.codec.UserHitDecoder;
+import com.lnjecit.elasticsearch.codec.UserSourceSerializer;
 import com.lnjecit.elasticsearch.domain.User;
+import com.lnjecit.elasticsearch.index.IndexManager;
+import com.lnjecit.elasticsearch.search.CachingSearcher;
+import com.lnjecit.elasticsearch.search.FanOutResult;
+import com.lnjecit.elasticsearch.search.FanOutSearcher;
+import com.lnjecit.elasticsearch.search.QueryOptimizer;
+import com.lnjecit.elasticsearch.search.SearchAfterPager;
+import com.lnjecit.elasticsearch.search.SearchTarget;
+import com.lnjecit.elasticsearch.search.SlicedScrollExporter;
+import com.lnjecit.elasticsearch.search.UserQueryTemplates;
+import com.lnjecit.elasticsearch.standin.EsStandInServer;
 import org.apache.http.HttpHost;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.RequestOptions;
-import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.ConstantScoreQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.index.query.TermQueryBuilder;
+import org.elasticsearch.index.query.TermsQueryBuilder;
+import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.aggregations.AggregationBuilder;
@@ -23,37 +48,50 @@ import org.elasticsearch.search.aggregations.metrics.Max;
 import org.elasticsearch.search.aggregations.metrics.ParsedTopHits;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
 import org.elasticsearch.search.sort.SortOrder;
-import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.net.ServerSocket;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 
 public class EsDocSearchTest {
 
     private RestHighLevelClient client;
     public ObjectMapper objectMapper;
     private final static String USER_INDEX = "user_test";
+    /**
+     * 翻页、导出类测试专用的索引，其他测试不会写入，文档恰好是 id 1..100
+     */
+    private final static String USER_PAGE_INDEX = "user_test_page";
+    private final static String CACHE_OTHER_INDEX = "cache_test_other";
 
     @Before
-    public void setUp() {
-        client = new RestHighLevelClient(RestClient.builder(new HttpHost("localhost", 9200, "http")));
-        System.out.println("connect es success");
+    public void setUp() throws IOException {
+        // 默认连接进程内替身，-Des.hosts 指定时连接真实集群
+        client = EsTestSupport.client();
+        EsTestSupport.ensureUsers(client, USER_INDEX);
 
         objectMapper = new ObjectMapper();
     }
 
-    @After
-    public void tearDown() throws IOException {
-        if (client != null) {
-            client.close();
-            System.out.println("close es success");
-        }
-    }
-
     /**
      * 查询全部文档，matchAllQuery
      */
@@ -101,6 +139,46 @@ public class EsDocSearchTest {
         System.out.println("根据名称精确查询文档：一共" + users.size() + "条数据");
     }
 
+    /**
+     * 客户端查询结果缓存：相同查询第二次直接命中缓存，写入后失效
+     */
+    @Test
+    public void testCachedSearch() throws IOException {
+        CachingSearcher searcher = new CachingSearcher(client, 1000, 30, TimeUnit.SECONDS);
+        SearchRequest searchRequest = new SearchRequest(USER_INDEX);
+        searchRequest.source(new SearchSourceBuilder().query(QueryBuilders.termQuery("name.keyword", "韩立")));
+
+        SearchResponse first = searcher.search(searchRequest);
+        SearchResponse searchResponse = searcher.search(searchRequest);
+        System.out.println("缓存查询文档:" + parseUsers(searchResponse.getHits()));
+        System.out.println("缓存命中:" + searcher.getHits() + "，未命中:" + searcher.getMisses());
+        Assert.assertSame(first, searchResponse);
+        Assert.assertEquals(1, searcher.getHits());
+        Assert.assertEquals(1, searcher.getMisses());
+        Assert.assertEquals(1, searcher.size());
+
+        // 写入后该索引的缓存失效；写入测试自己创建的文档，不改动共用的测试数据
+        String id = "cache-" + System.nanoTime();
+        try {
+            searcher.index(new IndexRequest(USER_INDEX).id(id)
+                    .source(UserSourceSerializer.toBytesReference(new User(-1L, "缓存测试", 0, "男")), XContentType.JSON));
+            System.out.println("写入后缓存条数:" + searcher.size());
+            Assert.assertEquals(0, searcher.size());
+
+            // 写入响应确认了 user_test 是具体索引，之后按索引精确失效；通配符查询可能包含任何索引，任意写入都失效
+            searcher.search(searchRequest);
+            searcher.search(new SearchRequest(USER_INDEX + "*").source(searchRequest.source()));
+            Assert.assertEquals(2, searcher.size());
+            searcher.index(new IndexRequest(CACHE_OTHER_INDEX).id(id)
+                    .source(UserSourceSerializer.toBytesReference(new User(-1L, "缓存测试", 0, "男")), XContentType.JSON));
+            Assert.assertEquals(1, searcher.size());
+            Assert.assertSame(searcher.search(searchRequest), searcher.search(searchRequest));
+        } finally {
+            searcher.delete(new DeleteRequest(USER_INDEX, id));
+            new IndexManager(client).deleteIfExists(CACHE_OTHER_INDEX);
+        }
+    }
+
     /**
      * 模糊查询，matchQuery
      */
@@ -170,8 +248,56 @@ public class EsDocSearchTest {
         System.out.println("分页查询文档:" + searchResponse);
         System.out.println("分页查询文档：一共" + searchResponse.getHits().getTotalHits() + "条数据");
 
-        List<User> users = parseUsers(searchResponse.getHits());
-        System.out.println(users);
+        // 延迟解码，遍历到哪条才解码哪条
+        for (User user : UserHitDecoder.lazy(searchResponse.getHits())) {
+            System.out.println(user);
+        }
+    }
+
+    /**
+     * 深分页：search_after + point-in-time，每页代价与第一页相同
+     */
+    @Test
+    public void testSearchAfterPage() throws IOException {
+        EsTestSupport.ensureUsers(client, USER_PAGE_INDEX);
+        try (SearchAfterPager pager = new SearchAfterPager(client, USER_PAGE_INDEX, QueryBuilders.matchAllQuery(),
+                10, TimeValue.timeValueMinutes(1), "id")) {
+            // 第一页
+            List<User> firstPage = pager.nextPage();
+            System.out.println("search_after 第一页:" + firstPage);
+            Assert.assertEquals(10, firstPage.size());
+
+            // 继续遍历剩余全部文档，内存中只保留一页
+            List<User> rest = new ArrayList<>();
+            pager.forEach(rest::add);
+            System.out.println("search_after 遍历剩余文档：一共" + rest.size() + "条数据");
+
+            // 跨页按 id 严格递增：不重复、不跳页，且覆盖全部文档
+            List<User> all = new ArrayList<>(firstPage);
+            all.addAll(rest);
+            Assert.assertEquals(seededIds(), userIds(all));
+            for (int i = 1; i < all.size(); i++) {
+                Assert.assertTrue(all.get(i - 1).getId() < all.get(i).getId());
+            }
+            Assert.assertTrue(pager.nextPage().isEmpty());
+        }
+    }
+
+    /**
+     * 并行 sliced scroll 导出整个索引
+     */
+    @Test
+    public void testSlicedScrollExport() throws IOException {
+        EsTestSupport.ensureUsers(client, USER_PAGE_INDEX);
+        SlicedScrollExporter exporter = new SlicedScrollExporter(client, 4, 4, 50, TimeValue.timeValueMinutes(1));
+        Queue<User> users = new ConcurrentLinkedQueue<>();
+        long total = exporter.export(USER_PAGE_INDEX, QueryBuilders.matchAllQuery(), users::add);
+        System.out.println("sliced scroll 导出全部文档：一共" + total + "条数据");
+
+        // 4 个分片并发导出，既不丢也不重
+        Assert.assertEquals(EsTestSupport.USER_COUNT, total);
+        Assert.assertEquals(EsTestSupport.USER_COUNT, users.size());
+        Assert.assertEquals(seededIds(), userIds(users));
     }
 
     /**
@@ -398,12 +524,238 @@ public class EsDocSearchTest {
         }
     }
 
-    private List<User> parseUsers(SearchHits hits) throws JsonProcessingException {
-        List<User> users = new ArrayList<>(hits.getHits().length);
+    /**
+     * 扇出搜索：同一查询并发发送到两个替身集群和一个不响应的目标，超时的目标被跳过，返回部分结果
+     */
+    @Test
+    public void testFanOutSearch() throws IOException {
+        EsStandInServer clusterA = new EsStandInServer(0).start().seedUsers(USER_INDEX, 7);
+        EsStandInServer clusterB = new EsStandInServer(0).start().seedUsers(USER_INDEX, 7);
+        // 只建立连接、从不响应的目标
+        ServerSocket silent = new ServerSocket(0);
+        try {
+            List<SearchTarget> targets = Arrays.asList(
+                    new SearchTarget("cluster-a", EsClientFactory.getClient(new EsClientConfig("cluster-a", clusterA.getHttpHost())), USER_INDEX),
+                    new SearchTarget("cluster-b", EsClientFactory.getClient(new EsClientConfig("cluster-b", clusterB.getHttpHost())), USER_INDEX),
+                    new SearchTarget("cluster-silent", EsClientFactory.getClient(new EsClientConfig("cluster-silent",
+                            new HttpHost("localhost", silent.getLocalPort()))), USER_INDEX));
+
+            SearchSourceBuilder sourceBuilder = new SearchSourceBuilder()
+                    .query(QueryBuilders.matchAllQuery())
+                    .from(2)
+                    .size(5);
+            long start = System.nanoTime();
+            FanOutResult result = new FanOutSearcher(targets, 500).search(sourceBuilder);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            System.out.println("扇出搜索，耗时:" + elapsedMillis + "ms，失败目标:" + result.getFailures().keySet()
+                    + "，合并结果:" + UserHitDecoder.decodeAll(new SearchHits(result.getHits().toArray(new SearchHit[0]), null, 1.0f)));
+
+            Assert.assertTrue(result.isPartial());
+            Assert.assertEquals(Collections.singleton("cluster-silent"), result.getFailures().keySet());
+            Assert.assertEquals(5, result.getHits().size());
+            Assert.assertEquals(14, result.getTotalHits());
+            Assert.assertTrue(elapsedMillis < 2_000);
+
+            // 名称重复时结果会互相覆盖，构造时拒绝
+            try {
+                new FanOutSearcher(Arrays.asList(targets.get(0), new SearchTarget("cluster-a", targets.get(1).getClient(), USER_INDEX)), 500);
+                Assert.fail("duplicate target names should be rejected");
+            } catch (IllegalArgumentException e) {
+                Assert.assertTrue(e.getMessage().contains("cluster-a"));
+            }
+        } finally {
+            EsClientFactory.close("cluster-a");
+            EsClientFactory.close("cluster-b");
+            EsClientFactory.close("cluster-silent");
+            silent.close();
+            clusterA.close();
+            clusterB.close();
+        }
+    }
+
+    /**
+     * 扇出结果的归并顺序与 es 一致：缺失值在升序、降序时都排在最后，int 与 long 的排序值按数值比较
+     */
+    @Test
+    public void testFanOutMergeOrder() {
+        List<SearchHit> hits = new ArrayList<>(Arrays.asList(sortedHit(0, 5), sortedHit(1, null), sortedHit(2, 10_000_000_000L), sortedHit(3, 7L)));
+        List<SortBuilder<?>> desc = Collections.singletonList(SortBuilders.fieldSort("id").order(SortOrder.DESC));
+        hits.sort(FanOutSearcher.comparator(desc));
+        Assert.assertEquals(Arrays.asList(2, 3, 0, 1), docIds(hits));
+
+        List<SortBuilder<?>> asc = Collections.singletonList(SortBuilders.fieldSort("id").order(SortOrder.ASC));
+        hits.sort(FanOutSearcher.comparator(asc));
+        Assert.assertEquals(Arrays.asList(0, 3, 2, 1), docIds(hits));
+
+        List<SortBuilder<?>> missingFirst = Collections.singletonList(SortBuilders.fieldSort("id").order(SortOrder.DESC).missing("_first"));
+        hits.sort(FanOutSearcher.comparator(missingFirst));
+        Assert.assertEquals(Arrays.asList(1, 2, 3, 0), docIds(hits));
+    }
+
+    private static SearchHit sortedHit(int docId, Object sortValue) {
+        SearchHit hit = new SearchHit(docId);
+        hit.sortValues(new Object[]{sortValue}, new DocValueFormat[]{DocValueFormat.RAW});
+        return hit;
+    }
+
+    private static List<Integer> docIds(List<SearchHit> hits) {
+        List<Integer> ids = new ArrayList<>(hits.size());
         for (SearchHit hit : hits) {
-            users.add(objectMapper.readValue(hit.getSourceAsString(), User.class));
+            ids.add(hit.docId());
         }
-        return users;
+        return ids;
+    }
+
+    /**
+     * 查询改写：精确条件移到 filter，同一字段的 should term 合并为 terms，不参与打分
+     */
+    @Test
+    public void testQueryOptimizer() {
+        // and：两个 must term 都移到 filter
+        BoolQueryBuilder and = (BoolQueryBuilder) QueryOptimizer.optimize(QueryBuilders.boolQuery()
+                .must(QueryBuilders.termQuery("name.keyword", "韩立"))
+                .must(QueryBuilders.termQuery("age", "35")));
+        System.out.println("改写 and 查询:" + and);
+        Assert.assertTrue(and.must().isEmpty());
+        Assert.assertEquals(2, and.filter().size());
+
+        // or：同一字段的 should term 合并为一个 terms，放到 filter
+        BoolQueryBuilder or = (BoolQueryBuilder) QueryOptimizer.optimize(QueryBuilders.boolQuery()
+                .should(QueryBuilders.termQuery("age", "32"))
+                .should(QueryBuilders.termQuery("age", "18")));
+        System.out.println("改写 or 查询:" + or);
+        Assert.assertTrue(or.should().isEmpty());
+        TermsQueryBuilder terms = (TermsQueryBuilder) or.filter().get(0);
+        Assert.assertEquals(Arrays.asList("32", "18"), terms.values());
+
+        // 顶层 range 包进 constant_score
+        QueryBuilder range = QueryOptimizer.optimize(QueryBuilders.rangeQuery("age").gt(30).lte(40));
+        Assert.assertTrue(range instanceof ConstantScoreQueryBuilder);
+
+        // 全文条件保留在 must 参与打分，should 在有 must 时只影响打分，保持不变
+        BoolQueryBuilder mixed = (BoolQueryBuilder) QueryOptimizer.optimize(QueryBuilders.boolQuery()
+                .must(QueryBuilders.matchQuery("name", "紫"))
+                .must(QueryBuilders.rangeQuery("age").gte(18))
+                .should(QueryBuilders.termQuery("sex", "女"))
+                .should(QueryBuilders.termQuery("sex", "男")));
+        System.out.println("改写混合查询:" + mixed);
+        Assert.assertEquals(1, mixed.must().size());
+        Assert.assertEquals(1, mixed.filter().size());
+        Assert.assertEquals(2, mixed.should().size());
+
+        // 显式设置了 boost 的精确条件保留在 must/should 参与打分
+        BoolQueryBuilder boosted = (BoolQueryBuilder) QueryOptimizer.optimize(QueryBuilders.boolQuery()
+                .must(QueryBuilders.termQuery("name.keyword", "韩立").boost(2.0f))
+                .must(QueryBuilders.termQuery("age", "35")));
+        System.out.println("改写带 boost 的查询:" + boosted);
+        Assert.assertEquals(1, boosted.must().size());
+        Assert.assertEquals(2.0f, boosted.must().get(0).boost(), 0.0f);
+        Assert.assertEquals(1, boosted.filter().size());
+        BoolQueryBuilder boostedOr = (BoolQueryBuilder) QueryOptimizer.optimize(QueryBuilders.boolQuery()
+                .should(QueryBuilders.termQuery("age", "32").boost(3.0f))
+                .should(QueryBuilders.termQuery("age", "18")));
+        Assert.assertEquals(2, boostedOr.should().size());
+        Assert.assertTrue(boostedOr.filter().isEmpty());
+        Assert.assertTrue(QueryOptimizer.optimize(QueryBuilders.termQuery("age", 35).boost(2.0f)) instanceof TermQueryBuilder);
+
+        SearchSourceBuilder sourceBuilder = QueryOptimizer.optimize(new SearchSourceBuilder().query(QueryBuilders.termQuery("age", 35)), false);
+        Assert.assertEquals(SearchContext.TRACK_TOTAL_HITS_DISABLED, sourceBuilder.trackTotalHitsUpTo().intValue());
+    }
+
+    /**
+     * 查询模板：请求体预先渲染并存储到服务端，每次查询只发送模板 id 和参数
+     */
+    @Test
+    public void testQueryTemplates() throws IOException {
+        UserQueryTemplates templates = new UserQueryTemplates(client, USER_INDEX);
+        templates.store();
+
+        System.out.println("模板查询，按姓名精确查询:" + parseUsers(templates.userByName("韩立").getHits()));
+        System.out.println("模板查询，年龄范围:" + parseUsers(templates.ageRange(20, 30).getHits()));
+
+        SearchResponse highlightResponse = templates.nameMatchWithHighlight("路");
+        for (SearchHit hit : highlightResponse.getHits().getHits()) {
+            System.out.println("模板查询，高亮:" + hit.getHighlightFields().get("name").fragments()[0]);
+        }
+
+        ParsedTerms groupByAge = templates.ageBucketCounts().getAggregations().get("age_group");
+        for (Terms.Bucket bucket : groupByAge.getBuckets()) {
+            System.out.printf("模板查询，年龄: %2d 岁 -> 用户数量: %d 人%n", ((Number) bucket.getKey()).intValue(), bucket.getDocCount());
+        }
+    }
+
+    /**
+     * 本地聚合：把文档拉到内存中计算 max、terms、top_hits，与服务端聚合结果对比
+     */
+    @Test
+    public void testLocalAggregations() throws IOException {
+        String ageFieldName = "age";
+        SearchSourceBuilder sourceBuilder = new SearchSourceBuilder();
+        sourceBuilder.query(QueryBuilders.matchAllQuery());
+        sourceBuilder.size(1000);
+        sourceBuilder.aggregation(AggregationBuilders.max("max_age").field(ageFieldName));
+        sourceBuilder.aggregation(AggregationBuilders.terms("age_group").field(ageFieldName).size(1000).order(BucketOrder.key(true)));
+        sourceBuilder.aggregation(AggregationBuilders.topHits("oldest_user").size(1).sort(ageFieldName, SortOrder.DESC));
+
+        SearchResponse searchResponse = client.search(new SearchRequest(USER_INDEX).source(sourceBuilder), RequestOptions.DEFAULT);
+        List<User> users = parseUsers(searchResponse.getHits());
+
+        LocalAggregation<?, Double> maxAge = LocalAggregations.max("max_age", User::getAge);
+        LocalAggregation<?, SortedMap<Integer, Long>> ageGroup = LocalAggregations.terms("age_group", User::getAge, 1000);
+        LocalAggregation<?, List<User>> oldestUser = LocalAggregations.topHits("oldest_user",
+                Comparator.comparing(User::getAge, Comparator.nullsLast(Comparator.reverseOrder())), 1);
+        LocalAggregationResults results = new LocalAggregator().aggregate(users, maxAge, ageGroup, oldestUser);
+        System.out.println("本地聚合：最大年龄 " + results.get(maxAge) + "，年龄分组 " + results.get(ageGroup)
+                + "，年龄最大的用户 " + results.get(oldestUser));
+
+        Max serverMaxAge = searchResponse.getAggregations().get("max_age");
+        Assert.assertEquals(serverMaxAge.getValue(), results.get(maxAge), 0.0);
+
+        ParsedTerms serverAgeGroup = searchResponse.getAggregations().get("age_group");
+        SortedMap<Integer, Long> expected = new TreeMap<>();
+        for (Terms.Bucket bucket : serverAgeGroup.getBuckets()) {
+            expected.put(((Number) bucket.getKey()).intValue(), bucket.getDocCount());
+        }
+        Assert.assertEquals(expected, results.get(ageGroup));
+
+        ParsedTopHits serverOldestUser = searchResponse.getAggregations().get("oldest_user");
+        Assert.assertEquals(parseUsers(serverOldestUser.getHits()).get(0).getAge(), results.get(oldestUser).get(0).getAge());
+    }
+
+    /**
+     * 从 _source 字节解码 User，与序列化结果互为逆操作
+     */
+    @Test
+    public void testUserHitDecoder() throws IOException {
+        User user = new User(2L, "韩立", 35, "男");
+        SearchHit hit = new SearchHit(2).sourceRef(UserSourceSerializer.toBytesReference(user));
+        SearchHits hits = new SearchHits(new SearchHit[]{hit, new SearchHit(3)}, null, 1.0f);
+
+        List<User> users = parseUsers(hits);
+        Assert.assertEquals(1, users.size());
+        Assert.assertEquals(user.toString(), users.get(0).toString());
+        Assert.assertEquals(user.toString(), UserHitDecoder.lazy(hits).iterator().next().toString());
+    }
+
+    private static Set<Long> seededIds() {
+        Set<Long> ids = new TreeSet<>();
+        for (long id = 1; id <= EsTestSupport.USER_COUNT; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private static Set<Long> userIds(Collection<User> users) {
+        Set<Long> ids = new TreeSet<>();
+        for (User user : users) {
+            ids.add(user.getId());
+        }
+        return ids;
+    }
+
+    private List<User> parseUsers(SearchHits hits) throws IOException {
+        // 直接从 _source 字节解码，不经过 getSourceAsString
+        return UserHitDecoder.decodeAll(hits);
     }
 
 }
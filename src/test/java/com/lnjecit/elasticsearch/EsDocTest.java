@@ -1,8 +1,16 @@
 package com.lnjecit.elasticsearch;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lnjecit.elasticsearch.batch.RequestCoalescer;
+import com.lnjecit.elasticsearch.bulk.BulkIngestConfig;
+import com.lnjecit.elasticsearch.bulk.BulkRetryExecutor;
+import com.lnjecit.elasticsearch.bulk.JitteredBackoffPolicy;
+import com.lnjecit.elasticsearch.bulk.UserBulkIngester;
+import com.lnjecit.elasticsearch.bulk.UserUpdateCoalescer;
+import com.lnjecit.elasticsearch.client.AsyncUserClient;
+import com.lnjecit.elasticsearch.codec.UserSourceSerializer;
 import com.lnjecit.elasticsearch.domain.User;
-import org.apache.http.HttpHost;
+import org.elasticsearch.action.DocWriteResponse;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
@@ -11,20 +19,29 @@ import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.support.WriteRequest;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.RequestOptions;
-import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentType;
-import org.junit.After;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class EsDocTest {
     private RestHighLevelClient client;
@@ -32,21 +49,14 @@ public class EsDocTest {
     private final static String USER_INDEX = "user_test";
 
     @Before
-    public void setUp() {
-        client = new RestHighLevelClient(RestClient.builder(new HttpHost("localhost", 9200, "http")));
-        System.out.println("connect es success");
+    public void setUp() throws IOException {
+        // 默认连接进程内替身，-Des.hosts 指定时连接真实集群
+        client = EsTestSupport.client();
+        EsTestSupport.ensureUsers(client, USER_INDEX);
 
         objectMapper = new ObjectMapper();
     }
 
-    @After
-    public void tearDown() throws IOException {
-        if (client != null) {
-            client.close();
-            System.out.println("close es success");
-        }
-    }
-
     @Test
     public void testCreateDoc() throws Exception {
         IndexRequest request = new IndexRequest(USER_INDEX);
@@ -73,6 +83,65 @@ public class EsDocTest {
         System.out.println("查询文档结果:" + response.getSourceAsString());
     }
 
+    /**
+     * 并发的按 id 查询合并成一个 mget 发送
+     */
+    @Test
+    public void testCoalescedGetDoc() throws Exception {
+        client.index(new IndexRequest(USER_INDEX).id("301").setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE)
+                .source(UserSourceSerializer.toBytesReference(new User(301L, "王林", 18, "男")), XContentType.JSON), RequestOptions.DEFAULT);
+        try (RequestCoalescer coalescer = new RequestCoalescer(client, 5, 100)) {
+            List<CompletableFuture<GetResponse>> futures = new ArrayList<>();
+            for (int id = 1; id <= 10; id++) {
+                futures.add(coalescer.get(new GetRequest(USER_INDEX, String.valueOf(id))));
+            }
+            // realtime、preference 不同的请求单独成组，版本校验随条目发送
+            CompletableFuture<GetResponse> nonRealtime = coalescer.get(new GetRequest(USER_INDEX, "301").realtime(false));
+            CompletableFuture<GetResponse> wrongVersion = coalescer.get(new GetRequest(USER_INDEX, "301").version(999_999));
+            for (CompletableFuture<GetResponse> future : futures) {
+                System.out.println("合并查询文档结果:" + future.get().getSourceAsString());
+            }
+            Assert.assertEquals("王林", nonRealtime.get().getSourceAsMap().get("name"));
+            try {
+                wrongVersion.get();
+                Assert.fail("version conflict expected");
+            } catch (ExecutionException e) {
+                // mget 的单条失败不带状态码，按异常类型判断
+                Assert.assertTrue(e.getCause().getMessage().contains("version_conflict_engine_exception"));
+            }
+        }
+
+        // close 之后的请求立即失败，不会滞留在缓冲区里
+        RequestCoalescer closed = new RequestCoalescer(client, 5, 100);
+        closed.close();
+        List<CompletableFuture<?>> rejected = Arrays.asList(
+                closed.get(new GetRequest(USER_INDEX, "301")), closed.search(new SearchRequest(USER_INDEX)));
+        for (CompletableFuture<?> future : rejected) {
+            try {
+                future.get(1, TimeUnit.SECONDS);
+                Assert.fail("request after close should fail");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+    }
+
+    /**
+     * 异步 API：多个请求同时在途，通过 CompletableFuture 组合结果
+     */
+    @Test
+    public void testAsyncDoc() throws Exception {
+        AsyncUserClient asyncClient = new AsyncUserClient(client, USER_INDEX);
+        CompletableFuture<User> user1 = asyncClient.get("1");
+        CompletableFuture<User> user2 = asyncClient.get("2");
+        String names = user1.thenCombine(user2, (u1, u2) -> u1 + ", " + u2).get(10, TimeUnit.SECONDS);
+        System.out.println("异步查询文档结果:" + names);
+
+        List<User> users = asyncClient.search(new SearchSourceBuilder().query(QueryBuilders.matchQuery("name", "韩")))
+                .get(10, TimeUnit.SECONDS);
+        System.out.println("异步搜索文档结果:" + users);
+    }
+
     @Test
     public void testUpdateDoc() throws IOException {
         Long id = 1L;
@@ -89,6 +158,89 @@ public class EsDocTest {
         System.out.println("更新文档结果:" + response);
     }
 
+    /**
+     * 热点文档的更新在窗口内按字段合并，通过 bulk 发送，最终结果与逐个更新一致
+     */
+    @Test
+    public void testCoalescedUpdates() throws Exception {
+        List<String> hotIds = Arrays.asList("201", "202");
+        for (String id : hotIds) {
+            User user = new User(Long.valueOf(id), "王林", 18, "男");
+            client.index(new IndexRequest(USER_INDEX).id(id)
+                    .source(UserSourceSerializer.toBytesReference(user), XContentType.JSON), RequestOptions.DEFAULT);
+        }
+
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        try (UserUpdateCoalescer coalescer = new UserUpdateCoalescer(client, USER_INDEX, 50, 100)) {
+            for (int i = 0; i < 200; i++) {
+                User change = new User();
+                change.setId(Long.valueOf(hotIds.get(i % hotIds.size())));
+                // 年龄每次都改，姓名只偶尔改
+                change.setAge(20 + i);
+                if (i % 10 == 0) {
+                    change.setName("韩立" + i);
+                }
+                futures.add(coalescer.update(change));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+            System.out.println("合并更新，提交:" + coalescer.getReceived() + "，发送:" + coalescer.getSent());
+            Assert.assertTrue(coalescer.getSent() < coalescer.getReceived() / 10);
+        }
+
+        GetResponse first = client.get(new GetRequest(USER_INDEX, "201"), RequestOptions.DEFAULT);
+        GetResponse second = client.get(new GetRequest(USER_INDEX, "202"), RequestOptions.DEFAULT);
+        System.out.println("合并更新后的文档:" + first.getSourceAsString() + "，" + second.getSourceAsString());
+        Assert.assertEquals(218, first.getSource().get("age"));
+        Assert.assertEquals("韩立190", first.getSource().get("name"));
+        Assert.assertEquals(219, second.getSource().get("age"));
+        Assert.assertEquals("王林", second.getSource().get("name"));
+        Assert.assertEquals("男", second.getSource().get("sex"));
+    }
+
+    /**
+     * 在更新结果的回调中 flush/close 不会死锁，close 之后的更新立即失败
+     */
+    @Test
+    public void testCoalescedUpdateLifecycle() throws Exception {
+        client.index(new IndexRequest(USER_INDEX).id("203").source(UserSourceSerializer.toBytesReference(
+                new User(203L, "王林", 18, "男")), XContentType.JSON), RequestOptions.DEFAULT);
+
+        // 不在测试线程上 flush，由窗口定时发送，回调死锁时 get 超时而不是卡住测试
+        UserUpdateCoalescer coalescer = new UserUpdateCoalescer(client, USER_INDEX, 50, 100);
+        User change = new User();
+        change.setId(203L);
+        change.setAge(30);
+        CompletableFuture<DocWriteResponse> second = new CompletableFuture<>();
+        // 回调运行在发送线程上
+        CompletableFuture<Void> chained = coalescer.update(change).thenRun(() -> {
+            change.setAge(31);
+            coalescer.update(change).whenComplete((response, e) -> {
+                if (e == null) {
+                    second.complete(response);
+                } else {
+                    second.completeExceptionally(e);
+                }
+            });
+            coalescer.flush();
+        });
+        chained.get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(second.isDone());
+
+        change.setAge(32);
+        CompletableFuture<Void> closed = coalescer.update(change).thenRun(coalescer::close);
+        closed.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(32, client.get(new GetRequest(USER_INDEX, "203"), RequestOptions.DEFAULT).getSource().get("age"));
+
+        CompletableFuture<DocWriteResponse> rejected = coalescer.update(change);
+        try {
+            rejected.get(1, TimeUnit.SECONDS);
+            Assert.fail("update after close should fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertEquals(3, coalescer.getReceived());
+    }
+
     @Test
     public void testDeleteDoc() throws IOException {
         DeleteRequest request = new DeleteRequest(USER_INDEX, "1");
@@ -104,12 +256,31 @@ public class EsDocTest {
         for (User user : users) {
             IndexRequest indexRequest = new IndexRequest(USER_INDEX);
             indexRequest.id(user.getId().toString());
-            indexRequest.source(objectMapper.writeValueAsString(user), XContentType.JSON);
+            // 直接编码为 UTF-8 字节，不经过中间 String
+            indexRequest.source(UserSourceSerializer.toBytesReference(user), XContentType.JSON);
             bulkRequest.add(indexRequest);
         }
 
-        BulkResponse bulkResponse = client.bulk(bulkRequest, RequestOptions.DEFAULT);
-        System.out.println("批量创建文档结果:" + bulkResponse.getItems().length);
+        // 只重发被拒绝的条目
+        BulkResponse bulkResponse = new BulkRetryExecutor(client).bulk(bulkRequest);
+        System.out.println("批量创建文档结果:" + bulkResponse.getItems().length + "，失败:" + BulkRetryExecutor.countFailed(bulkResponse));
+    }
+
+    /**
+     * 分批写入：按数量/大小/时间刷新，多个 bulk 并发在途
+     */
+    @Test
+    public void testBulkIngestUsers() {
+        BulkIngestConfig config = new BulkIngestConfig();
+        config.setBulkActions(20);
+        config.setConcurrentRequests(2);
+
+        UserBulkIngester ingester = new UserBulkIngester(client, USER_INDEX, config,
+                stats -> System.out.println("批量写入批次:" + stats));
+        ingester.addAll(prepareUsers());
+        // 发送剩余文档并等待在途请求完成
+        ingester.close();
+        System.out.println("批量写入结果，成功:" + ingester.getSucceeded() + "，失败:" + ingester.getFailed());
     }
 
     @Test
@@ -121,8 +292,78 @@ public class EsDocTest {
             bulkRequest.add(deleteRequest);
         }
 
-        BulkResponse bulkResponse = client.bulk(bulkRequest, RequestOptions.DEFAULT);
-        System.out.println("批量删除文档结果:" + bulkResponse.getItems().length);
+        BulkResponse bulkResponse = new BulkRetryExecutor(client).bulk(bulkRequest);
+        System.out.println("批量删除文档结果:" + bulkResponse.getItems().length + "，失败:" + BulkRetryExecutor.countFailed(bulkResponse));
+    }
+
+    /**
+     * 专用序列化器输出与 ObjectMapper 一致，且每个文档分配的内存更少
+     */
+    @Test
+    public void testUserSourceSerializer() throws IOException {
+        List<User> users = prepareUsers();
+        users.add(new User(101L, "\"引号\"\n\\", null, null));
+        for (User user : users) {
+            Assert.assertEquals(objectMapper.writeValueAsString(user),
+                    new String(UserSourceSerializer.toBytes(user), StandardCharsets.UTF_8));
+        }
+
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int rounds = 2000;
+        // 预热
+        for (int i = 0; i < rounds; i++) {
+            buildWithObjectMapper(users);
+            buildWithSerializer(users);
+        }
+
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < rounds; i++) {
+            buildWithObjectMapper(users);
+        }
+        long objectMapperBytes = (threadMXBean.getThreadAllocatedBytes(threadId) - before) / ((long) rounds * users.size());
+
+        before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < rounds; i++) {
+            buildWithSerializer(users);
+        }
+        long serializerBytes = (threadMXBean.getThreadAllocatedBytes(threadId) - before) / ((long) rounds * users.size());
+
+        System.out.println("每个文档分配字节数，ObjectMapper:" + objectMapperBytes + "，UserSourceSerializer:" + serializerBytes);
+        Assert.assertTrue(serializerBytes < objectMapperBytes);
+    }
+
+    private BulkRequest buildWithObjectMapper(List<User> users) throws IOException {
+        BulkRequest bulkRequest = new BulkRequest();
+        for (User user : users) {
+            bulkRequest.add(new IndexRequest(USER_INDEX).id(user.getId().toString())
+                    .source(objectMapper.writeValueAsString(user), XContentType.JSON));
+        }
+        return bulkRequest;
+    }
+
+    private BulkRequest buildWithSerializer(List<User> users) {
+        BulkRequest bulkRequest = new BulkRequest();
+        for (User user : users) {
+            bulkRequest.add(new IndexRequest(USER_INDEX).id(user.getId().toString())
+                    .source(UserSourceSerializer.toBytesReference(user), XContentType.JSON));
+        }
+        return bulkRequest;
+    }
+
+    /**
+     * 退避时间在 [0, min(max, initial * 2^n)] 范围内，次数不超过重试预算
+     */
+    @Test
+    public void testJitteredBackoff() {
+        JitteredBackoffPolicy policy = new JitteredBackoffPolicy(50, 400, 6);
+        int retries = 0;
+        for (TimeValue delay : policy) {
+            long ceiling = Math.min(400, 50L << retries);
+            Assert.assertTrue(delay.millis() >= 0 && delay.millis() <= ceiling);
+            retries++;
+        }
+        Assert.assertEquals(6, retries);
     }
 
     private List<User> prepareUsers() {
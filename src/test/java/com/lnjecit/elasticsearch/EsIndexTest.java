@@ -1,44 +1,48 @@
 package com.lnjecit.elasticsearch;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.http.HttpHost;
+import com.lnjecit.elasticsearch.bulk.BulkIngestConfig;
+import com.lnjecit.elasticsearch.bulk.UserBulkIngester;
+import com.lnjecit.elasticsearch.domain.User;
+import com.lnjecit.elasticsearch.index.AliasReindexer;
+import com.lnjecit.elasticsearch.index.BulkLoadMode;
+import com.lnjecit.elasticsearch.index.IndexManager;
+import com.lnjecit.elasticsearch.search.SlicedScrollExporter;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
 import org.elasticsearch.action.support.master.AcknowledgedResponse;
 import org.elasticsearch.client.RequestOptions;
-import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.core.CountRequest;
 import org.elasticsearch.client.indices.CreateIndexRequest;
 import org.elasticsearch.client.indices.CreateIndexResponse;
 import org.elasticsearch.client.indices.GetIndexRequest;
 import org.elasticsearch.client.indices.GetIndexResponse;
-import org.junit.After;
+import org.elasticsearch.common.unit.TimeValue;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class EsIndexTest {
 
     private RestHighLevelClient client;
     public ObjectMapper objectMapper;
     private final static String USER_INDEX = "user_test";
+    private final static String USER_MAPPING_INDEX = "user_test_mapping";
+    private final static String USER_ALIAS = "user_test_alias";
 
     @Before
     public void setUp() {
-        client = new RestHighLevelClient(RestClient.builder(new HttpHost("localhost", 9200, "http")));
-        System.out.println("connect es success");
+        // 默认连接进程内替身，-Des.hosts 指定时连接真实集群
+        client = EsTestSupport.client();
 
         objectMapper = new ObjectMapper();
     }
 
-    @After
-    public void tearDown() throws IOException {
-        if (client != null) {
-            client.close();
-            System.out.println("close es success");
-        }
-    }
-
     @Test
     public void testCreateIndex() throws Exception {
         boolean exists = client.indices().exists(new GetIndexRequest(USER_INDEX), RequestOptions.DEFAULT);
@@ -66,5 +70,107 @@ public class EsIndexTest {
         System.out.println("删除索引:" + objectMapper.writeValueAsString(deleteIndexResponse.isAcknowledged()));
     }
 
+    /**
+     * 按 User 的显式 mapping 创建索引：age 为 integer，sex 为 keyword，name 为 text + name.keyword
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCreateUserIndexWithMappings() throws Exception {
+        IndexManager indexManager = new IndexManager(client);
+        indexManager.deleteIfExists(USER_MAPPING_INDEX);
+        boolean acknowledged = indexManager.createUserIndex(USER_MAPPING_INDEX, 1, 1);
+        System.out.println("按显式 mapping 创建索引:" + acknowledged);
+
+        GetIndexResponse getIndexResponse = client.indices().get(new GetIndexRequest(USER_MAPPING_INDEX), RequestOptions.DEFAULT);
+        Map<String, Object> properties = (Map<String, Object>) getIndexResponse.getMappings().get(USER_MAPPING_INDEX).sourceAsMap().get("properties");
+        System.out.println("查询索引,mappings:" + objectMapper.writeValueAsString(properties));
+        Assert.assertEquals("integer", ((Map<String, Object>) properties.get("age")).get("type"));
+        Assert.assertEquals("keyword", ((Map<String, Object>) properties.get("sex")).get("type"));
+
+        indexManager.deleteIfExists(USER_MAPPING_INDEX);
+    }
+
+    /**
+     * 批量导入模式：导入期间 refresh_interval=-1、副本数 0，结束后恢复原设置并段合并
+     */
+    @Test
+    public void testBulkLoadMode() throws Exception {
+        IndexManager indexManager = new IndexManager(client);
+        indexManager.deleteIfExists(USER_MAPPING_INDEX);
+        indexManager.createUserIndex(USER_MAPPING_INDEX, 1, 1);
+
+        BulkIngestConfig config = new BulkIngestConfig();
+        config.setBulkActions(500);
+        UserBulkIngester ingester = new UserBulkIngester(client, USER_MAPPING_INDEX, config);
+        try (BulkLoadMode bulkLoad = indexManager.beginBulkLoad(USER_MAPPING_INDEX)) {
+            Assert.assertEquals("-1", indexManager.getSetting(bulkLoad.getIndex(), "index.refresh_interval"));
+            Assert.assertEquals("0", indexManager.getSetting(bulkLoad.getIndex(), "index.number_of_replicas"));
+            for (long id = 1; id <= 2000; id++) {
+                ingester.add(new User(id, "用户" + id, 18 + (int) (id % 50), id % 2 == 0 ? "女" : "男"));
+            }
+            ingester.close();
+        }
+        System.out.println("批量导入结果，成功:" + ingester.getSucceeded() + "，失败:" + ingester.getFailed());
+
+        Assert.assertNull(indexManager.getSetting(USER_MAPPING_INDEX, "index.refresh_interval"));
+        Assert.assertEquals("1", indexManager.getSetting(USER_MAPPING_INDEX, "index.number_of_replicas"));
+        long count = client.count(new CountRequest(USER_MAPPING_INDEX), RequestOptions.DEFAULT).getCount();
+        Assert.assertEquals(2000, count);
+
+        indexManager.deleteIfExists(USER_MAPPING_INDEX);
+    }
+
+    /**
+     * 基于别名重建索引：重建期间持续查询别名，不应出现失败或查不到数据
+     */
+    @Test
+    public void testReindexWithAlias() throws Exception {
+        IndexManager indexManager = new IndexManager(client);
+        // 先用普通索引模拟还没有使用别名的 user_test
+        indexManager.deleteIfExists(USER_ALIAS + "_v*");
+        indexManager.deleteIfExists(USER_ALIAS);
+        indexManager.createUserIndex(USER_ALIAS, 1, 0);
+        UserBulkIngester ingester = new UserBulkIngester(client, USER_ALIAS, new BulkIngestConfig());
+        for (long id = 1; id <= 2000; id++) {
+            ingester.add(new User(id, "用户" + id, 18 + (int) (id % 50), id % 2 == 0 ? "女" : "男"));
+        }
+        ingester.close();
+        indexManager.refresh(USER_ALIAS);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong searches = new AtomicLong();
+        AtomicLong misses = new AtomicLong();
+        Thread searcher = new Thread(() -> {
+            while (running.get()) {
+                try {
+                    long count = client.count(new CountRequest(USER_ALIAS), RequestOptions.DEFAULT).getCount();
+                    if (count != 2000) {
+                        misses.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    misses.incrementAndGet();
+                }
+                searches.incrementAndGet();
+            }
+        });
+        searcher.start();
+
+        AliasReindexer reindexer = new AliasReindexer(client,
+                new SlicedScrollExporter(client, 2, 2, 500, TimeValue.timeValueMinutes(1)), new BulkIngestConfig());
+        reindexer.setReplicas(0);
+        reindexer.setDeleteOldIndices(true);
+        String v1 = reindexer.reindex(USER_ALIAS);
+        String v2 = reindexer.reindex(USER_ALIAS);
+        running.set(false);
+        searcher.join();
+        System.out.println("重建索引:" + v1 + " -> " + v2 + "，期间查询 " + searches.get() + " 次，异常 " + misses.get() + " 次");
+
+        Assert.assertEquals(USER_ALIAS + "_v2", v2);
+        Assert.assertEquals(Collections.singletonList(v2), reindexer.aliasedIndices(USER_ALIAS));
+        Assert.assertFalse(indexManager.exists(v1));
+        Assert.assertEquals(0, misses.get());
+
+        indexManager.deleteIfExists(v2);
+    }
 
 }
@@ -0,0 +1,73 @@
+package com.lnjecit.elasticsearch;
+
+import com.lnjecit.elasticsearch.client.EsClientConfig;
+import com.lnjecit.elasticsearch.client.EsClientFactory;
+import com.lnjecit.elasticsearch.load.LoadGenerator;
+import com.lnjecit.elasticsearch.load.LoadOperation;
+import com.lnjecit.elasticsearch.load.LoadReport;
+import com.lnjecit.elasticsearch.load.LoadTestConfig;
+import com.lnjecit.elasticsearch.standin.EsStandInServer;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * 压测：对进程内替身服务执行混合负载，不需要启动 es
+ */
+public class EsLoadTest {
+
+    private EsStandInServer server;
+    private RestHighLevelClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new EsStandInServer(0).start().seedUsers("user_test", 100);
+        client = EsClientFactory.getClient(new EsClientConfig("load-test", server.getHttpHost()));
+    }
+
+    @After
+    public void tearDown() {
+        EsClientFactory.close("load-test");
+        server.close();
+    }
+
+    /**
+     * 不限速，混合负载
+     */
+    @Test
+    public void testMixedLoad() throws InterruptedException {
+        LoadTestConfig config = new LoadTestConfig();
+        config.setConcurrency(4);
+        config.setWarmupMillis(500);
+        config.setDurationMillis(2_000);
+
+        LoadReport report = new LoadGenerator(client, config).run();
+        System.out.println("混合负载压测结果:\n" + report);
+        Assert.assertTrue(report.getTotalCount() > 0);
+        Assert.assertEquals(0, report.getTotalErrors());
+    }
+
+    /**
+     * 限速：只压测按 id 查询
+     */
+    @Test
+    public void testRateLimitedGet() throws InterruptedException {
+        LoadTestConfig config = new LoadTestConfig();
+        config.getWeights().clear();
+        config.setWeight(LoadOperation.GET, 1);
+        config.setRatePerSecond(200);
+        config.setConcurrency(4);
+        config.setWarmupMillis(0);
+        config.setDurationMillis(1_000);
+
+        LoadReport report = new LoadGenerator(client, config).run();
+        System.out.println("限速压测结果:\n" + report);
+        // 计划发送 200 次
+        Assert.assertEquals(200, report.getStats().get(LoadOperation.GET).getCount());
+    }
+
+}
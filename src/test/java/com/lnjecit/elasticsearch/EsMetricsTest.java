@@ -0,0 +1,79 @@
+package com.lnjecit.elasticsearch;
+
+import com.lnjecit.elasticsearch.client.EsClientConfig;
+import com.lnjecit.elasticsearch.client.EsClientFactory;
+import com.lnjecit.elasticsearch.codec.UserSourceSerializer;
+import com.lnjecit.elasticsearch.domain.User;
+import com.lnjecit.elasticsearch.metrics.EsMetrics;
+import com.lnjecit.elasticsearch.metrics.HdrMetricsRegistry;
+import com.lnjecit.elasticsearch.metrics.InstrumentedClient;
+import com.lnjecit.elasticsearch.standin.EsStandInServer;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 客户端指标：对进程内替身服务执行操作，检查记录的延迟、字节数和连接池状态
+ */
+public class EsMetricsTest {
+
+    private final static String USER_INDEX = "user_test";
+    private EsStandInServer server;
+    private HdrMetricsRegistry registry;
+    private InstrumentedClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new EsStandInServer(0).start();
+        registry = new HdrMetricsRegistry();
+        EsClientConfig config = new EsClientConfig("metrics-test", server.getHttpHost());
+        config.setMetricsRegistry(registry);
+        client = new InstrumentedClient(EsClientFactory.getClient(config), registry);
+    }
+
+    @After
+    public void tearDown() {
+        EsClientFactory.close("metrics-test");
+        server.close();
+    }
+
+    @Test
+    public void testInstrumentedCalls() throws IOException {
+        User user = new User(1L, "王林", 28, "男");
+        client.index(new IndexRequest(USER_INDEX).id("1").source(UserSourceSerializer.toBytesReference(user), XContentType.JSON));
+        client.get(new GetRequest(USER_INDEX, "1"));
+
+        BulkRequest bulkRequest = new BulkRequest();
+        for (long id = 1; id <= 10; id++) {
+            bulkRequest.add(new IndexRequest(USER_INDEX).id(String.valueOf(id))
+                    .source(UserSourceSerializer.toBytesReference(new User(id, "用户" + id, 20, "男")), XContentType.JSON));
+        }
+        client.bulk(bulkRequest);
+
+        SearchRequest searchRequest = new SearchRequest(USER_INDEX)
+                .source(new SearchSourceBuilder().query(QueryBuilders.matchQuery("name", "韩")));
+        List<User> users = client.searchUsers(searchRequest);
+        System.out.println("查询文档:" + users);
+        System.out.println("客户端指标:\n" + registry);
+
+        Assert.assertEquals(1, registry.getHistogram(EsMetrics.CLIENT_LATENCY, "get", USER_INDEX).getTotalCount());
+        Assert.assertEquals(1, registry.getHistogram(EsMetrics.SERVER_TOOK, "bulk", USER_INDEX).getTotalCount());
+        Assert.assertEquals(1, registry.getHistogram(EsMetrics.DECODE_LATENCY, "search", USER_INDEX).getTotalCount());
+        Assert.assertTrue(registry.getHistogram(EsMetrics.REQUEST_BYTES, "bulk", "_all").getMaxValue() > 0);
+        Assert.assertTrue(registry.getHistogram(EsMetrics.RESPONSE_BYTES, "search", USER_INDEX).getMaxValue() > 0);
+        Assert.assertEquals(0, registry.getCount(EsMetrics.ERRORS, "get", USER_INDEX));
+        Assert.assertEquals(Long.valueOf(0), registry.getGauge(EsMetrics.POOL_LEASED, "metrics-test"));
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.lnjecit.elasticsearch;
+
+import com.lnjecit.elasticsearch.client.EsClientConfig;
+import com.lnjecit.elasticsearch.client.EsClientFactory;
+import com.lnjecit.elasticsearch.standin.EsStandInServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.core.CountRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * 测试共用的客户端：默认连接进程内的 {@link EsStandInServer}，不需要启动 es；
+ * 指定 -Des.hosts=host:port[,host:port] 时连接真实集群。
+ */
+final class EsTestSupport {
+    static final int USER_COUNT = 100;
+    private static final String[] NAMES = {"王林", "韩立", "紫川秀", "张小凡", "路明非", "楚子航", "李沐婉", "紫灵"};
+
+    private static EsStandInServer standIn;
+
+    private EsTestSupport() {
+    }
+
+    static synchronized RestHighLevelClient client() {
+        String hosts = System.getProperty("es.hosts");
+        if (hosts != null && !hosts.isEmpty()) {
+            String[] specs = hosts.split(",");
+            HttpHost[] httpHosts = new HttpHost[specs.length];
+            for (int i = 0; i < specs.length; i++) {
+                httpHosts[i] = HttpHost.create(specs[i].trim());
+            }
+            return EsClientFactory.getClient(new EsClientConfig("test", httpHosts));
+        }
+        if (standIn == null) {
+            try {
+                standIn = new EsStandInServer(0).start();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(standIn::close));
+        }
+        return EsClientFactory.getClient(new EsClientConfig("test", standIn.getHttpHost()));
+    }
+
+    /**
+     * 索引不存在或为空时写入 id 为 1..100 的测试用户，搜索类测试不依赖其他测试的执行顺序
+     */
+    static void ensureUsers(RestHighLevelClient client, String index) throws IOException {
+        if (client.indices().exists(new GetIndexRequest(index), RequestOptions.DEFAULT)
+                && client.count(new CountRequest(index), RequestOptions.DEFAULT).getCount() > 0) {
+            return;
+        }
+        BulkRequest bulkRequest = new BulkRequest().setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
+        for (long id = 1; id <= USER_COUNT; id++) {
+            bulkRequest.add(new IndexRequest(index).id(String.valueOf(id)).source(XContentType.JSON,
+                    "id", id, "name", NAMES[(int) (id % NAMES.length)], "age", 18 + id % 50, "sex", id % 3 == 0 ? "女" : "男"));
+        }
+        client.bulk(bulkRequest, RequestOptions.DEFAULT);
+    }
+}